@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.javaagent.logging.SironaAgentLogging;
+import org.apache.sirona.repositories.Repository;
+import org.apache.sirona.util.DaemonThreadFactory;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import javax.management.ObjectName;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the advice of hot methods which are too fast to be worth measuring: for them the instrumentation
+ * cost dominates and distorts the numbers.
+ * <p/>
+ * Each period the counters of instrumented methods are checked. Methods with at least min-hits hits and a mean
+ * under max-mean (in ns) are dropped from the instrumentation plan and their class is retransformed.
+ * They can be instrumented again through JMX (org.apache.sirona.javaagent:type=adaptive-instrumentation).
+ */
+public class AdaptiveInstrumentation implements AdaptiveInstrumentationMBean {
+    private static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.adaptive.";
+
+    public static final boolean ACTIVATED = Configuration.is(PREFIX + "activated", false);
+
+    private final Instrumentation instrumentation;
+    private final long minHits;
+    private final double maxMean;
+
+    public AdaptiveInstrumentation(final Instrumentation instrumentation, final long minHits, final double maxMean) {
+        this.instrumentation = instrumentation;
+        this.minHits = minHits;
+        this.maxMean = maxMean;
+    }
+
+    // called by reflection from SironaAgent, the transformer needs to be registered as retransformation capable
+    @IgnoreJRERequirement
+    public static void start(final Instrumentation instrumentation) {
+        if (!ACTIVATED || !instrumentation.isRetransformClassesSupported()) {
+            return;
+        }
+
+        final AdaptiveInstrumentation controller = new AdaptiveInstrumentation(instrumentation,
+            Long.parseLong(Configuration.getProperty(PREFIX + "min-hits", "10000")),
+            Double.parseDouble(Configuration.getProperty(PREFIX + "max-mean", "1000")));
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(controller,
+                new ObjectName(Configuration.CONFIG_PROPERTY_PREFIX + "javaagent:type=adaptive-instrumentation"));
+        } catch (final Exception e) {
+            SironaAgentLogging.debug("can''t register adaptive instrumentation MBean: {0}", e.getMessage());
+        }
+
+        final long period = Configuration.getInteger(PREFIX + "period", 60000);
+        final ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("sirona-adaptive-instrumentation-"));
+        final ClassLoader loader = ClassLoader.getSystemClassLoader(); // agent threads have no usable TCCL, needed by IoCs
+        ses.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                Thread.currentThread().setContextClassLoader(loader);
+                try {
+                    controller.check();
+                } catch (final Throwable th) { // keep the task scheduled
+                    SironaAgentLogging.debug("adaptive instrumentation check failed: {0}", th.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of methods dropped from the instrumentation plan by this check.
+     */
+    public int check() {
+        final Collection<String> excluded = new ArrayList<String>();
+        for (final Counter counter : Repository.INSTANCE.counters()) {
+            final Counter.Key key = counter.getKey();
+            if (!Role.PERFORMANCES.equals(key.getRole()) || !AgentContext.isInstrumented(key.getName())) {
+                continue;
+            }
+            if (counter.getHits() >= minHits && counter.getMean() < maxMean && AgentContext.exclude(key.getName())) {
+                SironaAgentLogging.debug("removing instrumentation of {0}, mean = {1}ns", key.getName(), counter.getMean());
+                excluded.add(key.getName());
+            }
+        }
+        retransform(excluded);
+        return excluded.size();
+    }
+
+    public String[] getExcludedMethods() {
+        final Collection<String> keys = AgentContext.getExcludedKeys();
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    public boolean deinstrument(final String method) {
+        if (!AgentContext.exclude(method)) {
+            return false;
+        }
+        retransform(Collections.singletonList(method));
+        return true;
+    }
+
+    public boolean reinstrument(final String method) {
+        if (!AgentContext.include(method)) {
+            return false;
+        }
+        retransform(Collections.singletonList(method));
+        return true;
+    }
+
+    public int reinstrumentAll() {
+        final Collection<String> included = new ArrayList<String>();
+        for (final String method : new ArrayList<String>(AgentContext.getExcludedKeys())) {
+            if (AgentContext.include(method)) {
+                included.add(method);
+            }
+        }
+        retransform(included);
+        return included.size();
+    }
+
+    @IgnoreJRERequirement
+    private void retransform(final Collection<String> methods) {
+        if (methods.isEmpty()) {
+            return;
+        }
+
+        final Set<String> classNames = new HashSet<String>();
+        for (final String method : methods) {
+            classNames.add(className(method));
+        }
+
+        final List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+        for (final Class<?> clazz : instrumentation.getAllLoadedClasses()) { // same name can be loaded by several loaders
+            if (classNames.contains(clazz.getName()) && instrumentation.isModifiableClass(clazz)) {
+                classes.add(clazz);
+            }
+        }
+        if (classes.isEmpty()) {
+            return;
+        }
+
+        try {
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[classes.size()]));
+        } catch (final Exception e) {
+            SironaAgentLogging.debug("can''t retransform {0}: {1}", classNames, e.getMessage());
+        }
+    }
+
+    // key format is org.foo.Bar.method(java.lang.String)
+    static String className(final String method) {
+        final int parenthesis = method.indexOf('(');
+        final int lastDot = method.lastIndexOf('.', parenthesis < 0 ? method.length() : parenthesis);
+        return lastDot < 0 ? method : method.substring(0, lastDot);
+    }
+}
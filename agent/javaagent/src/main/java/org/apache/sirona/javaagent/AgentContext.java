@@ -19,13 +19,18 @@ package org.apache.sirona.javaagent;
 import org.apache.sirona.Role;
 import org.apache.sirona.configuration.ioc.IoCs;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.EvictionAware;
+import org.apache.sirona.javaagent.listener.CounterListener;
+import org.apache.sirona.javaagent.spi.ClassFilter;
 import org.apache.sirona.javaagent.spi.InvocationListener;
 import org.apache.sirona.javaagent.spi.InvocationListenerFactory;
+import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.spi.Order;
 import org.apache.sirona.spi.SPI;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -43,6 +48,22 @@ public class AgentContext {
 
     private static final ConcurrentMap<String, InvocationListener[]> LISTENERS_BY_KEY = new ConcurrentHashMap<String, InvocationListener[]>();
     private static final ConcurrentMap<String, Counter.Key> KEYS_CACHE = new ConcurrentHashMap<String, Counter.Key>();
+
+    // methods instrumented with an id, the id is the index in the arrays so the runtime lookup is an array read
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+    private static final Object REGISTRATION_LOCK = new Object();
+    private static volatile String[] registeredKeys = new String[256];
+    private static volatile InvocationListener[][] registeredListeners = new InvocationListener[256][];
+    private static volatile ParameterCapture[] registeredCaptures = new ParameterCapture[256];
+    private static volatile CounterHandle[] registeredCounters = new CounterHandle[256]; // resolved lazily, see counter(int)
+    private static int registeredCount = 0; // guarded by REGISTRATION_LOCK
+    // ids a previous JVM gave, see reserve(), guarded by REGISTRATION_LOCK
+    private static final Map<String, Integer> RESERVED_IDS = new HashMap<String, Integer>();
+    private static final Map<Integer, String> RESERVED_KEYS = new HashMap<Integer, String>();
+
+    // methods removed from the instrumentation plan, they are not adviced anymore when their class is (re)transformed
+    private static final ConcurrentMap<String, Boolean> EXCLUDED_KEYS = new ConcurrentHashMap<String, Boolean>();
+    private static volatile boolean reconfigured = false;
 	private static final AgentContext FAKE_CONTEXT = new AgentContext("init", null, new InvocationListener[0],new Object[0]);
 
 	private static final Map<String, String> AGENT_PARAMETERS = new ConcurrentHashMap<String, String>();
@@ -89,6 +110,296 @@ public class AgentContext {
         return new AgentContext(key, that, listeners(key, null),methodParameters);
     }
 
+    /**
+     * called by agent. <b>It's not part of the public api!!</b>
+     * @param that
+     * @param id the id returned by {@link #register(String, InvocationListener[])} at transformation time
+     * @param methodParameters
+     * @return
+     */
+    public static AgentContext startOn(final Object that, final int id, final Object[] methodParameters) {
+        final InvocationListener[] listeners = registeredListeners[id]; // read listeners first, keys are published before
+        if (isPooled(listeners)) {
+            return POOLS.get().acquire(id, registeredKeys[id], that, listeners, methodParameters);
+        }
+        final AgentContext context = new AgentContext();
+        context.init(id, registeredKeys[id], that, listeners, methodParameters);
+        context.startListeners();
+        return context;
+    }
+
+    /**
+     * called by agent for methods with captured parameters. <b>It's not part of the public api!!</b>
+     * Listeners are not called before {@link #begin()}, the parameters are given to capture() in between.
+     * @param that
+     * @param id the id returned by {@link #register(String, InvocationListener[])} at transformation time
+     * @return
+     */
+    public static AgentContext prepare(final Object that, final int id) {
+        final InvocationListener[] listeners = registeredListeners[id];
+        final AgentContext context;
+        if (isPooled(listeners)) {
+            context = POOLS.get().take(id, registeredKeys[id], that, listeners, null);
+        } else {
+            context = new AgentContext();
+            context.init(id, registeredKeys[id], that, listeners, null);
+        }
+        context.prepareCapture(registeredCaptures[id]);
+        return context;
+    }
+
+    // CounterListener doesn't keep the context after after() so when it is alone contexts can be reused,
+    // computed from the listeners read by the caller since they can be swapped (see register())
+    private static boolean isPooled(final InvocationListener[] listeners) {
+        return listeners.length == 1 && CounterListener.class.isInstance(listeners[0]);
+    }
+
+    static ParameterCapture parameterCapture(final int id) {
+        return registeredCaptures[id];
+    }
+
+    /**
+     * Inlined advice entry point. <b>It's not part of the public api!!</b>
+     * Only used for methods whose single listener is a non adaptive {@link CounterListener},
+     * it doesn't create any context. The counter is resolved once per id and kept until the counter store
+     * generation changes or it is evicted.
+     *
+     * @param id the id returned by {@link #register(String, InvocationListener[])} at transformation time
+     * @return the counter of the method or null if it can't be resolved yet (agent starting)
+     */
+    public static Counter counter(final int id) {
+        try {
+            final Repository repository = Repository.INSTANCE;
+            if (repository == null) { // a woven method called while this thread initializes the repository
+                return null;
+            }
+
+            final long generation = repository.counterGeneration();
+            final CounterHandle[] handles = registeredCounters;
+            final CounterHandle handle = handles[id];
+            if (handle != null && handle.generation == generation
+                    && !(EvictionAware.class.isInstance(handle.counter) && EvictionAware.class.cast(handle.counter).isEvicted())) {
+                return handle.counter;
+            }
+
+            final Counter counter = repository.getCounter(key(registeredKeys[id]));
+            if (generation >= 0) { // else the store doesn't support caching
+                handles[id] = new CounterHandle(counter, generation);
+            }
+            return counter;
+        } catch (final Exception e) { // ignore, can happen on start when all agent classes are not really loaded
+            return null;
+        }
+    }
+
+    public static long startCounter(final Counter counter) {
+        if (counter == null) {
+            return 0;
+        }
+        return Repository.INSTANCE.startNanos(counter);
+    }
+
+    public static void stopCounter(final Counter counter, final long start) {
+        if (counter != null) {
+            Repository.INSTANCE.stop(counter, start);
+        }
+    }
+
+    public static void stopCounterWithException(final Counter counter, final long start, final Throwable error) {
+        if (counter != null) {
+            CounterListener.failure(error, Repository.INSTANCE.stop(counter, start));
+        }
+    }
+
+    public static boolean isCounterOnly(final InvocationListener[] listeners) {
+        return listeners != null && listeners.length == 1
+            && CounterListener.class.isInstance(listeners[0]) && !CounterListener.class.cast(listeners[0]).isAdaptive();
+    }
+
+    /**
+     * Registers an instrumented method. Called each time its class is transformed.
+     * A key always gets the same id so the registry is bounded by the number of instrumented methods:
+     * when the listeners changed (see {@link #reconfigured()}) they are swapped in place and code woven
+     * before uses them too.
+     *
+     * @param key the method key.
+     * @param listeners the listeners of this method, null to keep the registered ones.
+     * @return the id to use with {@link #startOn(Object, int, Object[])}, the same one if the key is already registered.
+     */
+    public static int register(final String key, final InvocationListener[] listeners) {
+        final Integer existing = IDS.get(key);
+        if (existing != null && (listeners == null || sameListeners(registeredListeners[existing], listeners))) {
+            return existing;
+        }
+
+        synchronized (REGISTRATION_LOCK) {
+            final Integer id = IDS.get(key);
+            if (id == null) {
+                final Integer reserved = RESERVED_IDS.get(key);
+                final int idx = reserved != null ? reserved : registeredCount;
+                publish(idx, key, listeners);
+                return idx;
+            }
+            if (listeners != null && !sameListeners(registeredListeners[id], listeners)) {
+                publish(id, key, listeners);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Registers an instrumented method with the id it had when its class was woven by a previous JVM
+     * (see {@link TransformationCache}).
+     *
+     * @param id the id used by the cached bytecode.
+     * @param key the method key.
+     * @param listeners the listeners of this method.
+     * @return false if the id is used or reserved by another method or the key already has another id.
+     */
+    public static boolean register(final int id, final String key, final InvocationListener[] listeners) {
+        if (id < 0) {
+            return false;
+        }
+
+        synchronized (REGISTRATION_LOCK) {
+            final Integer existing = IDS.get(key);
+            if (existing != null) {
+                return existing == id;
+            }
+            if (id < registeredKeys.length && registeredKeys[id] != null) {
+                return false;
+            }
+            final Integer reserved = RESERVED_IDS.get(key);
+            if (reserved != null ? reserved != id : RESERVED_KEYS.containsKey(id)) {
+                return false;
+            }
+
+            publish(id, key, listeners);
+            return true;
+        }
+    }
+
+    /**
+     * Reserves the id a method had in a previous JVM (see {@link TransformationCache}): it gets it back when
+     * its class is woven whatever the order classes are loaded in and new methods never take it.
+     * Has to be called before weaving.
+     *
+     * @param id the id the method had.
+     * @param key the method key.
+     * @return false if the id or the key is already used by another registration.
+     */
+    public static boolean reserve(final int id, final String key) {
+        if (id < 0) {
+            return false;
+        }
+
+        synchronized (REGISTRATION_LOCK) {
+            final Integer existing = IDS.get(key);
+            if (existing != null) {
+                return existing == id;
+            }
+            final Integer reserved = RESERVED_IDS.get(key);
+            if (reserved != null) {
+                return reserved == id;
+            }
+            if (RESERVED_KEYS.containsKey(id) || (id < registeredKeys.length && registeredKeys[id] != null)) {
+                return false;
+            }
+
+            RESERVED_IDS.put(key, id);
+            RESERVED_KEYS.put(id, key);
+            registeredCount = Math.max(registeredCount, id + 1);
+            return true;
+        }
+    }
+
+    private static boolean sameListeners(final InvocationListener[] registered, final InvocationListener[] listeners) {
+        if (registered == listeners) {
+            return true;
+        }
+        if (registered == null || listeners == null || registered.length != listeners.length) {
+            return false;
+        }
+        for (int i = 0; i < registered.length; i++) {
+            if (registered[i] != listeners[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // guarded by REGISTRATION_LOCK, ids restored from the cache can leave unused slots
+    private static void publish(final int idx, final String key, final InvocationListener[] listeners) {
+        String[] keys = registeredKeys;
+        InvocationListener[][] listenersById = registeredListeners;
+        ParameterCapture[] captures = registeredCaptures;
+        CounterHandle[] counters = registeredCounters;
+        if (idx >= keys.length) { // grow, java 5 so no Arrays.copyOf
+            int length = keys.length * 2;
+            while (length <= idx) {
+                length *= 2;
+            }
+
+            final String[] newKeys = new String[length];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            keys = newKeys;
+
+            final InvocationListener[][] newListeners = new InvocationListener[length][];
+            System.arraycopy(listenersById, 0, newListeners, 0, listenersById.length);
+            listenersById = newListeners;
+
+            final ParameterCapture[] newCaptures = new ParameterCapture[length];
+            System.arraycopy(captures, 0, newCaptures, 0, captures.length);
+            captures = newCaptures;
+
+            final CounterHandle[] newCounters = new CounterHandle[length];
+            System.arraycopy(counters, 0, newCounters, 0, counters.length);
+            counters = newCounters;
+        }
+        keys[idx] = key;
+        listenersById[idx] = listeners == null ? EMPTY_LISTENERS_ARRAY : listeners;
+        // computed from the key so methods restored from the cache get it too
+        captures[idx] = ParameterCapture.find(key);
+        counters[idx] = null;
+
+        // volatile writes publish the slots even when the arrays didn't change
+        registeredKeys = keys;
+        registeredCaptures = captures;
+        registeredCounters = counters;
+        registeredListeners = listenersById;
+        registeredCount = Math.max(registeredCount, idx + 1);
+
+        IDS.put(key, idx);
+    }
+
+    public static boolean isInstrumented(final String key) {
+        return IDS.containsKey(key) && !EXCLUDED_KEYS.containsKey(key);
+    }
+
+    public static Collection<String> getExcludedKeys() {
+        return Collections.unmodifiableCollection(EXCLUDED_KEYS.keySet());
+    }
+
+    static boolean hasExcludedKeys() {
+        return !EXCLUDED_KEYS.isEmpty();
+    }
+
+    /**
+     * @param key method to not advice anymore, the class needs to be retransformed for it to be effective.
+     * @return false if the method was already excluded.
+     */
+    public static boolean exclude(final String key) {
+        return EXCLUDED_KEYS.put(key, Boolean.TRUE) == null;
+    }
+
+    /**
+     * @param key method to advice again, the class needs to be retransformed for it to be effective.
+     * @return true if the method was excluded.
+     */
+    public static boolean include(final String key) {
+        return EXCLUDED_KEYS.remove(key) != null;
+    }
+
     // helper to init keys in javaagent
     public static Counter.Key key(final String name) {
         Counter.Key key = KEYS_CACHE.get(name);
@@ -136,8 +447,15 @@ public class AgentContext {
         if (key == null){
             return EMPTY_LISTENERS_ARRAY;
         }
+        if (buffer != null && EXCLUDED_KEYS.containsKey(key)) { // transformation time only, runtime lookups are unchanged
+            return null;
+        }
         InvocationListener[] listeners = LISTENERS_BY_KEY.get(key);
-        if (listeners == null && buffer != null) {
+        if (listeners == null && buffer == null) { // runtime lookup of a key forgotten by reconfigured()
+            final Integer id = IDS.get(key);
+            return id == null ? EMPTY_LISTENERS_ARRAY : registeredListeners[id];
+        }
+        if (listeners == null) {
             listeners = findListeners(key, buffer);
             if (listeners.length == 0) {
                 return null;
@@ -151,6 +469,39 @@ public class AgentContext {
         return listeners;
     }
 
+    /**
+     * @param className the qualified name of a class being loaded.
+     * @return false if no listener can be used for a method of this class, it doesn't need to be parsed then.
+     */
+    public static boolean mayInstrument(final String className) {
+        for (final InvocationListener listener : EXISTING_LISTENERS) {
+            if (!ClassFilter.class.isInstance(listener) || ClassFilter.class.cast(listener).acceptClass(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static InvocationListener[] allListeners() {
+        return EXISTING_LISTENERS;
+    }
+
+    /**
+     * To call once the configuration of a listener changed at runtime: listeners of a method are computed again
+     * when its class is (re)transformed. Methods already woven keep their listeners until then, their id never changes.
+     */
+    static void reconfigured() {
+        reconfigured = true;
+        LISTENERS_BY_KEY.clear();
+    }
+
+    /**
+     * @return true if the listeners configuration changed since the agent started.
+     */
+    static boolean isReconfigured() {
+        return reconfigured;
+    }
+
     private static InvocationListener[] findListeners(final String key, final byte[] buffer) {
         final List<InvocationListener> listeners = new LinkedList<InvocationListener>();
         for (final InvocationListener listener : EXISTING_LISTENERS) {
@@ -161,28 +512,132 @@ public class AgentContext {
         return listeners.toArray(new InvocationListener[listeners.size()]);
     }
 
-    private final String key;
-    private final Object reference;
-    private final InvocationListener[] listeners;
+    // not final since pooled contexts are reused
+    private int id;
+    private String key;
+    private Object reference;
+    private InvocationListener[] listeners;
 
     /**
      * @since 0.3
      */
-    private final Object[] methodParameters;
-    private final Map<Integer, Object> context = new HashMap<Integer, Object>();
+    private Object[] methodParameters;
+    private ParameterCapture capture = null; // only set when parameters are captured per method
+    private Object[] capturedReferences = null;
+    private long[] capturedPrimitives = null;
+    private Map<Integer, Object> context = null; // only created if a listener uses put(int, Object)
     private Method method = null;
 
+    // state of the listeners, index is the position of the listener in listeners
+    private int current = 0;
+    private Object state = null; // single listener case, no array needed
+    private long longState = 0;
+    private Object[] states = null;
+    private long[] longStates = null;
+
+    private ContextPool pool = null; // set when the context comes from a pool
+
     public AgentContext(final String key, final Object that, final InvocationListener[] listeners,final Object[] methodParameters) {
+        init(-1, key, that, listeners, methodParameters);
+        startListeners();
+    }
+
+    private AgentContext() {
+        // pooled instance, initialized by acquire()
+    }
+
+    private void init(final int id, final String key, final Object that, final InvocationListener[] listeners, final Object[] methodParameters) {
+        this.id = id;
         this.key = key;
         this.reference = that;
         this.listeners = listeners;
         this.methodParameters = methodParameters;
+    }
 
-        for (final InvocationListener listener : this.listeners) {
-            listener.before(this);
+    private void prepareCapture(final ParameterCapture parameterCapture) {
+        capture = parameterCapture;
+        if (parameterCapture == null) {
+            return;
+        }
+        // pooled contexts keep their arrays while the same method is invoked
+        if (parameterCapture.referenceCount() > 0
+                && (capturedReferences == null || capturedReferences.length != parameterCapture.referenceCount())) {
+            capturedReferences = new Object[parameterCapture.referenceCount()];
+        }
+        if (parameterCapture.primitiveCount() > 0
+                && (capturedPrimitives == null || capturedPrimitives.length != parameterCapture.primitiveCount())) {
+            capturedPrimitives = new long[parameterCapture.primitiveCount()];
         }
     }
 
+    /**
+     * called by agent between {@link #prepare(Object, int)} and {@link #begin()}. <b>It's not part of the public api!!</b>
+     */
+    public AgentContext capture(final int slot, final Object value) {
+        capturedReferences[slot] = value;
+        return this;
+    }
+
+    /**
+     * @see #capture(int, Object)
+     */
+    public AgentContext capture(final int slot, final long value) {
+        capturedPrimitives[slot] = value;
+        return this;
+    }
+
+    /**
+     * @see #capture(int, Object)
+     */
+    public AgentContext capture(final int slot, final double value) {
+        capturedPrimitives[slot] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    /**
+     * called by agent once parameters are captured. <b>It's not part of the public api!!</b>
+     */
+    public AgentContext begin() {
+        if (pool == null) {
+            startListeners();
+            return this;
+        }
+
+        try {
+            startListeners();
+        } catch (final RuntimeException e) { // stop() will not be called
+            pool.release(this);
+            throw e;
+        } catch (final Error e) {
+            pool.release(this);
+            throw e;
+        }
+        return this;
+    }
+
+    private void startListeners() {
+        for (int i = 0; i < listeners.length; i++) {
+            current = i;
+            listeners[i].before(this);
+        }
+    }
+
+    private void clear() { // don't retain application objects, key and listeners are owned by the registry anyway
+        reference = null;
+        methodParameters = null;
+        capture = null;
+        if (capturedReferences != null) {
+            Arrays.fill(capturedReferences, null);
+        }
+        context = null;
+        method = null;
+        current = 0;
+        state = null;
+        longState = 0;
+        states = null;
+        longStates = null;
+    }
+
     public Object getReference() {
         return reference;
     }
@@ -191,6 +646,14 @@ public class AgentContext {
         return key;
     }
 
+    /**
+     * @return the id of the method (see {@link #register(String, InvocationListener[])}), -1 if the context
+     * was created from its key.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * <b>Those values won't be available if you don't activate this feature</b>
      * see {@link SironaClassVisitor#TRACE_METHOD_PARAMETERS_KEY}
@@ -199,9 +662,69 @@ public class AgentContext {
      */
     public Object[] getMethodParameters()
     {
+        if (methodParameters == null && capture != null) { // boxed on demand, not captured parameters are null
+            final Object[] parameters = new Object[capture.parameterCount()];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = getMethodParameter(i);
+            }
+            methodParameters = parameters;
+        }
         return methodParameters == null ? EMPTY_ARRAY : methodParameters;
     }
 
+    /**
+     * @param index the index of the parameter in the method signature.
+     * @return the parameter (boxed if primitive) or null if it is not available.
+     */
+    public Object getMethodParameter(final int index) {
+        if (capture == null) {
+            return methodParameters != null && index >= 0 && index < methodParameters.length ? methodParameters[index] : null;
+        }
+
+        final int slot = capture.slot(index);
+        if (slot < 0) {
+            return null;
+        }
+        if (capture.sort(index) == ParameterCapture.REFERENCE) {
+            return capturedReferences[slot];
+        }
+        return capture.box(index, capturedPrimitives[slot]);
+    }
+
+    /**
+     * Reads a parameter captured per method (see {@link ParameterCapture#PREFIX}) without boxing it.
+     *
+     * @param index the index of a int, long, short, byte, char or boolean (1 for true) parameter.
+     * @return the parameter value.
+     */
+    public long getLongParameter(final int index) {
+        return capturedPrimitives[primitiveSlot(index, ParameterCapture.INTEGRAL)];
+    }
+
+    /**
+     * @see #getLongParameter(int)
+     */
+    public int getIntParameter(final int index) {
+        return (int) getLongParameter(index);
+    }
+
+    /**
+     * @param index the index of a double or float parameter.
+     * @return the parameter value.
+     */
+    public double getDoubleParameter(final int index) {
+        return Double.longBitsToDouble(capturedPrimitives[primitiveSlot(index, ParameterCapture.FLOATING)]);
+    }
+
+    private int primitiveSlot(final int index, final char sort) {
+        final int slot = capture == null ? -1 : capture.slot(index);
+        if (slot < 0 || capture.sort(index) != sort) {
+            throw new IllegalArgumentException("Parameter " + index + " of " + key + " is not captured as a "
+                + (sort == ParameterCapture.INTEGRAL ? "integral" : "floating point") + " primitive");
+        }
+        return slot;
+    }
+
     public Class<?> keyAsClass() {
         final int length = key.length();
         final int parenthesis = key.lastIndexOf('(');
@@ -264,14 +787,67 @@ public class AgentContext {
         return contextClassLoader;
     }
 
+    /**
+     * Prefer {@link #setState(Object)} which doesn't need a map nor a key shared between listeners.
+     */
     public <T> T get(final Integer key, final Class<T> clazz) {
+        if (context == null) {
+            return null;
+        }
         return clazz.cast(context.get(key));
     }
 
     public void put(final int key, Object data) {
+        if (context == null) {
+            context = new HashMap<Integer, Object>();
+        }
         context.put(key, data);
     }
 
+    /**
+     * Stores the state of the listener currently called (in before()) for this invocation.
+     *
+     * @param data the state to retrieve in after().
+     */
+    public void setState(final Object data) {
+        if (listeners.length == 1) {
+            state = data;
+            return;
+        }
+        if (states == null) {
+            states = new Object[listeners.length];
+        }
+        states[current] = data;
+    }
+
+    public <T> T getState(final Class<T> clazz) {
+        if (listeners.length == 1) {
+            return clazz.cast(state);
+        }
+        return states == null ? null : clazz.cast(states[current]);
+    }
+
+    /**
+     * Same as {@link #setState(Object)} for a primitive, typically a start time, to avoid boxing.
+     */
+    public void setLongState(final long data) {
+        if (listeners.length == 1) {
+            longState = data;
+            return;
+        }
+        if (longStates == null) {
+            longStates = new long[listeners.length];
+        }
+        longStates[current] = data;
+    }
+
+    public long getLongState() {
+        if (listeners.length == 1) {
+            return longState;
+        }
+        return longStates == null ? 0 : longStates[current];
+    }
+
     public void stop(final Object result) {
         stopListeners(result, null);
     }
@@ -281,8 +857,72 @@ public class AgentContext {
     }
 
     private void stopListeners(final Object result, final Throwable error) {
-        for (final InvocationListener listener : listeners) {
-            listener.after(this, result, error);
+        try {
+            for (int i = 0; i < listeners.length; i++) {
+                current = i;
+                listeners[i].after(this, result, error);
+            }
+        } finally {
+            if (pool != null) {
+                pool.release(this);
+            }
+        }
+    }
+
+    // contexts of the current thread, acquired and released in stack order since invocations are nested
+    private static final ThreadLocal<ContextPool> POOLS = new ThreadLocal<ContextPool>() {
+        @Override
+        protected ContextPool initialValue() {
+            return new ContextPool();
+        }
+    };
+
+    private static class ContextPool {
+        private static final int MAX_DEPTH = 64; // deeper invocations just allocate
+
+        private final AgentContext[] contexts = new AgentContext[MAX_DEPTH];
+        private int depth = 0;
+
+        private AgentContext acquire(final int id, final String key, final Object that, final InvocationListener[] listeners, final Object[] methodParameters) {
+            return take(id, key, that, listeners, methodParameters).begin();
+        }
+
+        // the context is initialized but its listeners are not called yet
+        private AgentContext take(final int id, final String key, final Object that, final InvocationListener[] listeners, final Object[] methodParameters) {
+            if (depth == MAX_DEPTH) {
+                final AgentContext context = new AgentContext();
+                context.init(id, key, that, listeners, methodParameters);
+                return context;
+            }
+
+            AgentContext context = contexts[depth];
+            if (context == null) {
+                context = new AgentContext();
+                context.pool = this;
+                contexts[depth] = context;
+            }
+            depth++;
+
+            context.init(id, key, that, listeners, methodParameters);
+            return context;
+        }
+
+        private void release(final AgentContext context) {
+            context.clear();
+            if (depth > 0 && contexts[depth - 1] == context) {
+                depth--;
+            }
+        }
+    }
+
+    // immutable so it can be published through a plain array write
+    private static class CounterHandle {
+        private final Counter counter;
+        private final long generation;
+
+        private CounterHandle(final Counter counter, final long generation) {
+            this.counter = counter;
+            this.generation = generation;
         }
     }
 
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.configuration.predicate.PredicateEvaluator;
+import org.apache.sirona.javaagent.logging.SironaAgentLogging;
+import org.apache.sirona.javaagent.spi.ClassFilter;
+import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.objectweb.asm.Type;
+
+import javax.management.ObjectName;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes the includes/excludes of the listeners (CounterListener, PathTrackingListener...) of a running JVM
+ * through JMX (org.apache.sirona.javaagent:type=configuration). Only loaded classes whose instrumentation plan
+ * changed are retransformed.
+ * <p/>
+ * Activated with org.apache.sirona.javaagent.live-configuration.activated=true or when the agent is attached
+ * to a running JVM, in this last case the classes loaded before the agent are instrumented when it starts.
+ */
+public class LiveConfiguration implements LiveConfigurationMBean {
+    private static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.live-configuration.";
+
+    public static final boolean ACTIVATED = Configuration.is(PREFIX + "activated", false);
+
+    private static final int BATCH_SIZE = Configuration.getInteger(PREFIX + "batch-size", 500);
+
+    private final Instrumentation instrumentation;
+    private final InvocationListener[] listeners;
+    private final Map<String, String> configurations = new HashMap<String, String>(); // last values set through JMX
+
+    public LiveConfiguration(final Instrumentation instrumentation, final InvocationListener[] listeners) {
+        this.instrumentation = instrumentation;
+        this.listeners = listeners;
+    }
+
+    // called by reflection from SironaAgent, the transformer needs to be registered as retransformation capable
+    @IgnoreJRERequirement
+    public static void start(final Instrumentation instrumentation, final boolean attached) {
+        if (!instrumentation.isRetransformClassesSupported()) {
+            return;
+        }
+
+        final LiveConfiguration configuration = new LiveConfiguration(instrumentation, AgentContext.allListeners());
+        if (attached) {
+            SironaAgentLogging.debug("instrumented {0} classes loaded before the agent", configuration.instrumentLoadedClasses());
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(configuration,
+                new ObjectName(Configuration.CONFIG_PROPERTY_PREFIX + "javaagent:type=configuration"));
+        } catch (final Exception e) {
+            SironaAgentLogging.debug("can''t register live configuration MBean: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of retransformed classes.
+     */
+    public int instrumentLoadedClasses() {
+        final List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (final Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            if (isModifiable(clazz) && !InvocationListener.class.isAssignableFrom(clazz)
+                    && AgentContext.mayInstrument(clazz.getName())) {
+                classes.add(clazz);
+            }
+        }
+        retransform(classes);
+        return classes.size();
+    }
+
+    public String[] getListeners() {
+        final Collection<String> names = new ArrayList<String>(listeners.length);
+        for (final InvocationListener listener : listeners) {
+            if (setter(listener, "setIncludes") != null || setter(listener, "setExcludes") != null) {
+                names.add(listener.getClass().getName());
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    public synchronized String getIncludes(final String listener) {
+        return current(find(listener), "includes");
+    }
+
+    public synchronized String getExcludes(final String listener) {
+        return current(find(listener), "excludes");
+    }
+
+    public int setIncludes(final String listener, final String includes) {
+        return reconfigure(listener, includes, null);
+    }
+
+    public int setExcludes(final String listener, final String excludes) {
+        return reconfigure(listener, null, excludes);
+    }
+
+    /**
+     * @param name the listener class name (simple name is accepted).
+     * @param includes the new includes, null to keep the current ones.
+     * @param excludes the new excludes, null to keep the current ones.
+     * @return the number of retransformed classes.
+     */
+    public synchronized int reconfigure(final String name, final String includes, final String excludes) {
+        final InvocationListener listener = find(name);
+        final Method includesSetter = includes == null ? null : setter(listener, "setIncludes");
+        final Method excludesSetter = excludes == null ? null : setter(listener, "setExcludes");
+        if (includes != null && includesSetter == null || excludes != null && excludesSetter == null) {
+            throw new IllegalArgumentException(name + " includes/excludes can't be changed");
+        }
+        // fail before changing anything if a predicate is invalid
+        if (includes != null) {
+            new PredicateEvaluator(includes, ",");
+        }
+        if (excludes != null) {
+            new PredicateEvaluator(excludes, ",");
+        }
+
+        final ClassFilter filter = ClassFilter.class.isInstance(listener) ? ClassFilter.class.cast(listener) : null;
+        final Map<Class<?>, Plan> before = new IdentityHashMap<Class<?>, Plan>();
+        final List<Class<?>> loaded = new ArrayList<Class<?>>();
+        for (final Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            if (!isModifiable(clazz)) {
+                continue;
+            }
+            loaded.add(clazz);
+            if (filter == null || filter.acceptClass(clazz.getName())) {
+                before.put(clazz, plan(listener, methodKeys(clazz)));
+            }
+        }
+
+        try {
+            if (includesSetter != null) {
+                includesSetter.invoke(listener, includes);
+                configurations.put(listener.getClass().getName() + ".includes", includes);
+            }
+            if (excludesSetter != null) {
+                excludesSetter.invoke(listener, excludes);
+                configurations.put(listener.getClass().getName() + ".excludes", excludes);
+            }
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            AgentContext.reconfigured();
+        }
+
+        final List<Class<?>> changed = new ArrayList<Class<?>>();
+        for (final Class<?> clazz : loaded) {
+            final Plan previous = before.get(clazz);
+            final boolean accepted = filter == null || filter.acceptClass(clazz.getName());
+            if (previous == null && !accepted) {
+                continue;
+            }
+
+            final String[] keys = previous != null ? previous.keys : methodKeys(clazz);
+            if (keys == null) { // unknown methods, let the transformer decide
+                changed.add(clazz);
+                continue;
+            }
+
+            final Plan next = accepted ? plan(listener, keys) : new Plan(keys, new boolean[keys.length]);
+            if (previous == null ? next.any() : !previous.sameAs(next)) {
+                changed.add(clazz);
+            }
+        }
+
+        SironaAgentLogging.debug("{0} reconfigured, retransforming {1} classes", name, changed.size());
+        retransform(changed);
+        return changed.size();
+    }
+
+    @IgnoreJRERequirement
+    private void retransform(final List<Class<?>> classes) {
+        for (int i = 0; i < classes.size(); i += BATCH_SIZE) {
+            final List<Class<?>> batch = classes.subList(i, Math.min(classes.size(), i + BATCH_SIZE));
+            try {
+                instrumentation.retransformClasses(batch.toArray(new Class<?>[batch.size()]));
+            } catch (final Throwable th) { // retry one by one to not lose the whole batch for one class
+                for (final Class<?> clazz : batch) {
+                    try {
+                        instrumentation.retransformClasses(clazz);
+                    } catch (final Throwable error) {
+                        SironaAgentLogging.debug("can''t retransform {0}: {1}", clazz.getName(), error.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private boolean isModifiable(final Class<?> clazz) {
+        return !clazz.isArray() && !clazz.isPrimitive() && instrumentation.isModifiableClass(clazz);
+    }
+
+    private InvocationListener find(final String name) {
+        for (final InvocationListener listener : listeners) {
+            final Class<?> type = listener.getClass();
+            if (type.getName().equals(name) || type.getSimpleName().equals(name)) {
+                return listener;
+            }
+        }
+        throw new IllegalArgumentException("No listener " + name);
+    }
+
+    private String current(final InvocationListener listener, final String name) {
+        final String key = listener.getClass().getName() + "." + name;
+        final String value = configurations.get(key);
+        return value != null ? value : Configuration.getProperty(key, null);
+    }
+
+    private static Method setter(final InvocationListener listener, final String name) {
+        try {
+            return listener.getClass().getMethod(name, String.class);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    // same keys as SironaClassVisitor, null if the methods can't be read (missing dependency)
+    static String[] methodKeys(final Class<?> clazz) {
+        final Method[] methods;
+        try {
+            methods = clazz.getDeclaredMethods();
+        } catch (final Throwable th) {
+            return null;
+        }
+
+        final List<String> keys = new ArrayList<String>(methods.length);
+        for (final Method method : methods) {
+            if (Modifier.isAbstract(method.getModifiers()) || Modifier.isNative(method.getModifiers())) {
+                continue;
+            }
+
+            final StringBuilder key = new StringBuilder(clazz.getName()).append('.').append(method.getName()).append('(');
+            final Type[] types = Type.getArgumentTypes(method);
+            for (int i = 0; i < types.length; i++) {
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(types[i].getClassName());
+            }
+            keys.add(key.append(')').toString());
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    private static Plan plan(final InvocationListener listener, final String[] keys) {
+        if (keys == null) {
+            return new Plan(null, null);
+        }
+
+        final boolean[] accepted = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            accepted[i] = listener.accept(keys[i], null);
+        }
+        return new Plan(keys, accepted);
+    }
+
+    // the methods of a class the listener is applied to
+    private static class Plan {
+        private final String[] keys;
+        private final boolean[] accepted;
+
+        private Plan(final String[] keys, final boolean[] accepted) {
+            this.keys = keys;
+            this.accepted = accepted;
+        }
+
+        private boolean any() {
+            if (accepted == null) {
+                return true;
+            }
+            for (final boolean b : accepted) {
+                if (b) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean sameAs(final Plan other) {
+            if (accepted == null || other.accepted == null) {
+                return false;
+            }
+            for (int i = 0; i < accepted.length; i++) {
+                if (accepted[i] != other.accepted[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
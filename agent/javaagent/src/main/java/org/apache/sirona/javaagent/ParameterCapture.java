@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.configuration.Configuration;
+
+// arguments of a method captured by the advice without boxing them all in an Object[], configured per method with
+// org.apache.sirona.javaagent.method.parameters.capture.<class>.<method>[(<parameter types>)] = <indexes> or *
+// references are stored in an Object[] and primitives in a long[], both sized with what is captured
+class ParameterCapture {
+    static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.method.parameters.capture.";
+
+    static final char REFERENCE = 'L';
+    static final char INTEGRAL = 'J';
+    static final char FLOATING = 'D';
+
+    private final String[] types; // parameter types as written in the key
+    private final int[] slots; // parameter index -> slot in its array, -1 if not captured
+    private final char[] sorts; // parameter index -> REFERENCE, INTEGRAL or FLOATING
+    private final int referenceCount;
+    private final int primitiveCount;
+
+    private ParameterCapture(final String[] types, final boolean[] captured) {
+        this.types = types;
+        this.slots = new int[types.length];
+        this.sorts = new char[types.length];
+
+        int references = 0;
+        int primitives = 0;
+        for (int i = 0; i < types.length; i++) {
+            sorts[i] = sort(types[i]);
+            if (!captured[i]) {
+                slots[i] = -1;
+            } else if (sorts[i] == REFERENCE) {
+                slots[i] = references++;
+            } else {
+                slots[i] = primitives++;
+            }
+        }
+        this.referenceCount = references;
+        this.primitiveCount = primitives;
+    }
+
+    /**
+     * @param key the method key, &lt;class&gt;.&lt;method&gt;(&lt;parameter types&gt;).
+     * @return the configured capture or null if no parameter of this method is captured.
+     */
+    static ParameterCapture find(final String key) {
+        final int parenthesis = key.lastIndexOf('(');
+        if (parenthesis < 0 || !key.endsWith(")")) {
+            return null;
+        }
+
+        String config = Configuration.getProperty(PREFIX + key, null);
+        if (config == null) { // all overloads
+            config = Configuration.getProperty(PREFIX + key.substring(0, parenthesis), null);
+        }
+        if (config == null) {
+            return null;
+        }
+
+        final String parameters = key.substring(parenthesis + 1, key.length() - 1).trim();
+        final String[] types = parameters.length() == 0 ? new String[0] : parameters.split(",");
+        final boolean[] captured = new boolean[types.length];
+        boolean any = false;
+        for (final String index : config.split(",")) {
+            final String value = index.trim();
+            if ("*".equals(value)) {
+                for (int i = 0; i < captured.length; i++) {
+                    captured[i] = true;
+                }
+                any = captured.length > 0;
+                continue;
+            }
+
+            try {
+                final int i = Integer.parseInt(value);
+                if (i >= 0 && i < captured.length) {
+                    captured[i] = true;
+                    any = true;
+                }
+            } catch (final NumberFormatException nfe) {
+                // ignored, not an index
+            }
+        }
+        return any ? new ParameterCapture(types, captured) : null;
+    }
+
+    private static char sort(final String type) {
+        final String name = type.trim();
+        if ("float".equals(name) || "double".equals(name)) {
+            return FLOATING;
+        }
+        if ("int".equals(name) || "long".equals(name) || "short".equals(name) || "byte".equals(name)
+                || "char".equals(name) || "boolean".equals(name)) {
+            return INTEGRAL;
+        }
+        return REFERENCE;
+    }
+
+    int parameterCount() {
+        return types.length;
+    }
+
+    int referenceCount() {
+        return referenceCount;
+    }
+
+    int primitiveCount() {
+        return primitiveCount;
+    }
+
+    /**
+     * @return the slot of the parameter in the array of its sort or -1 if it is not captured.
+     */
+    int slot(final int index) {
+        return index < 0 || index >= slots.length ? -1 : slots[index];
+    }
+
+    char sort(final int index) {
+        return sorts[index];
+    }
+
+    // primitives are widened to long or double bits when captured
+    Object box(final int index, final long value) {
+        final String name = types[index].trim();
+        if ("int".equals(name)) {
+            return Integer.valueOf((int) value);
+        }
+        if ("long".equals(name)) {
+            return Long.valueOf(value);
+        }
+        if ("boolean".equals(name)) {
+            return Boolean.valueOf(value != 0);
+        }
+        if ("char".equals(name)) {
+            return Character.valueOf((char) value);
+        }
+        if ("short".equals(name)) {
+            return Short.valueOf((short) value);
+        }
+        if ("byte".equals(name)) {
+            return Byte.valueOf((byte) value);
+        }
+        if ("float".equals(name)) {
+            return Float.valueOf((float) Double.longBitsToDouble(value));
+        }
+        return Double.valueOf(Double.longBitsToDouble(value));
+    }
+}
@@ -39,13 +39,39 @@ public class SironaAgent {
 
     private static final boolean FORCE_RELOAD = Boolean.getBoolean("sirona.javaagent.force.reload");
 
+    private static volatile boolean installed = false;
+
     public static void premain(final String agentArgs, final Instrumentation instrumentation) {
-        agentmain(agentArgs, instrumentation);
+        install(agentArgs, instrumentation, false);
+    }
+
+    // dynamic attach, classes already loaded are retransformed and the configuration can be changed through JMX
+    public static void agentmain(final String agentArgs, final Instrumentation instrumentation) {
+        install(agentArgs, instrumentation, true);
+    }
+
+    private static synchronized void install(final String agentArgs, final Instrumentation instrumentation, final boolean attached) {
+        if (installed) { // attached twice or attached while set on the command line
+            System.err.println("Sirona agent already installed, use JMX (org.apache.sirona.javaagent:type=configuration) to reconfigure it");
+            return;
+        }
+        installed = true;
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        if (contextClassLoader == null) { // attach listener thread, IoCs needs one
+            thread.setContextClassLoader(ClassLoader.getSystemClassLoader());
+        }
+        try {
+            start(agentArgs, instrumentation, attached);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
     }
 
     // all is done by reflection cause we change classloader to be able to enhance JVM too
     @IgnoreJRERequirement
-    public static void agentmain(final String agentArgs, final Instrumentation instrumentation) {
+    private static void start(final String agentArgs, final Instrumentation instrumentation, final boolean attached) {
 
         // just to get information on weird issues :-)
         Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
@@ -179,7 +205,20 @@ public class SironaAgent {
                 evictThread.setDaemon(true);
             }
             final boolean reloadable = instrumentation.isRetransformClassesSupported() && FORCE_RELOAD;
-            instrumentation.addTransformer(transformer, reloadable);
+            final boolean adaptive = instrumentation.isRetransformClassesSupported() && isAdaptive(loader);
+            final boolean live = instrumentation.isRetransformClassesSupported() && (attached || isLive(loader));
+            instrumentation.addTransformer(transformer, reloadable || adaptive || live);
+            if (live) { // when attached it also instruments classes already loaded
+                loader.loadClass("org.apache.sirona.javaagent.LiveConfiguration")
+                        .getMethod("start", Instrumentation.class, boolean.class)
+                        .invoke(null, instrumentation, attached && !reloadable);
+            }
+            loader.loadClass("org.apache.sirona.javaagent.TrivialMethodFilter").getMethod("start").invoke(null);
+            if (adaptive) {
+                loader.loadClass("org.apache.sirona.javaagent.AdaptiveInstrumentation")
+                        .getMethod("start", Instrumentation.class)
+                        .invoke(null, instrumentation);
+            }
 
             final Class<?> listener = loader.loadClass("org.apache.sirona.javaagent.spi.InvocationListener");
 
@@ -261,6 +300,30 @@ public class SironaAgent {
     }
 
 
+    private static boolean isLive(ClassLoader loader) {
+        try {
+            return Boolean.class.cast(
+                    loader.loadClass("org.apache.sirona.javaagent.LiveConfiguration") //
+                            .getField("ACTIVATED") //
+                            .get(null));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private static boolean isAdaptive(ClassLoader loader) {
+        try {
+            return Boolean.class.cast(
+                    loader.loadClass("org.apache.sirona.javaagent.AdaptiveInstrumentation") //
+                            .getField("ACTIVATED") //
+                            .get(null));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
     private SironaAgent() {
         // no-op
     }
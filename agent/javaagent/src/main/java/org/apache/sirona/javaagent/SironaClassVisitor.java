@@ -17,6 +17,8 @@
 package org.apache.sirona.javaagent;
 
 import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.javaagent.spi.InvocationListener;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
@@ -27,6 +29,10 @@ import org.objectweb.asm.commons.AdviceAdapter;
 import org.objectweb.asm.commons.Method;
 
 import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import static java.lang.Integer.MIN_VALUE;
 
@@ -40,25 +46,44 @@ public class SironaClassVisitor
 
     private static final Boolean TRACE_METHOD_PARAMETERS = Configuration.is( TRACE_METHOD_PARAMETERS_KEY, false );
 
+    // when CounterListener is alone the advice calls the counter directly without any AgentContext
+    private static final boolean COUNTER_FAST_PATH =
+        Configuration.is( Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.counter.fast-path", true );
+
+    // tasks given to executors are wrapped to continue the tracked path in the thread running them,
+    // opt-in since an executor relying on the type of its tasks (downcast) fails with the wrapper
+    private static final boolean PROPAGATE_PATH =
+        Configuration.is( Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.path.tracking.activate", false )
+            && Configuration.is( Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.path.tracking.propagate", false );
+
+    // declaring types of the execute()/submit() calls whose task is wrapped (internal names)
+    private static final Set<String> PROPAGATION_OWNERS = propagationOwners();
+
+    private static final String PATH_TRACKER = "org/apache/sirona/javaagent/tracking/PathTracker";
+
+    private static final String RUNNABLE_DESC = "(Ljava/lang/Runnable;)Ljava/lang/Runnable;";
+
+    private static final String CALLABLE_DESC = "(Ljava/util/concurrent/Callable;)Ljava/util/concurrent/Callable;";
+
     private static final String STATIC_INIT = "<clinit>";
 
     private static final String CONSTRUCTOR = "<init>";
 
     private static final Type AGENT_CONTEXT = Type.getType( AgentContext.class );
 
-    private static final Type STRING_TYPE = Type.getType( String.class );
-
     private static final Type OBJECT_TYPE = Type.getType( Object.class );
 
     private static final Type ARRAY_TYPE = Type.getType( Object[].class );
 
     private static final Type THROWABLE_TYPE = Type.getType( Throwable.class );
 
+    private static final Type COUNTER_TYPE = Type.getType( Counter.class );
+
     private static final Type[] STOP_WITH_OBJECT_ARGS_TYPES = new Type[]{ OBJECT_TYPE };
 
     private static final Type[] STOP_WITH_THROWABLE_ARGS_TYPES = new Type[]{ THROWABLE_TYPE };
 
-    private static final Type[] START_ARGS_TYPES = new Type[]{ OBJECT_TYPE, STRING_TYPE, ARRAY_TYPE };
+    private static final Type[] START_ARGS_TYPES = new Type[]{ OBJECT_TYPE, Type.INT_TYPE, ARRAY_TYPE };
 
     // methods
     public static final Method START_METHOD = new Method( "startOn", AGENT_CONTEXT, START_ARGS_TYPES );
@@ -68,11 +93,46 @@ public class SironaClassVisitor
     private static final Method STOP_WITH_EXCEPTION_METHOD =
         new Method( "stopWithException", Type.VOID_TYPE, STOP_WITH_THROWABLE_ARGS_TYPES );
 
+    // counter fast path methods
+    private static final Method COUNTER_METHOD = new Method( "counter", COUNTER_TYPE, new Type[]{ Type.INT_TYPE } );
+
+    private static final Method START_COUNTER_METHOD =
+        new Method( "startCounter", Type.LONG_TYPE, new Type[]{ COUNTER_TYPE } );
+
+    private static final Method STOP_COUNTER_METHOD =
+        new Method( "stopCounter", Type.VOID_TYPE, new Type[]{ COUNTER_TYPE, Type.LONG_TYPE } );
+
+    private static final Method STOP_COUNTER_WITH_EXCEPTION_METHOD =
+        new Method( "stopCounterWithException", Type.VOID_TYPE, new Type[]{ COUNTER_TYPE, Type.LONG_TYPE, THROWABLE_TYPE } );
+
+    // per method parameter capture methods
+    private static final Method PREPARE_METHOD =
+        new Method( "prepare", AGENT_CONTEXT, new Type[]{ OBJECT_TYPE, Type.INT_TYPE } );
+
+    private static final Method CAPTURE_OBJECT_METHOD =
+        new Method( "capture", AGENT_CONTEXT, new Type[]{ Type.INT_TYPE, OBJECT_TYPE } );
+
+    private static final Method CAPTURE_LONG_METHOD =
+        new Method( "capture", AGENT_CONTEXT, new Type[]{ Type.INT_TYPE, Type.LONG_TYPE } );
+
+    private static final Method CAPTURE_DOUBLE_METHOD =
+        new Method( "capture", AGENT_CONTEXT, new Type[]{ Type.INT_TYPE, Type.DOUBLE_TYPE } );
+
+    private static final Method BEGIN_METHOD = new Method( "begin", AGENT_CONTEXT, new Type[0] );
+
     private final String javaName;
 
     private final byte[] classfileBuffer;
 
-    private int count = 0;
+    private final Map<String, Integer> registered = new LinkedHashMap<String, Integer>();
+
+    private final boolean keepFrames;
+
+    private int version;
+
+    private boolean propagating;
+
+    private Set<String> trivialMethods; // name + descriptor, null if not filtered
 
     /**
      * @param writer
@@ -80,10 +140,36 @@ public class SironaClassVisitor
      * @param buffer   original class byte
      */
     public SironaClassVisitor( final ClassWriter writer, final String javaName, final byte[] buffer )
+    {
+        this( writer, javaName, buffer, false );
+    }
+
+    /**
+     * @param writer
+     * @param javaName
+     * @param buffer     original class byte
+     * @param keepFrames true if the class is read with expanded frames and the writer doesn't compute them,
+     *                   the advice then adds the frame of its exception handler
+     */
+    public SironaClassVisitor( final ClassWriter writer, final String javaName, final byte[] buffer,
+                               final boolean keepFrames )
     {
         super( ASM5, writer );
         this.javaName = javaName;
         this.classfileBuffer = buffer;
+        this.keepFrames = keepFrames;
+    }
+
+    @Override
+    public void visit( final int version, final int access, final String name, final String signature,
+                       final String superName, final String[] interfaces )
+    {
+        this.version = version;
+        if ( TrivialMethodFilter.ACTIVATED && classfileBuffer != null )
+        {
+            trivialMethods = TrivialMethodFilter.analyze( classfileBuffer );
+        }
+        super.visit( version, access, name, signature, superName, interfaces );
     }
 
     @Override
@@ -98,7 +184,9 @@ public class SironaClassVisitor
     {
         // final MethodVisitor visitor = new JSRInlinerAdapter(super.visitMethod(access, name, desc,
         // signature, exceptions), access, name, desc, signature, exceptions);
-        final MethodVisitor visitor = super.visitMethod( access, name, desc, signature, exceptions );
+        final MethodVisitor visitor = PROPAGATE_PATH //
+            ? new PropagationAdapter( super.visitMethod( access, name, desc, signature, exceptions ) ) //
+            : super.visitMethod( access, name, desc, signature, exceptions );
         if ( !isSironable( access, name ) )
         {
             return visitor;
@@ -106,10 +194,19 @@ public class SironaClassVisitor
 
         final String label = javaName.replace( "/", "." ) + "." //
             + name + "(" + typesToString( Type.getArgumentTypes( desc ) ) + ")";
-        if ( AgentContext.listeners( label, classfileBuffer ) != null )
+        final InvocationListener[] listeners = AgentContext.listeners( label, classfileBuffer );
+        if ( listeners != null && trivialMethods != null && trivialMethods.contains( name + desc ) )
+        {
+            TrivialMethodFilter.skipped( label );
+            return visitor;
+        }
+        if ( listeners != null )
         {
-            count++;
-            return new SironaAdviceAdapter( visitor, access, name, desc, label );
+            // resolved once here so the generated code only passes an int
+            final int id = AgentContext.register( label, listeners );
+            registered.put( label, id );
+            return new SironaAdviceAdapter( visitor, access, name, desc, id,
+                                            COUNTER_FAST_PATH && AgentContext.isCounterOnly( listeners ) );
         }
         return visitor;
     }
@@ -138,7 +235,83 @@ public class SironaClassVisitor
 
     public boolean wasAdviced()
     {
-        return count > 0;
+        return !registered.isEmpty() || propagating;
+    }
+
+    /**
+     * @return the key and id of the adviced methods, in visit order.
+     */
+    public Map<String, Integer> getRegisteredMethods()
+    {
+        return registered;
+    }
+
+    private static Set<String> propagationOwners()
+    {
+        final Set<String> owners = new HashSet<String>();
+        owners.add( "java/util/concurrent/Executor" );
+        owners.add( "java/util/concurrent/ExecutorService" );
+        owners.add( "java/util/concurrent/ScheduledExecutorService" );
+
+        final String configured =
+            Configuration.getProperty( Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.path.tracking.propagate.executors",
+                                       null );
+        if ( configured != null )
+        {
+            for ( final String owner : configured.split( "," ) )
+            {
+                if ( owner.trim().length() > 0 )
+                {
+                    owners.add( owner.trim().replace( '.', '/' ) );
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Wraps the task passed to executor like calls with PathTracker.propagate(). The task is the last
+     * argument so it is on top of the stack and the wrapping doesn't change the stack or the frames.
+     * Only calls declared by the executor interfaces (or configured types with
+     * <code>javaagent.path.tracking.propagate.executors</code>) are concerned: an unrelated execute(Runnable)
+     * method doesn't get a wrapper.
+     */
+    private class PropagationAdapter
+        extends MethodVisitor
+    {
+        public PropagationAdapter( final MethodVisitor visitor )
+        {
+            super( ASM5, visitor );
+        }
+
+        @Override
+        public void visitMethodInsn( final int opcode, final String owner, final String name, final String desc,
+                                     final boolean itf )
+        {
+            if ( opcode == INVOKESTATIC || owner.equals( javaName ) ) // an executor calling itself already got it
+            {
+                super.visitMethodInsn( opcode, owner, name, desc, itf );
+                return;
+            }
+
+            if ( ( "execute".equals( name ) || "submit".equals( name ) ) && desc.startsWith( "(Ljava/lang/Runnable;)" )
+                    && PROPAGATION_OWNERS.contains( owner )
+                || "start".equals( name ) && "javax/servlet/AsyncContext".equals( owner )
+                    && "(Ljava/lang/Runnable;)V".equals( desc )
+                || CONSTRUCTOR.equals( name ) && "java/lang/Thread".equals( owner )
+                    && "(Ljava/lang/Runnable;)V".equals( desc ) )
+            {
+                propagating = true;
+                super.visitMethodInsn( INVOKESTATIC, PATH_TRACKER, "propagate", RUNNABLE_DESC, false );
+            }
+            else if ( "submit".equals( name ) && desc.startsWith( "(Ljava/util/concurrent/Callable;)" )
+                && PROPAGATION_OWNERS.contains( owner ) )
+            {
+                propagating = true;
+                super.visitMethodInsn( INVOKESTATIC, PATH_TRACKER, "propagate", CALLABLE_DESC, false );
+            }
+            super.visitMethodInsn( opcode, owner, name, desc, itf );
+        }
     }
 
     private class SironaAdviceAdapter
@@ -146,21 +319,28 @@ public class SironaClassVisitor
     {
         private final boolean isStatic;
 
-        private final String label;
+        private final int id;
+
+        private final boolean counterOnly;
 
         private final String desc;
 
         public SironaAdviceAdapter( final MethodVisitor visitor, final int access, final String name, //
-                                    final String desc, final String label )
+                                    final String desc, final int id, final boolean counterOnly )
         {
             super( ASM5, visitor, access, name, desc );
             this.isStatic = Modifier.isStatic( access );
-            this.label = label;
+            this.id = id;
+            this.counterOnly = counterOnly;
             this.desc = desc;
         }
 
         private int ctxLocal;
 
+        private int counterLocal;
+
+        private int startLocal;
+
         private final Label tryStart = new Label();
 
         private final Label endLabel = new Label();
@@ -170,9 +350,32 @@ public class SironaClassVisitor
         @Override
         public void onMethodEnter()
         {
+            if ( counterOnly )
+            {
+                // final Counter counter = AgentContext.counter(id); final long start = AgentContext.startCounter(counter);
+                push( id );
+                invokeStatic( AGENT_CONTEXT, COUNTER_METHOD );
+                counterLocal = newLocal( COUNTER_TYPE );
+                storeLocal( counterLocal );
+
+                loadLocal( counterLocal );
+                invokeStatic( AGENT_CONTEXT, START_COUNTER_METHOD );
+                startLocal = newLocal( Type.LONG_TYPE );
+                storeLocal( startLocal );
+
+                visitLabel( tryStart );
+                return;
+            }
+
+            final ParameterCapture capture = TRACE_METHOD_PARAMETERS ? null : AgentContext.parameterCapture( id );
+            if ( capture != null )
+            {
+                captureParameters( capture );
+                return;
+            }
 
             // we need to call static method startOn from AgentContext
-            // startOn(final Object that, final String key, final Object[] methodParameters)
+            // startOn(final Object that, final int id, final Object[] methodParameters)
 
             if ( isStatic )
             {
@@ -183,7 +386,7 @@ public class SironaClassVisitor
                 loadThis();
             }
 
-            push( label );
+            push( id );
 
             if ( TRACE_METHOD_PARAMETERS )
             {
@@ -202,8 +405,63 @@ public class SironaClassVisitor
             visitLabel( tryStart );
         }
 
+        // AgentContext.prepare(that, id).capture(slot, arg)...begin(), only configured parameters are passed
+        // and primitives are widened to long or double instead of being boxed
+        private void captureParameters( final ParameterCapture capture )
+        {
+            if ( isStatic )
+            {
+                visitInsn( ACONST_NULL );
+            }
+            else
+            {
+                loadThis();
+            }
+            push( id );
+            invokeStatic( AGENT_CONTEXT, PREPARE_METHOD );
+
+            final Type[] argumentTypes = Type.getArgumentTypes( desc );
+            for ( int i = 0; i < argumentTypes.length; i++ )
+            {
+                final int slot = capture.slot( i );
+                if ( slot < 0 )
+                {
+                    continue;
+                }
 
+                push( slot );
+                loadArg( i );
+                switch ( argumentTypes[i].getSort() )
+                {
+                    case Type.BOOLEAN:
+                    case Type.CHAR:
+                    case Type.BYTE:
+                    case Type.SHORT:
+                    case Type.INT:
+                        visitInsn( I2L );
+                        invokeVirtual( AGENT_CONTEXT, CAPTURE_LONG_METHOD );
+                        break;
+                    case Type.LONG:
+                        invokeVirtual( AGENT_CONTEXT, CAPTURE_LONG_METHOD );
+                        break;
+                    case Type.FLOAT:
+                        visitInsn( F2D );
+                        invokeVirtual( AGENT_CONTEXT, CAPTURE_DOUBLE_METHOD );
+                        break;
+                    case Type.DOUBLE:
+                        invokeVirtual( AGENT_CONTEXT, CAPTURE_DOUBLE_METHOD );
+                        break;
+                    default:
+                        invokeVirtual( AGENT_CONTEXT, CAPTURE_OBJECT_METHOD );
+                }
+            }
 
+            invokeVirtual( AGENT_CONTEXT, BEGIN_METHOD );
+            ctxLocal = newLocal( AGENT_CONTEXT );
+            storeLocal( ctxLocal );
+
+            visitLabel( tryStart );
+        }
 
         @Override
         public void onMethodExit( final int opCode )
@@ -213,49 +471,61 @@ public class SironaClassVisitor
                 return;
             }
 
-            int stateLocal = -1;
-            if ( opCode != MIN_VALUE )
+            if ( counterOnly )
             {
-                final Type returnType = Type.getReturnType( desc );
-                final boolean isVoid = Type.VOID_TYPE.equals( returnType );
-                if ( !isVoid )
+                if ( opCode != MIN_VALUE ) // the returned value stays on the stack
                 {
-                    stateLocal = newLocal( returnType );
-                    storeLocal( stateLocal );
+                    loadLocal( counterLocal );
+                    loadLocal( startLocal );
+                    invokeStatic( AGENT_CONTEXT, STOP_COUNTER_METHOD );
                 }
-            }
-            else
-            {
-                stateLocal = newLocal( THROWABLE_TYPE );
-                storeLocal( stateLocal );
-            }
-
-            loadLocal( ctxLocal );
-            if ( stateLocal != -1 )
-            {
-                loadLocal( stateLocal );
-                if ( opCode != MIN_VALUE )
+                else
                 {
-                    valueOf( Type.getReturnType( desc ) );
+                    final int errorLocal = newLocal( THROWABLE_TYPE );
+                    storeLocal( errorLocal );
+                    loadLocal( counterLocal );
+                    loadLocal( startLocal );
+                    loadLocal( errorLocal );
+                    invokeStatic( AGENT_CONTEXT, STOP_COUNTER_WITH_EXCEPTION_METHOD );
+                    loadLocal( errorLocal );
                 }
+                return;
             }
-            else
-            {
-                visitInsn( ACONST_NULL );
-            }
+
             if ( opCode != MIN_VALUE )
             {
+                // the returned value stays on the stack and a boxed copy is given to stop(), no local is added
+                // there since it would appear, unset, in the frames of the following code
+                final Type returnType = Type.getReturnType( desc );
+                if ( Type.VOID_TYPE.equals( returnType ) )
+                {
+                    loadLocal( ctxLocal );
+                    visitInsn( ACONST_NULL );
+                }
+                else
+                {
+                    if ( returnType.getSize() == 2 )
+                    {
+                        dup2();
+                    }
+                    else
+                    {
+                        dup();
+                    }
+                    valueOf( returnType );
+                    loadLocal( ctxLocal );
+                    swap();
+                }
                 invokeVirtual( AGENT_CONTEXT, STOP_METHOD );
-            }
-            else
-            {
-                invokeVirtual( AGENT_CONTEXT, STOP_WITH_EXCEPTION_METHOD );
+                return;
             }
 
-            if ( stateLocal != -1 )
-            {
-                loadLocal( stateLocal );
-            }
+            final int errorLocal = newLocal( THROWABLE_TYPE );
+            storeLocal( errorLocal );
+            loadLocal( ctxLocal );
+            loadLocal( errorLocal );
+            invokeVirtual( AGENT_CONTEXT, STOP_WITH_EXCEPTION_METHOD );
+            loadLocal( errorLocal );
         }
 
         @Override
@@ -263,6 +533,11 @@ public class SironaClassVisitor
         {
             visitLabel( endLabel );
             catchException( tryStart, endLabel, THROWABLE_TYPE );
+            if ( keepFrames && ( version & 0xFFFF ) >= V1_6 )
+            {
+                // original locals are not used by the handler so they are TOP, the sorter appends the advice ones
+                visitFrame( F_NEW, 0, new Object[0], 1, new Object[]{ THROWABLE_TYPE.getInternalName() } );
+            }
             onMethodExit( MIN_VALUE );
             throwException();
             super.visitMaxs( 0, 0 );
@@ -16,6 +16,7 @@
  */
 package org.apache.sirona.javaagent;
 
+import org.apache.sirona.configuration.Configuration;
 import org.apache.sirona.javaagent.classloader.LoadFirstClassLoader;
 import org.apache.sirona.javaagent.logging.SironaAgentLogging;
 import org.apache.sirona.util.ClassLoaders;
@@ -33,12 +34,18 @@ import java.util.concurrent.ConcurrentMap;
 public class SironaTransformer implements ClassFileTransformer {
     private static final String DELEGATING_CLASS_LOADER = "sun.reflect.DelegatingClassLoader";
 
+    // by default frames of the original code are kept and the advice adds its own ones,
+    // computing all frames needs the common super class of types used in the methods
+    private static final boolean COMPUTE_FRAMES = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.frames.compute", false);
+
     // used to not load classes while loading and create linkage errors
     private final ConcurrentMap<ClassLoader, ClassLoader> tempClassLoaders = new ConcurrentHashMap<ClassLoader, ClassLoader>();
 
     private final boolean debug;
     private final String[] autoClassLoaderExcludes;
     private final boolean skipTempLoader;
+    private final TransformationCache cache = TransformationCache.create();
+    private final TypeHierarchy hierarchy = new TypeHierarchy();
 
     public SironaTransformer(final boolean debug, final boolean skipTempLoader, final String tempClassLoaders) {
         this.debug = debug || Boolean.getBoolean("sirona.javaagent.debug");
@@ -54,17 +61,34 @@ public class SironaTransformer implements ClassFileTransformer {
 
     public void evictClassLoaders() { // we will recreate them if needed
         tempClassLoaders.clear();
+        hierarchy.clear();
     }
 
     @Override
     public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined,
                             final ProtectionDomain protectionDomain, final byte[] classfileBuffer) throws IllegalClassFormatException {
-        if (shouldTransform(className, loader) && !isExcludedLoader(loader)) {
-            return doTransform(className, classfileBuffer);
+        if (shouldTransform(className, loader) && !isExcludedLoader(loader)
+                && AgentContext.mayInstrument(className.replace('/', '.'))) { // before parsing anything
+
+            // runtime exclusions and a live configuration are not part of the cache key, a class loaded
+            // again (other loader) must not get the advices removed by AdaptiveInstrumentation back
+            if (cache != null && classBeingRedefined == null && !AgentContext.isReconfigured() && !AgentContext.hasExcludedKeys()) {
+                return cachedTransform(loader, className, classfileBuffer);
+            }
+            return doTransform(loader, className, classfileBuffer, null);
         }
         return classfileBuffer;
     }
 
+    private byte[] cachedTransform(final ClassLoader loader, final String className, final byte[] classfileBuffer) {
+        final String entry = cache.entryName(className, classfileBuffer);
+        final byte[] cached = cache.find(entry, classfileBuffer);
+        if (cached != null) {
+            return cached;
+        }
+        return doTransform(loader, className, classfileBuffer, entry);
+    }
+
     private boolean isExcludedLoader(final ClassLoader loader) {
         if (loader == null) {
             return false;
@@ -80,12 +104,17 @@ public class SironaTransformer implements ClassFileTransformer {
     }
 
     protected byte[] doTransform(final String className, final byte[] classfileBuffer) {
+        return doTransform(ClassLoaders.current(), className, classfileBuffer, null);
+    }
+
+    private byte[] doTransform(final ClassLoader loader, final String className, final byte[] classfileBuffer, final String cacheEntry) {
         try {
             final ClassReader reader = new ClassReader(classfileBuffer);
             final ClassWriter writer = new SironaClassWriter(className == null ? null : className.replace('/', '.'),
-                    skipTempLoader ? null : tempClassLoaders, reader, ClassWriter.COMPUTE_FRAMES);
-            final SironaClassVisitor advisor = new SironaClassVisitor(writer, className, classfileBuffer);
-            reader.accept(advisor, ClassReader.SKIP_FRAMES);
+                    skipTempLoader ? null : tempClassLoaders, reader, COMPUTE_FRAMES ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS,
+                    hierarchy, loader);
+            final SironaClassVisitor advisor = new SironaClassVisitor(writer, className, classfileBuffer, !COMPUTE_FRAMES);
+            reader.accept(advisor, COMPUTE_FRAMES ? ClassReader.SKIP_FRAMES : ClassReader.EXPAND_FRAMES);
 
             if (advisor.wasAdviced()) {
                 final byte[] bytes = writer.toByteArray();
@@ -103,8 +132,14 @@ public class SironaTransformer implements ClassFileTransformer {
                         }
                     }
                 }
+                if (cacheEntry != null) {
+                    cache.store(cacheEntry, advisor.getRegisteredMethods(), bytes);
+                }
                 return bytes;
             }
+            if (cacheEntry != null) {
+                cache.store(cacheEntry, advisor.getRegisteredMethods(), null);
+            }
             return classfileBuffer;
         } catch (final Throwable e) {
             if (SironaAgentLogging.AGENT_DEBUG) {
@@ -121,13 +156,26 @@ public class SironaTransformer implements ClassFileTransformer {
     public static class SironaClassWriter extends ClassWriter {
         private final ConcurrentMap<ClassLoader, ClassLoader> tempClassLoaders;
         private final String currentClass;
+        private final TypeHierarchy hierarchy;
+        private final ClassLoader classLoader;
+        private final TypeHierarchy.TypeInfo currentType;
 
         public SironaClassWriter(final String currentClass,
                                  final ConcurrentMap<ClassLoader, ClassLoader> tempClassLoaders,
                                  final ClassReader classReader, final int flags) {
+            this(currentClass, tempClassLoaders, classReader, flags, null, null);
+        }
+
+        public SironaClassWriter(final String currentClass,
+                                 final ConcurrentMap<ClassLoader, ClassLoader> tempClassLoaders,
+                                 final ClassReader classReader, final int flags,
+                                 final TypeHierarchy hierarchy, final ClassLoader classLoader) {
             super(classReader, flags);
             this.currentClass = currentClass;
             this.tempClassLoaders = tempClassLoaders;
+            this.hierarchy = hierarchy;
+            this.classLoader = classLoader;
+            this.currentType = hierarchy != null ? new TypeHierarchy.TypeInfo(classReader) : null;
         }
 
         /**
@@ -139,6 +187,13 @@ public class SironaTransformer implements ClassFileTransformer {
          */
         @Override
         protected String getCommonSuperClass(final String type1, final String type2) {
+            if (hierarchy != null) { // from the class files, loading classes is the fallback
+                final String common = hierarchy.getCommonSuperClass(classLoader, currentType, type1, type2);
+                if (common != null) {
+                    return common;
+                }
+            }
+
             final ClassLoader loader = createTempLoader();
             Class<?> c, d;
             try {
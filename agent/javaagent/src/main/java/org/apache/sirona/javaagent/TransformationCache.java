@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.javaagent.logging.SironaAgentLogging;
+import org.apache.sirona.javaagent.spi.InvocationListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On disk cache of woven classes to avoid to parse and rewrite them again at each JVM start.
+ * <p/>
+ * Entries are stored in a sub directory named after a hash of the agent configuration (sirona properties,
+ * agent parameters, listeners and agent jar) and named after the class and a hash of its original bytecode.
+ * Classes without any instrumented method are cached too so they are not parsed at all on a hit.
+ * <p/>
+ * Woven code references methods by the id AgentContext gave at transformation time so an entry keeps
+ * the ids it was woven with and is only used if these ids can be registered again in this JVM.
+ * To not depend on the order classes are loaded in, the ids of cached methods are also kept in a registry
+ * file which is loaded when the cache is created to reserve them before anything is woven.
+ */
+public class TransformationCache {
+    private static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.cache.";
+    private static final int MAGIC = 0x51C0CAC1;
+    private static final int FORMAT_VERSION = 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String REGISTRY = "ids.registry";
+
+    private final File directory;
+    private final File registry;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final Map<String, Integer> persistedIds = new HashMap<String, Integer>(); // guarded by this
+
+    public TransformationCache(final File root, final long maxSize) {
+        this.directory = new File(root, configurationHash());
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("can't create " + directory.getAbsolutePath());
+        }
+
+        final File[] entries = directory.listFiles();
+        if (entries != null) {
+            for (final File entry : entries) {
+                if (entry.getName().endsWith(".tmp")) { // a crashed JVM
+                    entry.delete();
+                } else if (!REGISTRY.equals(entry.getName())) {
+                    size.addAndGet(entry.length());
+                }
+            }
+        }
+
+        this.registry = new File(directory, REGISTRY);
+        loadRegistry();
+    }
+
+    /**
+     * @return the cache if org.apache.sirona.javaagent.cache.directory is set, null otherwise.
+     */
+    public static TransformationCache create() {
+        final String directory = Configuration.getProperty(PREFIX + "directory", null);
+        if (directory == null || directory.trim().length() == 0) {
+            return null;
+        }
+        try {
+            return new TransformationCache(new File(directory.trim()),
+                Long.parseLong(Configuration.getProperty(PREFIX + "max-size", Long.toString(64L * 1024 * 1024))));
+        } catch (final Exception e) {
+            SironaAgentLogging.debug("can''t use transformation cache {0}: {1}", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public String entryName(final String className, final byte[] original) {
+        return className.replace('/', '.') + '-' + hash(original) + ".class";
+    }
+
+    /**
+     * @param entry the name returned by {@link #entryName(String, byte[])}.
+     * @param original the original bytecode, used to find the listeners of the cached methods.
+     * @return the woven bytecode, the original one if the class was not instrumented
+     * or null if there is no usable entry.
+     */
+    public byte[] find(final String entry, final byte[] original) {
+        final File file = new File(directory, entry);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            final int methods = in.readInt();
+            for (int i = 0; i < methods; i++) {
+                final int id = in.readInt();
+                final String key = in.readUTF();
+                final InvocationListener[] listeners = AgentContext.listeners(key, original);
+                if (listeners == null || !AgentContext.register(id, key, listeners)) {
+                    return null; // id already taken in this JVM, weave again
+                }
+            }
+
+            final int length = in.readInt();
+            if (length < 0) {
+                return original;
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        } catch (final IOException e) {
+            SironaAgentLogging.debug("can''t read {0}: {1}", file.getAbsolutePath(), e.getMessage());
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores an entry, the file is written next to its final location then renamed so a concurrent reader
+     * (or another JVM) never sees a partial entry.
+     *
+     * @param entry the name returned by {@link #entryName(String, byte[])}.
+     * @param methods key to id of the instrumented methods.
+     * @param woven the woven bytecode or null if the class was not instrumented.
+     */
+    public void store(final String entry, final Map<String, Integer> methods, final byte[] woven) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(woven == null ? 64 : woven.length + 64 * (methods.size() + 1));
+        final DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(methods.size());
+            for (final Map.Entry<String, Integer> method : methods.entrySet()) {
+                out.writeInt(method.getValue());
+                out.writeUTF(method.getKey());
+            }
+            if (woven == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(woven.length);
+                out.write(woven);
+            }
+            out.flush();
+        } catch (final IOException e) { // can't happen in memory
+            return;
+        }
+
+        // an entry woven again (its ids were taken) replaces the previous one
+        final File target = new File(directory, entry);
+        final long length = buffer.size() - target.length();
+        if (size.addAndGet(length) > maxSize) {
+            size.addAndGet(-length);
+            SironaAgentLogging.debug("transformation cache full, not caching {0}", entry);
+            return;
+        }
+
+        // before the entry so an entry on disk always has its ids in the registry
+        persistIds(methods);
+
+        File tmp = null;
+        FileOutputStream fos = null;
+        try {
+            tmp = File.createTempFile(entry, ".tmp", directory);
+            fos = new FileOutputStream(tmp);
+            buffer.writeTo(fos);
+            fos.close();
+            fos = null;
+
+            if (!tmp.renameTo(target)) { // already written by another thread/JVM (or not atomic on this platform)
+                size.addAndGet(-length);
+                tmp.delete();
+            }
+        } catch (final IOException e) {
+            size.addAndGet(-length);
+            if (tmp != null) {
+                tmp.delete();
+            }
+            SironaAgentLogging.debug("can''t write {0}: {1}", target.getAbsolutePath(), e.getMessage());
+        } finally {
+            close(fos);
+        }
+    }
+
+    // reserves the ids of the previous runs then rewrites the registry without the records which can't be used
+    private synchronized void loadRegistry() {
+        final Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+        if (registry.isFile()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(registry)));
+                if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                    while (true) { // records are appended so the last one of a key wins
+                        final int id = in.readInt();
+                        ids.put(in.readUTF(), id);
+                    }
+                }
+            } catch (final EOFException e) {
+                // end of the registry or a record partially written by a crashed JVM
+            } catch (final IOException e) {
+                SironaAgentLogging.debug("can''t read {0}: {1}", registry.getAbsolutePath(), e.getMessage());
+            } finally {
+                close(in);
+            }
+        }
+
+        for (final Map.Entry<String, Integer> id : ids.entrySet()) {
+            // an id given to two methods by JVMs sharing the directory is only reserved once,
+            // entries using it for the other method are woven again
+            if (AgentContext.reserve(id.getValue(), id.getKey())) {
+                persistedIds.put(id.getKey(), id.getValue());
+            }
+        }
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            for (final Map.Entry<String, Integer> id : persistedIds.entrySet()) {
+                out.writeInt(id.getValue());
+                out.writeUTF(id.getKey());
+            }
+            out.flush();
+        } catch (final IOException e) { // can't happen in memory
+            return;
+        }
+
+        File tmp = null;
+        FileOutputStream fos = null;
+        try {
+            tmp = File.createTempFile(REGISTRY, ".tmp", directory);
+            fos = new FileOutputStream(tmp);
+            buffer.writeTo(fos);
+            fos.close();
+            fos = null;
+
+            if (!tmp.renameTo(registry) && !(registry.delete() && tmp.renameTo(registry))) {
+                tmp.delete();
+            }
+        } catch (final IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            SironaAgentLogging.debug("can''t write {0}: {1}", registry.getAbsolutePath(), e.getMessage());
+        } finally {
+            close(fos);
+        }
+    }
+
+    private synchronized void persistIds(final Map<String, Integer> methods) {
+        DataOutputStream out = null;
+        try {
+            for (final Map.Entry<String, Integer> method : methods.entrySet()) {
+                if (method.getValue().equals(persistedIds.get(method.getKey()))) {
+                    continue;
+                }
+                if (out == null) {
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(registry, true)));
+                }
+                out.writeInt(method.getValue());
+                out.writeUTF(method.getKey());
+                persistedIds.put(method.getKey(), method.getValue());
+            }
+        } catch (final IOException e) {
+            SironaAgentLogging.debug("can''t write {0}: {1}", registry.getAbsolutePath(), e.getMessage());
+        } finally {
+            close(out);
+        }
+    }
+
+    // anything changing the instrumentation plan or the generated code needs to be there
+    private static String configurationHash() {
+        final StringBuilder builder = new StringBuilder("v").append(FORMAT_VERSION).append('\n');
+
+        final Map<String, String> sorted = new TreeMap<String, String>();
+        for (final Map.Entry<Object, Object> entry : Configuration.properties().entrySet()) {
+            final String key = String.valueOf(entry.getKey());
+            if (key.startsWith(Configuration.CONFIG_PROPERTY_PREFIX) || key.startsWith("sirona.")) {
+                sorted.put(key, String.valueOf(entry.getValue()));
+            }
+        }
+        for (final Map.Entry<String, String> entry : AgentContext.getAgentParameters().entrySet()) {
+            sorted.put("agent-parameter." + entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, String> entry : sorted.entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+
+        for (final InvocationListener listener : AgentContext.allListeners()) {
+            builder.append(listener.getClass().getName()).append('\n');
+        }
+
+        // a new agent version can generate different code
+        final CodeSource codeSource = TransformationCache.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            final URL location = codeSource.getLocation();
+            builder.append(location.toExternalForm());
+            if ("file".equals(location.getProtocol())) {
+                final File jar = new File(location.getFile());
+                builder.append('-').append(jar.length()).append('-').append(jar.lastModified());
+            }
+        }
+
+        try {
+            return hash(builder.toString().getBytes("UTF-8"));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(final byte[] bytes) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+    }
+}
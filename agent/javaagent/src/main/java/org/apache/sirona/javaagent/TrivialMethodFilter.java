@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.javaagent.logging.SironaAgentLogging;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the methods too small to be worth an advice, its cost would dominate theirs: methods with less than
+ * min-instructions instructions (delegating methods, getters, setters) and, with skip-leaf, methods without any call,
+ * loop, allocation, synchronization or throw (pure field access or computation).
+ * <p/>
+ * Skipped methods are logged in debug mode and listed through JMX (org.apache.sirona.javaagent:type=trivial-methods).
+ */
+public class TrivialMethodFilter implements TrivialMethodFilterMBean {
+    private static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.trivial.";
+
+    public static final int MIN_INSTRUCTIONS = Configuration.getInteger(PREFIX + "min-instructions", 0);
+    public static final boolean SKIP_LEAF = Configuration.is(PREFIX + "skip-leaf", false);
+    public static final boolean ACTIVATED = MIN_INSTRUCTIONS > 0 || SKIP_LEAF;
+
+    private static final ConcurrentMap<String, Boolean> SKIPPED = new ConcurrentHashMap<String, Boolean>();
+
+    // called by reflection from SironaAgent, not from the transformer to not load JMX while loading a class
+    public static void start() {
+        if (!ACTIVATED) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new TrivialMethodFilter(),
+                new ObjectName(Configuration.CONFIG_PROPERTY_PREFIX + "javaagent:type=trivial-methods"));
+        } catch (final Exception e) {
+            SironaAgentLogging.debug("can''t register trivial methods MBean: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param classfileBuffer the class to analyze.
+     * @return name + descriptor of the trivial methods of the class.
+     */
+    public static Set<String> analyze(final byte[] classfileBuffer) {
+        return analyze(classfileBuffer, MIN_INSTRUCTIONS, SKIP_LEAF);
+    }
+
+    static Set<String> analyze(final byte[] classfileBuffer, final int minInstructions, final boolean skipLeaf) {
+        final Set<String> trivial = new HashSet<String>();
+        new ClassReader(classfileBuffer).accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc,
+                                             final String signature, final String[] exceptions) {
+                final MethodAnalyzer analyzer = new MethodAnalyzer(name + desc, trivial, minInstructions, skipLeaf);
+                analyzer.leaf = (access & Opcodes.ACC_SYNCHRONIZED) == 0;
+                return analyzer;
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return trivial;
+    }
+
+    static void skipped(final String key) {
+        if (SKIPPED.put(key, Boolean.TRUE) == null) {
+            SironaAgentLogging.debug("not instrumenting trivial method {0}", key);
+        }
+    }
+
+    public String[] getSkippedMethods() {
+        final Collection<String> keys = SKIPPED.keySet();
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    public int getMinInstructions() {
+        return MIN_INSTRUCTIONS;
+    }
+
+    public boolean isSkipLeaf() {
+        return SKIP_LEAF;
+    }
+
+    private static class MethodAnalyzer extends MethodVisitor {
+        private final String method;
+        private final Set<String> trivial;
+        private final int minInstructions;
+        private final boolean skipLeaf;
+
+        private final Set<Label> visited = new HashSet<Label>();
+        private boolean code = false;
+        private int instructions = 0;
+        private boolean leaf; // no call, loop, allocation, monitor nor throw
+
+        private MethodAnalyzer(final String method, final Set<String> trivial, final int minInstructions, final boolean skipLeaf) {
+            super(Opcodes.ASM5);
+            this.method = method;
+            this.trivial = trivial;
+            this.minInstructions = minInstructions;
+            this.skipLeaf = skipLeaf;
+        }
+
+        @Override
+        public void visitCode() {
+            code = true; // abstract and native methods don't have any so are never trivial
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            visited.add(label);
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            instructions++;
+            if (opcode == Opcodes.ATHROW || opcode == Opcodes.MONITORENTER) {
+                leaf = false;
+            }
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            instructions++;
+            if (opcode == Opcodes.NEWARRAY) {
+                leaf = false;
+            }
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            instructions++;
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            instructions++;
+            if (opcode == Opcodes.NEW || opcode == Opcodes.ANEWARRAY) {
+                leaf = false;
+            }
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+            instructions++;
+        }
+
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+            instructions++;
+            leaf = false;
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(final String name, final String desc, final Handle bsm, final Object... bsmArgs) {
+            instructions++;
+            leaf = false;
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            instructions++;
+            if (visited.contains(label)) { // backward jump
+                leaf = false;
+            }
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+            instructions++;
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            instructions++;
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            instructions++;
+            jumps(dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            instructions++;
+            jumps(dflt, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String desc, final int dims) {
+            instructions++;
+            leaf = false;
+        }
+
+        @Override
+        public void visitEnd() {
+            final boolean small = minInstructions > 0 && instructions < minInstructions;
+            if (code && (small || skipLeaf && leaf)) {
+                trivial.add(method);
+            }
+        }
+
+        private void jumps(final Label dflt, final Label[] labels) {
+            if (visited.contains(dflt)) {
+                leaf = false;
+            }
+            for (final Label label : labels) {
+                if (visited.contains(label)) {
+                    leaf = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.configuration.Configuration;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Resolves the type hierarchy needed to compute frames from the class files (superclass and interfaces
+ * are read from the constant pool) instead of loading the classes: no static initializer is triggered
+ * and no temporary classloader is needed.
+ * <p/>
+ * Resolved types are cached by classloader, each cache being bounded by
+ * org.apache.sirona.javaagent.hierarchy.cache-size entries.
+ */
+public class TypeHierarchy {
+    private static final String OBJECT = "java/lang/Object";
+    private static final int CACHE_SIZE = Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.hierarchy.cache-size", 4096);
+
+    private final Map<ClassLoader, Map<String, TypeInfo>> types = new WeakHashMap<ClassLoader, Map<String, TypeInfo>>();
+    private final Map<String, TypeInfo> bootstrapTypes = new TypeCache(CACHE_SIZE);
+
+    /**
+     * @param loader the loader of the class being transformed.
+     * @param current the class being transformed, its class file can't be loaded from the loader yet.
+     * @param type1 an internal name.
+     * @param type2 another internal name.
+     * @return the common super class of the two types or null if the class file of one of them can't be found.
+     */
+    public String getCommonSuperClass(final ClassLoader loader, final TypeInfo current, final String type1, final String type2) {
+        final TypeInfo info1 = find(loader, current, type1);
+        final TypeInfo info2 = find(loader, current, type2);
+        if (info1 == null || info2 == null) {
+            return null;
+        }
+
+        try {
+            if (isAssignableFrom(loader, current, info1, info2)) {
+                return type1;
+            }
+            if (isAssignableFrom(loader, current, info2, info1)) {
+                return type2;
+            }
+            if (info1.isInterface || info2.isInterface) {
+                return OBJECT;
+            }
+
+            TypeInfo parent = info1;
+            do {
+                if (parent.superName == null) {
+                    return OBJECT;
+                }
+                parent = find(loader, current, parent.superName);
+                if (parent == null) {
+                    return null;
+                }
+            } while (!isAssignableFrom(loader, current, parent, info2));
+            return parent.name;
+        } catch (final UnresolvedTypeException ute) {
+            return null;
+        }
+    }
+
+    public void clear() {
+        synchronized (types) {
+            types.clear();
+        }
+        synchronized (bootstrapTypes) {
+            bootstrapTypes.clear();
+        }
+    }
+
+    private boolean isAssignableFrom(final ClassLoader loader, final TypeInfo current, final TypeInfo type, final TypeInfo from) {
+        if (type.name.equals(from.name) || OBJECT.equals(type.name)) {
+            return true;
+        }
+        if (from.superName != null && (type.name.equals(from.superName) || isAssignableFrom(loader, current, type, resolve(loader, current, from.superName)))) {
+            return true;
+        }
+        if (type.isInterface) {
+            for (final String itf : from.interfaces) {
+                if (type.name.equals(itf) || isAssignableFrom(loader, current, type, resolve(loader, current, itf))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private TypeInfo resolve(final ClassLoader loader, final TypeInfo current, final String name) {
+        final TypeInfo info = find(loader, current, name);
+        if (info == null) {
+            throw new UnresolvedTypeException();
+        }
+        return info;
+    }
+
+    private TypeInfo find(final ClassLoader loader, final TypeInfo current, final String name) {
+        if (current != null && current.name.equals(name)) {
+            return current;
+        }
+
+        final Map<String, TypeInfo> cache = cache(loader);
+        synchronized (cache) {
+            final TypeInfo info = cache.get(name);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        final TypeInfo info = read(loader, name);
+        if (info != null) {
+            synchronized (cache) {
+                cache.put(name, info);
+            }
+        }
+        return info;
+    }
+
+    private Map<String, TypeInfo> cache(final ClassLoader loader) {
+        if (loader == null) {
+            return bootstrapTypes;
+        }
+
+        synchronized (types) {
+            Map<String, TypeInfo> cache = types.get(loader);
+            if (cache == null) {
+                cache = new TypeCache(CACHE_SIZE);
+                types.put(loader, cache);
+            }
+            return cache;
+        }
+    }
+
+    private static TypeInfo read(final ClassLoader loader, final String name) {
+        final String resource = name + ".class";
+        final InputStream stream = loader != null ? loader.getResourceAsStream(resource) : ClassLoader.getSystemResourceAsStream(resource);
+        if (stream == null) {
+            return null;
+        }
+
+        try {
+            return new TypeInfo(new ClassReader(stream)); // only reads the constant pool
+        } catch (final IOException e) {
+            return null;
+        } catch (final RuntimeException e) { // unsupported class version for instance
+            return null;
+        } finally {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+    }
+
+    public static class TypeInfo {
+        private final String name;
+        private final String superName;
+        private final String[] interfaces;
+        private final boolean isInterface;
+
+        public TypeInfo(final ClassReader reader) {
+            this.name = reader.getClassName();
+            this.superName = reader.getSuperName();
+            this.interfaces = reader.getInterfaces();
+            this.isInterface = (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+
+    private static class TypeCache extends LinkedHashMap<String, TypeInfo> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private TypeCache(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, TypeInfo> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class UnresolvedTypeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { // only used to stop the walk
+            return this;
+        }
+    }
+}
@@ -18,13 +18,10 @@ package org.apache.sirona.javaagent.listener;
 
 import org.apache.sirona.configuration.predicate.PredicateEvaluator;
 import org.apache.sirona.javaagent.AgentContext;
+import org.apache.sirona.javaagent.spi.ClassFilter;
 import org.apache.sirona.javaagent.spi.InvocationListener;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-public abstract class ConfigurableListener<I, R> implements InvocationListener {
-    private static final AtomicInteger ID_GENERATOR = new AtomicInteger(1); // 0 is reserved for CounterListener
-
+public abstract class ConfigurableListener<I, R> implements InvocationListener, ClassFilter {
     public static final PredicateEvaluator DEFAULT_EXCLUDES = new PredicateEvaluator(
             // sirona itself
             "prefix:org.apache.sirona," +
@@ -36,10 +33,9 @@ public abstract class ConfigurableListener<I, R> implements InvocationListener {
             "container:tomee", ",");
     public static final PredicateEvaluator DEFAULT_INCLUDES = new PredicateEvaluator("true:true", ",");
 
-    private int id = ID_GENERATOR.incrementAndGet();
-
-    private PredicateEvaluator includes = DEFAULT_INCLUDES;
-    private PredicateEvaluator excludes = DEFAULT_EXCLUDES;
+    // volatile since they can be changed at runtime (see LiveConfiguration)
+    private volatile PredicateEvaluator includes = DEFAULT_INCLUDES;
+    private volatile PredicateEvaluator excludes = DEFAULT_EXCLUDES;
 
     protected void before(final String key, final I reference) {
         // no-op
@@ -55,13 +51,13 @@ public abstract class ConfigurableListener<I, R> implements InvocationListener {
 
     @Override
     public void before(final AgentContext context) {
-        context.put(id, this);
+        context.setState(this);
         before(context.getKey(), (I) context.getReference());
     }
 
     @Override
     public void after(final AgentContext context, final Object result, final Throwable error) {
-        final ConfigurableListener<I, R> listener = context.get(id, ConfigurableListener.class);
+        final ConfigurableListener<I, R> listener = context.getState(ConfigurableListener.class);
         if (listener != null) {
             if (error != null) {
                 listener.onSuccess(context.getKey(), (I) context.getReference(), (R) result);
@@ -76,6 +72,12 @@ public abstract class ConfigurableListener<I, R> implements InvocationListener {
         return includes.matches(name) && !excludes.matches(name);
     }
 
+    @Override
+    public boolean acceptClass(final String className) {
+        final String methodPrefix = className + '.';
+        return includes.mayMatchStartingWith(methodPrefix) && !excludes.matchesAllStartingWith(methodPrefix);
+    }
+
     // @AutoSet should be added to children
     public void setIncludes(final String includes) {
         this.includes = new PredicateEvaluator(includes, ",");
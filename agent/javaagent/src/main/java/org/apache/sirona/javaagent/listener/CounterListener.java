@@ -21,19 +21,20 @@ import org.apache.sirona.configuration.ioc.AutoSet;
 import org.apache.sirona.configuration.predicate.PredicateEvaluator;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.javaagent.AgentContext;
+import org.apache.sirona.javaagent.spi.ClassFilter;
 import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.spi.Order;
 
 @Order(0)
 @AutoSet
-public class CounterListener extends AbstractPerformanceInterceptor<String> implements InvocationListener {
+public class CounterListener extends AbstractPerformanceInterceptor<String> implements InvocationListener, ClassFilter {
 
     public static final String DISABLE_PARAMETER_KEY = "disable-counter-listener";
 
-    private static final int KEY = -1;
-
-    private PredicateEvaluator includes = ConfigurableListener.DEFAULT_INCLUDES;
-    private PredicateEvaluator excludes = ConfigurableListener.DEFAULT_EXCLUDES;
+    // volatile since they can be changed at runtime (see LiveConfiguration)
+    private volatile PredicateEvaluator includes = ConfigurableListener.DEFAULT_INCLUDES;
+    private volatile PredicateEvaluator excludes = ConfigurableListener.DEFAULT_EXCLUDES;
 
     private boolean disabled;
 
@@ -45,6 +46,15 @@ public class CounterListener extends AbstractPerformanceInterceptor<String> impl
                 && !disabled;
     }
 
+    @Override
+    public boolean acceptClass(final String className) {
+        final String methodPrefix = className + '.';
+        return !disabled //
+                && !AgentContext.getAgentParameters().containsKey( DISABLE_PARAMETER_KEY ) //
+                && includes.mayMatchStartingWith(methodPrefix) //
+                && !excludes.matchesAllStartingWith(methodPrefix);
+    }
+
     // @AutoSet
     public void setIncludes(final String includes) {
         this.includes = new PredicateEvaluator(includes, ",");
@@ -58,12 +68,40 @@ public class CounterListener extends AbstractPerformanceInterceptor<String> impl
     @Override
     public void before(final AgentContext ctx) {
         final String key = ctx.getKey();
-        ctx.put(KEY, new CounterListener().before(key, key));
+        if (isAdaptive()) {
+            ctx.setState(before(key, key));
+            return;
+        }
+
+        // no activation context needed, just keep the counter and the start time (unboxed)
+        try {
+            // registered methods keep their counter in the registry, no lookup per call
+            final Counter counter = ctx.getId() < 0 ? findCounter(key, key) : AgentContext.counter(ctx.getId());
+            if (counter == null) { // repository not ready
+                return;
+            }
+            ctx.setLongState(Repository.INSTANCE.startNanos(counter));
+            ctx.setState(counter);
+        } catch (final Exception e) {
+            // ignore, can happen on start when intercepting some classes and all agent classes not really loaded
+        }
     }
 
     @Override
     public void after(final AgentContext context, final Object result, final Throwable error) {
-        final Context perfCtx = context.get(KEY, Context.class);
+        final Object state = context.getState(Object.class);
+        if (state == null) { // before() failed
+            return;
+        }
+        if (Counter.class.isInstance(state)) {
+            final long elapsedTime = Repository.INSTANCE.stop(Counter.class.cast(state), context.getLongState());
+            if (error != null) {
+                addFailure(error, elapsedTime);
+            }
+            return;
+        }
+
+        final Context perfCtx = Context.class.cast(state);
         if (error == null) {
             perfCtx.stop();
         } else {
@@ -71,6 +109,15 @@ public class CounterListener extends AbstractPerformanceInterceptor<String> impl
         }
     }
 
+    public static void failure(final Throwable error, final long elapsedTime) {
+        addFailure(error, elapsedTime);
+    }
+
+    @Override
+    public boolean isAdaptive() {
+        return super.isAdaptive();
+    }
+
     @Override
     protected Counter.Key getKey(final String key, final String name) {
         return AgentContext.key(key);
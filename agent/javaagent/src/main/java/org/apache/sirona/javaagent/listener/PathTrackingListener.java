@@ -31,8 +31,6 @@ import org.apache.sirona.spi.Order;
     extends ConfigurableListener
 {
 
-    private static final Integer PATH_TRACKER_KEY = -2;// "Sirona-path-tracker-key".hashCode();
-
     private static final boolean TRACKING_ACTIVATED =
         Configuration.is( Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.path.tracking.activate", false );
 
@@ -49,6 +47,12 @@ import org.apache.sirona.spi.Order;
         return TRACKING_ACTIVATED;
     }
 
+    @Override
+    public boolean acceptClass( final String className )
+    {
+        return TRACKING_ACTIVATED && super.acceptClass( className );
+    }
+
     /**
      * executed before method called to configure the start {@link org.apache.sirona.pathtracking.PathTrackingInformation}
      * and set various thread local variable as invocation level
@@ -67,7 +71,7 @@ import org.apache.sirona.spi.Order;
 
         final PathTrackingInformation pathTrackingInformation = new PathTrackingInformation( className, methodName );
 
-        context.put( PATH_TRACKER_KEY, PathTracker.start( pathTrackingInformation, context.getReference() ) );
+        context.setState( PathTracker.start( pathTrackingInformation, context.getReference() ) );
     }
 
     /**
@@ -120,7 +124,7 @@ import org.apache.sirona.spi.Order;
     }
 
     /**
-     * will call {@link org.apache.sirona.javaagent.tracking.PathTracker#stop(Object reference)}
+     * will call {@link org.apache.sirona.javaagent.tracking.PathTracker#stop(Object reference, Throwable error)}
      *
      * @param context
      * @param result
@@ -129,6 +133,6 @@ import org.apache.sirona.spi.Order;
     @Override
     public void after( AgentContext context, Object result, Throwable error )
     {
-        context.get( PATH_TRACKER_KEY, PathTracker.class ).stop( context.getReference() );
+        context.getState( PathTracker.class ).stop( context.getReference(), error );
     }
 }
@@ -31,12 +31,15 @@ import org.apache.sirona.store.DataStoreFactory;
 import org.apache.sirona.store.tracking.PathTrackingDataStore;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Contains logic to track class#method invocation path
@@ -55,14 +58,8 @@ public class PathTracker
         IoCs.findOrCreateInstance( UniqueIdGenerator.class );
 
 
-    private static final ThreadLocal<Context> THREAD_LOCAL = new ThreadLocal<Context>()
-    {
-        @Override
-        protected Context initialValue()
-        {
-            return new Context(ID_GENERATOR.next());
-        }
-    };
+    // no initial value: a thread which doesn't track any path doesn't need a context (see propagate())
+    private static final ThreadLocal<Context> THREAD_LOCAL = new ThreadLocal<Context>();
 
     private final PathTrackingInformation currentPathTrackingInformation;
 
@@ -77,6 +74,14 @@ public class PathTracker
 
     protected static ExecutorService EXECUTORSERVICE;
 
+    // start of the contexts of propagated tasks: no method of the task starts the path so all of them change the level
+    private static final PathTrackingInformation PROPAGATED_TASK = new PathTrackingInformation( "propagated", "task" );
+
+    // only paths stored at once (not single store) can be sampled
+    private static final PathTrackingSampler SAMPLER = PathTrackingSampler.ACTIVATED && USE_STORE && !USE_SINGLE_STORE //
+        ? IoCs.processInstance( new PathTrackingSampler( PATH_TRACKING_DATA_STORE ) ) //
+        : null;
+
     static
     {
 
@@ -142,7 +147,12 @@ public class PathTracker
     public static PathTracker start( PathTrackingInformation currentPathTrackingInformation, final Object reference )
     {
 
-        final Context context = THREAD_LOCAL.get();
+        Context context = THREAD_LOCAL.get();
+        if ( context == null )
+        {
+            context = new Context( ID_GENERATOR.next() );
+            THREAD_LOCAL.set( context );
+        }
 
         int level = 0;
         final PathTrackingInformation startPathTrackingInformation = context.getStartPathTrackingInformation();
@@ -181,9 +191,22 @@ public class PathTracker
 
 
     public void stop( final Object reference )
+    {
+        stop( reference, null );
+    }
+
+    /**
+     * @param reference the instance the method was invoked on.
+     * @param error the exception thrown by the method, null if it returned normally.
+     */
+    public void stop( final Object reference, final Throwable error )
     {
         final long end = System.nanoTime();
         final Context context = THREAD_LOCAL.get();
+        if ( context == null ) // started before the agent or the path was already released
+        {
+            return;
+        }
 
         final String uuid = context.getUuid();
 
@@ -225,7 +248,11 @@ public class PathTracker
         if ( this.currentPathTrackingInformation.getLevel() == 1 && //
             ( context.getStartPathObject() != null && context.getStartPathObject() == reference ) )
         { // 0 is never reached so 1 is first
-            if ( USE_STORE && !USE_SINGLE_STORE )
+            // sampled out paths are discarded before any serialization
+            final Collection<PathTrackingEntry> entries = SAMPLER == null //
+                ? context.getEntries() //
+                : SAMPLER.sample( pathTrackingEntry, error, context.getEntries(), end );
+            if ( USE_STORE && !USE_SINGLE_STORE && !entries.isEmpty() )
             {
                 try
                 {
@@ -234,7 +261,7 @@ public class PathTracker
                         @Override
                         public void run()
                         {
-                            PATH_TRACKING_DATA_STORE.store( context.getEntries() );
+                            PATH_TRACKING_DATA_STORE.store( entries );
                             PathTracker.cleanUp();
                         }
                     };
@@ -270,6 +297,178 @@ public class PathTracker
         }
     }
 
+    /**
+     * Captures the path tracked by the current thread so the task continues it when run in another thread:
+     * methods it invokes get the same tracking id and are children of the level the task was submitted from.
+     *
+     * @param task the task given to an executor.
+     * @return the task itself if no path is tracked (nothing is allocated then), a wrapper otherwise.
+     */
+    public static Runnable propagate( final Runnable task )
+    {
+        final Context context = THREAD_LOCAL.get();
+        if ( task == null || context == null || !isWrappable( task ) )
+        {
+            return task;
+        }
+        open( context );
+        return new PropagatingRunnable( task, context.getUuid(), context.getLevel().get() );
+    }
+
+    /**
+     * @see #propagate(Runnable)
+     */
+    public static <V> Callable<V> propagate( final Callable<V> task )
+    {
+        final Context context = THREAD_LOCAL.get();
+        if ( task == null || context == null || !isWrappable( task ) )
+        {
+            return task;
+        }
+        open( context );
+        return new PropagatingCallable<V>( task, context.getUuid(), context.getLevel().get() );
+    }
+
+    // entries of tasks ending before the root are sampled with the path
+    private static void open( final Context context )
+    {
+        if ( SAMPLER != null && context.getStartPathObject() != null ) // thread running the root
+        {
+            SAMPLER.open( context.getUuid() );
+        }
+    }
+
+    // executors can rely on other types of the task (priority queues, futures) that the wrapper would hide
+    // and a task going through delegating executors is wrapped once
+    private static boolean isWrappable( final Object task )
+    {
+        return !PropagatingRunnable.class.isInstance( task ) && !PropagatingCallable.class.isInstance( task )
+            && !Comparable.class.isInstance( task ) && !Future.class.isInstance( task );
+    }
+
+    // called on the thread running a propagated task, returns the context to give back to leave()
+    private static Context enter( final String uuid, final int level )
+    {
+        final Context previous = THREAD_LOCAL.get();
+        if ( previous != null && uuid.equals( previous.getUuid() ) ) // run by the submitting thread
+        {
+            return previous;
+        }
+
+        final Context context = new Context( uuid );
+        context.getLevel().set( level );
+        context.setStartPathTrackingInformation( PROPAGATED_TASK );
+        THREAD_LOCAL.set( context );
+        return previous;
+    }
+
+    private static void leave( final Context previous )
+    {
+        final Context context = THREAD_LOCAL.get();
+        if ( context == previous )
+        {
+            return;
+        }
+
+        // the path ends in the submitting thread, entries of this part are stored with the same tracking id
+        if ( context != null && USE_STORE && !USE_SINGLE_STORE && !context.getEntries().isEmpty() //
+            && ( SAMPLER == null || !SAMPLER.park( context.getUuid(), context.getEntries() ) ) )
+        {
+            try
+            {
+                PATH_TRACKING_DATA_STORE.store( context.getEntries() );
+            }
+            catch ( Throwable e )
+            {
+                // as implementations can generate exception we simply ignore all exception happening here!!
+            }
+        }
+
+        if ( previous == null )
+        {
+            THREAD_LOCAL.remove();
+        }
+        else
+        {
+            THREAD_LOCAL.set( previous );
+        }
+    }
+
+    private static class PropagatingRunnable
+        implements Runnable
+    {
+        private final Runnable delegate;
+
+        private final String uuid;
+
+        private final int level;
+
+        private PropagatingRunnable( final Runnable delegate, final String uuid, final int level )
+        {
+            this.delegate = delegate;
+            this.uuid = uuid;
+            this.level = level;
+        }
+
+        @Override
+        public void run()
+        {
+            final Context previous = enter( uuid, level );
+            try
+            {
+                delegate.run();
+            }
+            finally
+            {
+                leave( previous );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return delegate.toString();
+        }
+    }
+
+    private static class PropagatingCallable<V>
+        implements Callable<V>
+    {
+        private final Callable<V> delegate;
+
+        private final String uuid;
+
+        private final int level;
+
+        private PropagatingCallable( final Callable<V> delegate, final String uuid, final int level )
+        {
+            this.delegate = delegate;
+            this.uuid = uuid;
+            this.level = level;
+        }
+
+        @Override
+        public V call()
+            throws Exception
+        {
+            final Context previous = enter( uuid, level );
+            try
+            {
+                return delegate.call();
+            }
+            finally
+            {
+                leave( previous );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return delegate.toString();
+        }
+    }
+
     @Destroying
     public void destroy()
     {
@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent.tracking;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.configuration.ioc.Created;
+import org.apache.sirona.configuration.ioc.Destroying;
+import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.apache.sirona.store.tracking.PathTrackingDataStore;
+import org.apache.sirona.util.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tail based sampling: the decision is taken when the root method of a path completes so only slow
+ * or failed paths are stored, plus a reservoir of the other ones.
+ * <p/>
+ * A path is kept when its root threw an exception or took more than
+ * <code>org.apache.sirona.javaagent.path.tracking.sampling.threshold</code> milliseconds (1000 by default),
+ * the threshold can be overriden per root method with
+ * <code>org.apache.sirona.javaagent.path.tracking.sampling.threshold.&lt;class&gt;.&lt;method&gt;(&lt;parameter types&gt;)</code>.
+ * <p/>
+ * Other paths go through a reservoir keeping <code>reservoir.size</code> of them (10 by default) uniformly
+ * picked in each window of <code>reservoir.window</code> milliseconds (60000 by default), they are stored
+ * when the next window starts or by a periodic flush if no path completes after the window.
+ * <p/>
+ * Entries of propagated tasks ending before the root follow its decision, the ones ending after are always stored.
+ * At most <code>open.max</code> paths (10000 by default) wait for their root this way, a path whose root is still
+ * running after <code>open.timeout</code> milliseconds (600000 by default) gets its parked entries stored and the
+ * next ones are stored directly.
+ */
+public class PathTrackingSampler
+{
+    private static final String PREFIX = Configuration.CONFIG_PROPERTY_PREFIX + "javaagent.path.tracking.sampling.";
+
+    public static final boolean ACTIVATED = Configuration.is( PREFIX + "activated", false );
+
+    private final long defaultThreshold;
+
+    private final int reservoirSize;
+
+    private final long window;
+
+    private final int maxOpenPaths;
+
+    private final long openTimeout;
+
+    // null in tests: nothing is flushed by the sampler itself
+    private final PathTrackingDataStore store;
+
+    private ScheduledExecutorService flusher;
+
+    private final ConcurrentMap<String, Long> thresholds = new ConcurrentHashMap<String, Long>();
+
+    // paths whose root is running and which propagated tasks
+    private final ConcurrentMap<String, Fragments> openPaths = new ConcurrentHashMap<String, Fragments>();
+
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    // guarded by this
+    private final List<List<PathTrackingEntry>> reservoir;
+
+    private final Random random = new Random();
+
+    private long seen = 0;
+
+    private long windowEnd = Long.MIN_VALUE;
+
+    /**
+     * @param store where the periodic and shutdown flushes store the entries.
+     */
+    public PathTrackingSampler( final PathTrackingDataStore store )
+    {
+        this( store, //
+              TimeUnit.MILLISECONDS.toNanos( Configuration.getInteger( PREFIX + "threshold", 1000 ) ), //
+              Configuration.getInteger( PREFIX + "reservoir.size", 10 ), //
+              TimeUnit.MILLISECONDS.toNanos( Configuration.getInteger( PREFIX + "reservoir.window", 60000 ) ), //
+              Configuration.getInteger( PREFIX + "open.max", 10000 ), //
+              TimeUnit.MILLISECONDS.toNanos( Configuration.getInteger( PREFIX + "open.timeout", 600000 ) ) );
+    }
+
+    /**
+     * @param defaultThreshold root duration in nanoseconds from which a path is kept.
+     * @param reservoirSize number of normal paths kept per window.
+     * @param window reservoir window in nanoseconds.
+     */
+    public PathTrackingSampler( final long defaultThreshold, final int reservoirSize, final long window )
+    {
+        this( null, defaultThreshold, reservoirSize, window, 10000, TimeUnit.SECONDS.toNanos( 600 ) );
+    }
+
+    /**
+     * @param store where the periodic and shutdown flushes store the entries, null to only flush on demand.
+     * @param defaultThreshold root duration in nanoseconds from which a path is kept.
+     * @param reservoirSize number of normal paths kept per window.
+     * @param window reservoir window in nanoseconds.
+     * @param maxOpenPaths number of paths whose propagated tasks can wait for the root.
+     * @param openTimeout duration in nanoseconds after which propagated tasks stop waiting for the root.
+     */
+    public PathTrackingSampler( final PathTrackingDataStore store, final long defaultThreshold,
+                                final int reservoirSize, final long window, final int maxOpenPaths,
+                                final long openTimeout )
+    {
+        this.store = store;
+        this.defaultThreshold = defaultThreshold;
+        this.reservoirSize = reservoirSize;
+        this.window = window;
+        this.maxOpenPaths = maxOpenPaths;
+        this.openTimeout = openTimeout;
+        this.reservoir = new ArrayList<List<PathTrackingEntry>>( Math.max( 0, reservoirSize ) );
+    }
+
+    @Created
+    public void start()
+    {
+        if ( store == null )
+        {
+            return;
+        }
+
+        final long period = Math.max( TimeUnit.SECONDS.toNanos( 1 ), Math.min( window, openTimeout ) );
+        flusher = Executors.newSingleThreadScheduledExecutor( new DaemonThreadFactory( "sirona-path-tracking-sampler-" ) );
+        flusher.scheduleAtFixedRate( new Runnable()
+        {
+            public void run()
+            {
+                store( flush( System.nanoTime() ) );
+            }
+        }, period, period, TimeUnit.NANOSECONDS );
+    }
+
+    @Destroying
+    public void shutdown()
+    {
+        if ( flusher != null )
+        {
+            flusher.shutdownNow();
+        }
+        if ( store != null )
+        {
+            // far enough in the future to end the current window and expire all the open paths
+            store( flush( System.nanoTime() + Math.max( window, openTimeout ) ) );
+        }
+    }
+
+    /**
+     * @param root entry of the level 1 method.
+     * @param error exception thrown by the root method, null if it returned normally.
+     * @param entries all the entries of the path.
+     * @param now current {@link System#nanoTime()}.
+     * @return entries to store now, it can contain paths previously kept in the reservoir.
+     */
+    public Collection<PathTrackingEntry> sample( final PathTrackingEntry root, final Throwable error,
+                                                 final List<PathTrackingEntry> rootEntries, final long now )
+    {
+        List<PathTrackingEntry> entries = rootEntries;
+        final Fragments fragments = openPaths.remove( root.getTrackingId() );
+        if ( fragments != null )
+        {
+            openCount.decrementAndGet();
+            final List<PathTrackingEntry> parked = fragments.close();
+            if ( !parked.isEmpty() )
+            {
+                entries = new ArrayList<PathTrackingEntry>( rootEntries );
+                entries.addAll( parked );
+            }
+        }
+
+        final boolean keep = error != null || root.getExecutionTime() >= threshold( root );
+        if ( reservoirSize <= 0 )
+        {
+            return keep ? entries : Collections.<PathTrackingEntry>emptyList();
+        }
+
+        List<PathTrackingEntry> flushed = null;
+        synchronized ( this )
+        {
+            if ( windowEnd == Long.MIN_VALUE || now - windowEnd >= 0 )
+            {
+                flushed = drain();
+                windowEnd = now + window;
+                seen = 0;
+            }
+
+            if ( !keep ) // algorithm R
+            {
+                seen++;
+                if ( reservoir.size() < reservoirSize )
+                {
+                    reservoir.add( entries );
+                }
+                else
+                {
+                    final long index = (long) ( random.nextDouble() * seen );
+                    if ( index < reservoirSize )
+                    {
+                        reservoir.set( (int) index, entries );
+                    }
+                }
+            }
+        }
+
+        if ( flushed == null || flushed.isEmpty() )
+        {
+            return keep ? entries : Collections.<PathTrackingEntry>emptyList();
+        }
+        if ( keep )
+        {
+            flushed.addAll( entries );
+        }
+        return flushed;
+    }
+
+    /**
+     * Called by the thread running the root when it propagates a task so entries of the task can be sampled with the path.
+     * Nothing is done when too many paths are already open: entries of the task will be stored directly.
+     */
+    public void open( final String trackingId )
+    {
+        if ( !openPaths.containsKey( trackingId ) )
+        {
+            if ( openCount.incrementAndGet() > maxOpenPaths
+                || openPaths.putIfAbsent( trackingId, new Fragments( System.nanoTime() ) ) != null )
+            {
+                openCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return true if the entries will be stored (or not) with the path, false if the root already completed.
+     */
+    public boolean park( final String trackingId, final List<PathTrackingEntry> entries )
+    {
+        final Fragments fragments = openPaths.get( trackingId );
+        return fragments != null && fragments.add( entries );
+    }
+
+    /**
+     * Stores what would otherwise wait forever: the reservoir of a window after which no path completed and
+     * the entries parked for paths open for more than the open timeout.
+     *
+     * @param now current {@link System#nanoTime()}.
+     * @return entries to store.
+     */
+    public List<PathTrackingEntry> flush( final long now )
+    {
+        final List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>();
+        for ( final Map.Entry<String, Fragments> open : openPaths.entrySet() )
+        {
+            final Fragments fragments = open.getValue();
+            if ( now - fragments.opened >= openTimeout && openPaths.remove( open.getKey(), fragments ) )
+            {
+                openCount.decrementAndGet();
+                entries.addAll( fragments.close() );
+            }
+        }
+
+        synchronized ( this )
+        {
+            if ( windowEnd != Long.MIN_VALUE && now - windowEnd >= 0 )
+            {
+                entries.addAll( drain() );
+                windowEnd = Long.MIN_VALUE; // the next completed path starts a new window
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return entries of the paths currently in the reservoir, the reservoir is emptied.
+     */
+    public synchronized List<PathTrackingEntry> drain()
+    {
+        final List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>();
+        for ( final List<PathTrackingEntry> path : reservoir )
+        {
+            entries.addAll( path );
+        }
+        reservoir.clear();
+        return entries;
+    }
+
+    private long threshold( final PathTrackingEntry root )
+    {
+        final String key = root.getClassName() + '.' + root.getMethodName();
+        Long threshold = thresholds.get( key );
+        if ( threshold == null )
+        {
+            final String value = Configuration.getProperty( PREFIX + "threshold." + key, null );
+            threshold = value == null ? defaultThreshold : TimeUnit.MILLISECONDS.toNanos( Long.parseLong( value.trim() ) );
+            thresholds.putIfAbsent( key, threshold );
+        }
+        return threshold;
+    }
+
+    private void store( final List<PathTrackingEntry> entries )
+    {
+        if ( entries.isEmpty() )
+        {
+            return;
+        }
+        try
+        {
+            store.store( entries );
+        }
+        catch ( final Throwable e )
+        {
+            // as implementations can generate exception we simply ignore all exception happening here!!
+        }
+    }
+
+    private static class Fragments
+    {
+        private final long opened;
+
+        // guarded by this
+        private final List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>();
+
+        private boolean closed = false;
+
+        private Fragments( final long opened )
+        {
+            this.opened = opened;
+        }
+
+        private synchronized boolean add( final List<PathTrackingEntry> fragment )
+        {
+            if ( closed )
+            {
+                return false;
+            }
+            entries.addAll( fragment );
+            return true;
+        }
+
+        private synchronized List<PathTrackingEntry> close()
+        {
+            closed = true;
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.apache.sirona.repositories.Repository;
+import org.junit.Test;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveInstrumentationTest {
+    @Test
+    public void className() {
+        assertEquals("org.foo.Bar", AdaptiveInstrumentation.className("org.foo.Bar.method(java.lang.String,int)"));
+        assertEquals("org.foo.Bar", AdaptiveInstrumentation.className("org.foo.Bar.method()"));
+    }
+
+    @Test
+    public void fastMethodsAreDeinstrumented() {
+        final String fast = AdaptiveInstrumentationTest.class.getName() + ".fast()";
+        final String slow = AdaptiveInstrumentationTest.class.getName() + ".slow()";
+        AgentContext.register(fast, new InvocationListener[0]);
+        AgentContext.register(slow, new InvocationListener[0]);
+        for (int i = 0; i < 10; i++) {
+            Repository.INSTANCE.getCounter(AgentContext.key(fast)).add(10);
+            Repository.INSTANCE.getCounter(AgentContext.key(slow)).add(100000);
+        }
+
+        final List<Class<?>> retransformed = new ArrayList<Class<?>>();
+        final AdaptiveInstrumentation controller = new AdaptiveInstrumentation(instrumentation(retransformed), 10, 1000);
+        try {
+            assertEquals(1, controller.check());
+            assertFalse(AgentContext.isInstrumented(fast));
+            assertTrue(AgentContext.isInstrumented(slow));
+            assertEquals(asList(fast), asList(controller.getExcludedMethods()));
+            assertEquals(AdaptiveInstrumentationTest.class, retransformed.iterator().next());
+            assertEquals(0, controller.check()); // already done
+
+            assertTrue(controller.reinstrument(fast));
+            assertTrue(AgentContext.isInstrumented(fast));
+            assertEquals(2, retransformed.size());
+        } finally {
+            controller.reinstrumentAll();
+            Repository.INSTANCE.clearCounters();
+        }
+    }
+
+    private static Instrumentation instrumentation(final Collection<Class<?>> retransformed) {
+        return Instrumentation.class.cast(Proxy.newProxyInstance(AdaptiveInstrumentationTest.class.getClassLoader(),
+            new Class<?>[]{ Instrumentation.class }, new InvocationHandler() {
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                    if ("getAllLoadedClasses".equals(method.getName())) {
+                        return new Class<?>[]{ String.class, AdaptiveInstrumentationTest.class };
+                    }
+                    if ("isModifiableClass".equals(method.getName())) {
+                        return true;
+                    }
+                    if ("retransformClasses".equals(method.getName())) {
+                        retransformed.addAll(asList((Class<?>[]) args[0]));
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.repositories.Repository;
+import org.junit.Test;
+
+// compare the overhead of an instrumented call going through AgentContext and the inlined counter advice,
+// both are what SironaClassVisitor generates for a method only adviced by CounterListener
+public class CounterFastPathBench {
+    private static final int WARMUP = 2000000;
+    private static final int LOOPS = 20000000;
+
+    @Test
+    public void agentContext() {
+        final int id = register("bench.context()");
+        for (int i = 0; i < WARMUP; i++) {
+            AgentContext.startOn(null, id, null).stop(null);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < LOOPS; i++) {
+            AgentContext.startOn(null, id, null).stop(null);
+        }
+        print("AgentContext", "bench.context()", start);
+    }
+
+    @Test
+    public void fastPath() {
+        final int id = register("bench.fast()");
+        for (int i = 0; i < WARMUP; i++) {
+            final Counter counter = AgentContext.counter(id);
+            AgentContext.stopCounter(counter, AgentContext.startCounter(counter));
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < LOOPS; i++) {
+            final Counter counter = AgentContext.counter(id);
+            AgentContext.stopCounter(counter, AgentContext.startCounter(counter));
+        }
+        print("Fast path", "bench.fast()", start);
+    }
+
+    private static int register(final String key) {
+        return AgentContext.register(key, AgentContext.listeners(key, new byte[0]));
+    }
+
+    private static void print(final String mode, final String key, final long start) {
+        final long duration = System.nanoTime() - start;
+        System.out.printf("%s : %,d ns/operation, %,d hits%n", mode, duration / LOOPS,
+            Repository.INSTANCE.getCounter(AgentContext.key(key)).getHits());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// compare the three ways to get valid frames in woven classes on the classes of asm itself:
+// computing them loading classes (temporary loader), computing them reading class files and keeping the original ones
+public class FrameComputationBench {
+    private static final int ROUNDS = 5;
+
+    private static final List<String> NAMES = new ArrayList<String>();
+    private static final List<byte[]> CLASSES = new ArrayList<byte[]>();
+
+    @BeforeClass
+    public static void readClasses() throws IOException {
+        final JarFile jar = new JarFile(new File(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().getFile()));
+        try {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class") && !entry.getName().contains("-info")) {
+                    NAMES.add(entry.getName().substring(0, entry.getName().length() - ".class".length()));
+                    CLASSES.add(read(jar.getInputStream(entry)));
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    @Test
+    public void tempLoader() {
+        run("Temporary loader", new Weaver() {
+            private final ConcurrentHashMap<ClassLoader, ClassLoader> loaders = new ConcurrentHashMap<ClassLoader, ClassLoader>();
+
+            public byte[] weave(final String name, final byte[] bytes) {
+                final ClassReader reader = new ClassReader(bytes);
+                final ClassWriter writer = new SironaTransformer.SironaClassWriter(name.replace('/', '.'), loaders, reader, ClassWriter.COMPUTE_FRAMES);
+                reader.accept(new SironaClassVisitor(writer, name, bytes), ClassReader.SKIP_FRAMES);
+                return writer.toByteArray();
+            }
+        });
+    }
+
+    @Test
+    public void typeHierarchy() {
+        run("Type hierarchy", new Weaver() {
+            private final TypeHierarchy hierarchy = new TypeHierarchy();
+
+            public byte[] weave(final String name, final byte[] bytes) {
+                final ClassReader reader = new ClassReader(bytes);
+                final ClassWriter writer = new SironaTransformer.SironaClassWriter(name.replace('/', '.'), null, reader, ClassWriter.COMPUTE_FRAMES,
+                    hierarchy, FrameComputationBench.class.getClassLoader());
+                reader.accept(new SironaClassVisitor(writer, name, bytes), ClassReader.SKIP_FRAMES);
+                return writer.toByteArray();
+            }
+        });
+    }
+
+    @Test
+    public void keptFrames() {
+        run("Kept frames", new Weaver() {
+            public byte[] weave(final String name, final byte[] bytes) {
+                final ClassReader reader = new ClassReader(bytes);
+                final ClassWriter writer = new SironaTransformer.SironaClassWriter(name.replace('/', '.'), null, reader, ClassWriter.COMPUTE_MAXS);
+                reader.accept(new SironaClassVisitor(writer, name, bytes, true), ClassReader.EXPAND_FRAMES);
+                return writer.toByteArray();
+            }
+        });
+    }
+
+    private static void run(final String mode, final Weaver weaver) {
+        final long first = round(weaver); // cold, closer to what happens at startup
+
+        long total = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            total += round(weaver);
+        }
+        System.out.printf("%s : first round %,d us/class, then %,d us/class (%d classes)%n",
+            mode, first / 1000 / CLASSES.size(), total / 1000 / ROUNDS / CLASSES.size(), CLASSES.size());
+    }
+
+    private static long round(final Weaver weaver) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < CLASSES.size(); i++) {
+            weaver.weave(NAMES.get(i), CLASSES.get(i));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] read(final InputStream stream) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int length;
+            while ((length = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private interface Weaver {
+        byte[] weave(String name, byte[] bytes);
+    }
+}
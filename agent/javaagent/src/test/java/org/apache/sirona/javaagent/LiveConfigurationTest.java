@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.javaagent.listener.CounterListener;
+import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.junit.Test;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LiveConfigurationTest {
+    @Test
+    public void methodKeys() {
+        assertEquals(asList(Service.class.getName() + ".find(java.lang.String,int[])"), asList(LiveConfiguration.methodKeys(Service.class)));
+    }
+
+    @Test
+    public void retransformOnlyChangedClasses() {
+        final CounterListener listener = new CounterListener();
+        listener.setIncludes("prefix:" + Service.class.getName());
+        listener.setExcludes("container:jvm");
+
+        final List<Class<?>> retransformed = new ArrayList<Class<?>>();
+        final LiveConfiguration configuration = new LiveConfiguration(instrumentation(retransformed), new InvocationListener[]{ listener });
+        assertEquals(asList(CounterListener.class.getName()), asList(configuration.getListeners()));
+
+        // widen: Other is now instrumented, Service doesn't change
+        assertEquals(1, configuration.setIncludes("CounterListener", "prefix:" + Service.class.getName() + ",prefix:" + Other.class.getName()));
+        assertEquals(asList(Other.class), retransformed);
+        assertTrue(listener.accept(Other.class.getName() + ".get()", null));
+
+        // same plan
+        retransformed.clear();
+        assertEquals(0, configuration.setExcludes(CounterListener.class.getName(), "container:jvm,prefix:" + Service.class.getName() + ".unknown"));
+        assertTrue(retransformed.isEmpty());
+
+        // narrow
+        assertEquals(1, configuration.setExcludes("CounterListener", "container:jvm,prefix:" + Service.class.getName()));
+        assertEquals(asList(Service.class), retransformed);
+        assertEquals("container:jvm,prefix:" + Service.class.getName(), configuration.getExcludes("CounterListener"));
+        assertTrue(AgentContext.isReconfigured());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPredicate() {
+        new LiveConfiguration(instrumentation(new ArrayList<Class<?>>()), new InvocationListener[]{ new CounterListener() })
+            .setIncludes("CounterListener", "unknown:foo");
+    }
+
+    private static Instrumentation instrumentation(final Collection<Class<?>> retransformed) {
+        return Instrumentation.class.cast(Proxy.newProxyInstance(LiveConfigurationTest.class.getClassLoader(),
+            new Class<?>[]{ Instrumentation.class }, new InvocationHandler() {
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                    if ("getAllLoadedClasses".equals(method.getName())) {
+                        return new Class<?>[]{ String.class, int[].class, Service.class, Other.class };
+                    }
+                    if ("isModifiableClass".equals(method.getName())) {
+                        return true;
+                    }
+                    if ("retransformClasses".equals(method.getName())) {
+                        retransformed.addAll(asList((Class<?>[]) args[0]));
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }));
+    }
+
+    public static class Service {
+        public String find(final String name, final int[] ids) {
+            return name;
+        }
+
+        public native void nativeMethod();
+    }
+
+    public static class Other {
+        public String get() {
+            return "other";
+        }
+    }
+}
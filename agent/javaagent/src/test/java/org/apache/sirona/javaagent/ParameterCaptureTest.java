@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParameterCaptureTest {
+    @Test
+    public void configuredIndexes() {
+        final ParameterCapture capture = ParameterCapture.find("org.foo.Service.find(java.lang.String,int,java.util.List,double)");
+        assertEquals(4, capture.parameterCount());
+        assertEquals(1, capture.referenceCount());
+        assertEquals(2, capture.primitiveCount());
+        assertEquals(0, capture.slot(0));
+        assertEquals(0, capture.slot(1));
+        assertEquals(-1, capture.slot(2));
+        assertEquals(1, capture.slot(3));
+
+        assertEquals(2, ParameterCapture.find("org.foo.Service.all(long,java.lang.Object)").parameterCount());
+        assertNull(ParameterCapture.find("org.foo.Service.all()")); // nothing to capture
+        assertNull(ParameterCapture.find("org.foo.Service.find(java.lang.String)"));
+        assertNull(ParameterCapture.find("org.foo.Other.find(java.lang.String)"));
+    }
+
+    @Test
+    public void primitivesAreNotBoxed() {
+        final Object[] seen = new Object[3];
+        final int id = AgentContext.register("org.foo.Service.find(java.lang.String,int,java.util.List,double)", new InvocationListener[]{
+            new InvocationListener() {
+                public boolean accept(final String key, final byte[] rawClassBuffer) {
+                    return true;
+                }
+
+                public void before(final AgentContext context) {
+                    seen[0] = context.getIntParameter(1);
+                    seen[1] = context.getDoubleParameter(3);
+                    seen[2] = context.getMethodParameter(0);
+                    try {
+                        context.getLongParameter(0);
+                        fail();
+                    } catch (final IllegalArgumentException iae) {
+                        // ok, reference
+                    }
+                }
+
+                public void after(final AgentContext context, final Object result, final Throwable error) {
+                    assertEquals(Arrays.<Object>asList("sirona", 5, null, 2.5), Arrays.asList(context.getMethodParameters()));
+                }
+            }
+        });
+
+        // what the advice does
+        final AgentContext context = AgentContext.prepare(null, id).capture(0, "sirona").capture(0, 5L).capture(1, 2.5).begin();
+        context.stop(null);
+
+        assertEquals(5, seen[0]);
+        assertEquals(2.5, seen[1]);
+        assertEquals("sirona", seen[2]);
+        assertTrue(AgentContext.parameterCapture(id) != null);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.apache.sirona.javaagent.spi.InvocationListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TransformationCacheTest {
+    private static final byte[] ORIGINAL = new byte[]{ 1, 2, 3 };
+    private static final byte[] WOVEN = new byte[]{ 4, 5, 6, 7 };
+
+    private File root;
+
+    @Before
+    public void createRoot() {
+        root = new File(System.getProperty("java.io.tmpdir"), "sirona-transformation-cache-" + System.nanoTime());
+    }
+
+    @After
+    public void deleteRoot() {
+        delete(root);
+    }
+
+    @Test
+    public void hitRegistersCachedIds() {
+        final TransformationCache cache = new TransformationCache(root, 1024 * 1024);
+        final String key = "org.foo.cached.Service.hit()";
+        final String entry = cache.entryName("org/foo/cached/Service", ORIGINAL);
+        cache.store(entry, Collections.singletonMap(key, 5000), WOVEN);
+
+        assertArrayEquals(WOVEN, cache.find(entry, ORIGINAL));
+        assertEquals(5000, AgentContext.register(key, AgentContext.listeners(key, ORIGINAL)));
+    }
+
+    @Test
+    public void idUsedByAnotherMethodIsAMiss() {
+        final TransformationCache cache = new TransformationCache(root, 1024 * 1024);
+        final int taken = AgentContext.register("org.foo.cached.Service.taken()", new InvocationListener[0]);
+        final String entry = cache.entryName("org/foo/cached/Other", ORIGINAL);
+        final Map<String, Integer> methods = new LinkedHashMap<String, Integer>();
+        methods.put("org.foo.cached.Other.miss()", taken);
+        cache.store(entry, methods, WOVEN);
+
+        assertNull(cache.find(entry, ORIGINAL));
+    }
+
+    @Test
+    public void registryReservesIdsWhateverTheLoadOrder() {
+        final String key = "org.foo.cached.Service.reserved()";
+        new TransformationCache(root, 1024 * 1024).store(
+            "org.foo.cached.Service-reserved.class", Collections.singletonMap(key, 6000), WOVEN);
+
+        new TransformationCache(root, 1024 * 1024); // next JVM, the class is woven again (miss) after others
+        assertTrue(AgentContext.register("org.foo.cached.Service.fresh()", new InvocationListener[0]) > 6000);
+        assertEquals(6000, AgentContext.register(key, new InvocationListener[0]));
+    }
+
+    @Test
+    public void replacedEntryIsCountedOnce() {
+        final TransformationCache cache = new TransformationCache(root, 1024 * 1024);
+        final String entry = cache.entryName("org/foo/cached/Replaced", ORIGINAL);
+        cache.store(entry, Collections.<String, Integer>emptyMap(), WOVEN);
+        cache.store(entry, Collections.<String, Integer>emptyMap(), new byte[]{ 8, 9 });
+
+        assertEquals(new File(cache.getDirectory(), entry).length(), cache.getSize());
+        assertEquals(cache.getSize(), new TransformationCache(root, 1024 * 1024).getSize());
+    }
+
+    @Test
+    public void notAdvicedClass() {
+        final TransformationCache cache = new TransformationCache(root, 1024 * 1024);
+        final String entry = cache.entryName("org/foo/cached/Plain", ORIGINAL);
+        assertNull(cache.find(entry, ORIGINAL));
+
+        cache.store(entry, Collections.<String, Integer>emptyMap(), null);
+        assertSame(ORIGINAL, cache.find(entry, ORIGINAL));
+        assertNull(cache.find(cache.entryName("org/foo/cached/Plain", WOVEN), WOVEN)); // bytecode changed
+    }
+
+    @Test
+    public void maxSize() {
+        final TransformationCache cache = new TransformationCache(root, 10);
+        final String entry = cache.entryName("org/foo/cached/Big", ORIGINAL);
+        cache.store(entry, Collections.<String, Integer>emptyMap(), WOVEN);
+
+        assertEquals(0, cache.getSize());
+        assertFalse(new File(cache.getDirectory(), entry).exists());
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class TrivialMethodFilterTest {
+    @Test
+    public void leaf() throws IOException {
+        assertEquals(new TreeSet<String>(asList("getName()Ljava/lang/String;", "setName(Ljava/lang/String;)V", "twice(I)I")),
+            new TreeSet<String>(TrivialMethodFilter.analyze(bytes(Bean.class), 0, true)));
+    }
+
+    @Test
+    public void minInstructions() throws IOException {
+        final Set<String> trivial = TrivialMethodFilter.analyze(bytes(Bean.class), 5, false);
+        assertEquals(new TreeSet<String>(asList("<init>()V", "getName()Ljava/lang/String;", "setName(Ljava/lang/String;)V",
+                "delegate()Ljava/lang/String;", "allocate()Ljava/util/List;", "guarded()V")),
+            new TreeSet<String>(trivial));
+    }
+
+    @Test
+    public void disabled() throws IOException {
+        assertEquals(0, TrivialMethodFilter.analyze(bytes(Bean.class), 0, false).size());
+    }
+
+    private static byte[] bytes(final Class<?> clazz) throws IOException {
+        final InputStream stream = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    public abstract static class Bean {
+        private String name;
+
+        public String getName() { // aload_0, getfield, areturn
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public int twice(final int value) {
+            return value * 2 + (value > 0 ? 1 : 0);
+        }
+
+        public String delegate() {
+            return name.trim();
+        }
+
+        public int loop(final int max) {
+            int sum = 0;
+            for (int i = 0; i < max; i++) {
+                sum += i;
+            }
+            return sum;
+        }
+
+        public List<String> allocate() {
+            return new ArrayList<String>();
+        }
+
+        public synchronized void guarded() {
+            name = null;
+        }
+
+        public abstract void abstractMethod();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TypeHierarchyTest {
+    private final TypeHierarchy hierarchy = new TypeHierarchy();
+    private final ClassLoader loader = TypeHierarchyTest.class.getClassLoader();
+
+    @Test
+    public void commonSuperClass() {
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass(loader, null, "java/util/ArrayList", "java/util/Vector"));
+        assertEquals("java/util/AbstractCollection", hierarchy.getCommonSuperClass(loader, null, "java/util/ArrayList", "java/util/HashSet"));
+        assertEquals("java/lang/Number", hierarchy.getCommonSuperClass(loader, null, "java/lang/Integer", "java/lang/Long"));
+    }
+
+    @Test
+    public void assignable() {
+        assertEquals("java/util/List", hierarchy.getCommonSuperClass(loader, null, "java/util/List", "java/util/ArrayList"));
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass(loader, null, "java/util/ArrayList", "java/util/AbstractList"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass(loader, null, "java/util/List", "java/lang/Integer"));
+    }
+
+    @Test
+    public void unknown() {
+        assertNull(hierarchy.getCommonSuperClass(loader, null, "java/util/ArrayList", "org/apache/sirona/Missing"));
+    }
+}
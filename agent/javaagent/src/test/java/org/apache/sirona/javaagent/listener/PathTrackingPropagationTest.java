@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent.listener;
+
+import org.apache.sirona.configuration.ioc.IoCs;
+import org.apache.sirona.javaagent.AgentArgs;
+import org.apache.sirona.javaagent.JavaAgentRunner;
+import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.apache.sirona.pathtracking.test.ExtendedInMemoryPathTrackingDataStore;
+import org.apache.sirona.store.DataStoreFactory;
+import org.apache.test.sirona.javaagent.App;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * validate a task submitted to an executor is part of the path which submitted it
+ */
+@RunWith(JavaAgentRunner.class)
+public class PathTrackingPropagationTest
+{
+
+    @Test
+    @AgentArgs(value = "",
+               sysProps = "project.build.directory=${project.build.directory}|sirona.agent.debug=true|org.apache.sirona.configuration.sirona.properties=${project.build.directory}/test-classes/pathtracking/sirona.properties")
+    public void executor()
+        throws Exception
+    {
+        new App().async();
+
+        DataStoreFactory dataStoreFactory = IoCs.findOrCreateInstance( DataStoreFactory.class );
+
+        ExtendedInMemoryPathTrackingDataStore ptds =
+            ExtendedInMemoryPathTrackingDataStore.class.cast( dataStoreFactory.getPathTrackingDataStore() );
+
+        Map<String, Set<PathTrackingEntry>> all = ptds.retrieveAll();
+
+        // one tracking id, entries of the worker thread included
+        Assert.assertEquals( 1, all.size() );
+
+        int asyncLevel = -1;
+        int runLevel = -1;
+        int barLevel = -1;
+        for ( PathTrackingEntry entry : all.values().iterator().next() )
+        {
+            if ( "async()".equals( entry.getMethodName() ) )
+            {
+                asyncLevel = entry.getLevel();
+            }
+            else if ( "run()".equals( entry.getMethodName() ) )
+            {
+                runLevel = entry.getLevel();
+            }
+            else if ( "bar()".equals( entry.getMethodName() ) )
+            {
+                barLevel = entry.getLevel();
+            }
+        }
+
+        Assert.assertEquals( 1, asyncLevel );
+        Assert.assertEquals( 2, runLevel );
+        Assert.assertEquals( 3, barLevel );
+    }
+
+    @Test
+    @AgentArgs(value = "",
+               sysProps = "project.build.directory=${project.build.directory}|sirona.agent.debug=true|org.apache.sirona.configuration.sirona.properties=${project.build.directory}/test-classes/pathtracking/sirona.properties")
+    public void sequentialCallsInUntrackedTask()
+        throws Exception
+    {
+        new App().asyncUntrackedTask();
+
+        DataStoreFactory dataStoreFactory = IoCs.findOrCreateInstance( DataStoreFactory.class );
+
+        ExtendedInMemoryPathTrackingDataStore ptds =
+            ExtendedInMemoryPathTrackingDataStore.class.cast( dataStoreFactory.getPathTrackingDataStore() );
+
+        Map<String, Set<PathTrackingEntry>> all = ptds.retrieveAll();
+        Assert.assertEquals( 1, all.size() );
+
+        // run() is not tracked so pub() and the following bar() are both direct children of asyncUntrackedTask()
+        List<String> levels = new ArrayList<String>();
+        for ( PathTrackingEntry entry : all.values().iterator().next() )
+        {
+            levels.add( entry.getMethodName().replaceAll( "\\(.*", "" ) + ":" + entry.getLevel() );
+        }
+        Collections.sort( levels );
+
+        Assert.assertEquals( Arrays.asList( "asyncUntrackedTask:1", "bar:2", "bar:3", "pub:2" ), levels );
+    }
+
+    @Test
+    @AgentArgs(value = "",
+               sysProps = "project.build.directory=${project.build.directory}|sirona.agent.debug=true|org.apache.sirona.configuration.sirona.properties=${project.build.directory}/test-classes/pathtracking/sirona.properties")
+    public void onlyExecutorsAreWrapped()
+        throws Exception
+    {
+        // would fail with a ClassCastException if the task was wrapped
+        new App().typedExecute();
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.javaagent.tracking;
+
+import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrackingSamplerTest
+{
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    @Test
+    public void keepSlowAndFailedPaths()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( 100 * MS, 0, 1000 * MS );
+
+        final List<PathTrackingEntry> fast = path( "fast", "org.foo.Service", "all()", 10 * MS );
+        assertTrue( sampler.sample( fast.get( 0 ), null, fast, 0 ).isEmpty() );
+
+        final List<PathTrackingEntry> slow = path( "slow", "org.foo.Service", "all()", 200 * MS );
+        assertSame( slow, sampler.sample( slow.get( 0 ), null, slow, 0 ) );
+
+        assertSame( fast, sampler.sample( fast.get( 0 ), new IllegalStateException(), fast, 0 ) );
+    }
+
+    @Test
+    public void thresholdPerEntryPoint()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( 100 * MS, 0, 1000 * MS );
+
+        // 5ms configured in sirona.properties for this method
+        final List<PathTrackingEntry> find = path( "find", "org.foo.Service", "find(java.lang.String)", 10 * MS );
+        assertSame( find, sampler.sample( find.get( 0 ), null, find, 0 ) );
+
+        final List<PathTrackingEntry> all = path( "all", "org.foo.Service", "all()", 10 * MS );
+        assertTrue( sampler.sample( all.get( 0 ), null, all, 0 ).isEmpty() );
+    }
+
+    @Test
+    public void reservoir()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( 100 * MS, 3, 1000 * MS );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            final List<PathTrackingEntry> path = path( "normal-" + i, "org.foo.Service", "all()", MS );
+            assertTrue( sampler.sample( path.get( 0 ), null, path, i * MS ).isEmpty() );
+        }
+
+        // next window: the reservoir of the previous one is given back with the kept path
+        final List<PathTrackingEntry> slow = path( "slow", "org.foo.Service", "all()", 200 * MS );
+        final Collection<PathTrackingEntry> toStore = sampler.sample( slow.get( 0 ), null, slow, 1000 * MS );
+
+        final Set<String> trackingIds = new HashSet<String>();
+        for ( final PathTrackingEntry entry : toStore )
+        {
+            trackingIds.add( entry.getTrackingId() );
+        }
+        assertEquals( 4, trackingIds.size() );
+        assertTrue( trackingIds.contains( "slow" ) );
+        assertEquals( 8, toStore.size() );
+        assertTrue( sampler.drain().isEmpty() );
+    }
+
+    @Test
+    public void propagatedTasksFollowTheirRoot()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( 100 * MS, 0, 1000 * MS );
+
+        final List<PathTrackingEntry> fastTask = path( "fast", "org.foo.Task", "run()", MS );
+        sampler.open( "fast" );
+        assertTrue( sampler.park( "fast", fastTask ) );
+        final List<PathTrackingEntry> fast = path( "fast", "org.foo.Service", "all()", 10 * MS );
+        assertTrue( sampler.sample( fast.get( 0 ), null, fast, 0 ).isEmpty() );
+        assertFalse( sampler.park( "fast", fastTask ) ); // root completed, stored as before
+
+        final List<PathTrackingEntry> slowTask = path( "slow", "org.foo.Task", "run()", MS );
+        sampler.open( "slow" );
+        assertTrue( sampler.park( "slow", slowTask ) );
+        final List<PathTrackingEntry> slow = path( "slow", "org.foo.Service", "all()", 200 * MS );
+        final Collection<PathTrackingEntry> toStore = sampler.sample( slow.get( 0 ), null, slow, 0 );
+        assertEquals( 4, toStore.size() );
+        assertTrue( toStore.containsAll( slowTask ) );
+
+        assertFalse( sampler.park( "unknown", slowTask ) );
+    }
+
+    @Test
+    public void flushEndedWindow()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( 100 * MS, 3, 1000 * MS );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final List<PathTrackingEntry> path = path( "normal-" + i, "org.foo.Service", "all()", MS );
+            assertTrue( sampler.sample( path.get( 0 ), null, path, 0 ).isEmpty() );
+        }
+
+        // no path completes after the window: the flush stores the reservoir
+        assertTrue( sampler.flush( 500 * MS ).isEmpty() );
+        assertEquals( 4, sampler.flush( 1000 * MS ).size() );
+        assertTrue( sampler.flush( 5000 * MS ).isEmpty() );
+
+        final List<PathTrackingEntry> path = path( "normal", "org.foo.Service", "all()", MS );
+        assertTrue( sampler.sample( path.get( 0 ), null, path, 6000 * MS ).isEmpty() );
+        assertTrue( sampler.flush( 6500 * MS ).isEmpty() );
+        assertEquals( 2, sampler.flush( 7000 * MS ).size() );
+    }
+
+    @Test
+    public void openPathsAreBoundedAndExpire()
+    {
+        final PathTrackingSampler sampler = new PathTrackingSampler( null, 100 * MS, 0, 1000 * MS, 1, 1000 * MS );
+
+        final List<PathTrackingEntry> task = path( "first", "org.foo.Task", "run()", MS );
+        sampler.open( "first" );
+        sampler.open( "second" );
+        assertTrue( sampler.park( "first", task ) );
+        assertFalse( sampler.park( "second", task ) ); // too many open paths, stored directly
+
+        assertTrue( sampler.flush( System.nanoTime() ).isEmpty() );
+        assertEquals( task, sampler.flush( System.nanoTime() + 1000 * MS ) );
+        assertFalse( sampler.park( "first", task ) ); // expired, stored directly
+
+        sampler.open( "second" );
+        assertTrue( sampler.park( "second", task ) );
+    }
+
+    private static List<PathTrackingEntry> path( final String trackingId, final String className, final String methodName,
+                                                 final long duration )
+    {
+        final List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>();
+        entries.add( new PathTrackingEntry( trackingId, "node", className, methodName, 0, duration, 1 ) );
+        entries.add( new PathTrackingEntry( trackingId, "node", className, "child()", 1, duration / 2, 2 ) );
+        return Collections.unmodifiableList( entries );
+    }
+}
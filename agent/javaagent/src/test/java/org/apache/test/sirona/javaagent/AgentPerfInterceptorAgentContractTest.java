@@ -19,10 +19,13 @@ package org.apache.test.sirona.javaagent;
 import org.apache.sirona.Role;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.javaagent.AgentContext;
+import org.apache.sirona.javaagent.spi.InvocationListener;
 import org.apache.sirona.repositories.Repository;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class AgentPerfInterceptorAgentContractTest {
     @Test
@@ -53,4 +56,44 @@ public class AgentPerfInterceptorAgentContractTest {
         assertEquals(key, context.getKey());
         assertEquals(1, Repository.INSTANCE.getCounter(AgentContext.key(key)).getHits());
     }
+
+    @Test
+    public void registeredId() {
+        final String key = "registered";
+        final int id = AgentContext.register(key, AgentContext.listeners(key, new byte[0]));
+        assertEquals(id, AgentContext.register(key, null));
+
+        final AgentContext context = AgentContext.startOn(null, id, null);
+        context.stop(null);
+        assertEquals(key, context.getKey());
+        assertEquals(1, Repository.INSTANCE.getCounter(AgentContext.key(key)).getHits());
+    }
+
+    @Test
+    public void listenersSwappedInPlace() {
+        final String key = "swapped";
+        final int id = AgentContext.register(key, AgentContext.listeners(key, new byte[0]));
+        assertEquals(id, AgentContext.register(key, new InvocationListener[0])); // reconfigured: same id
+
+        final AgentContext context = AgentContext.startOn(null, id, null);
+        context.stop(null);
+        assertEquals(0, Repository.INSTANCE.getCounter(AgentContext.key(key)).getHits());
+    }
+
+    @Test
+    public void counterOnlyContextsAreReused() {
+        final String key = "pooled";
+        final int id = AgentContext.register(key, AgentContext.listeners(key, new byte[0]));
+
+        final AgentContext outer = AgentContext.startOn(null, id, null);
+        final AgentContext inner = AgentContext.startOn(null, id, null);
+        assertNotSame(outer, inner);
+        inner.stop(null);
+        outer.stop(null);
+
+        final AgentContext next = AgentContext.startOn(null, id, null);
+        next.stop(null);
+        assertSame(outer, next);
+        assertEquals(3, Repository.INSTANCE.getCounter(AgentContext.key(key)).getHits());
+    }
 }
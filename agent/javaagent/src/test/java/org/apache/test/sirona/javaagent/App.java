@@ -23,6 +23,8 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class App
 {
@@ -54,6 +56,54 @@ public class App
         return this;
     }
 
+    public void async()
+        throws Exception
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            executor.submit( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        bar();
+                    }
+                    catch ( Exception e )
+                    {
+                        throw new IllegalStateException( e );
+                    }
+                }
+            } ).get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    // the task itself is not instrumented (see pathtracking/sirona.properties)
+    public void asyncUntrackedTask()
+        throws Exception
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            executor.submit( new UntrackedTask( this ) ).get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    // not an executor so the task must reach execute() as it was given
+    public void typedExecute()
+        throws Exception
+    {
+        new TypedRunner().execute( new UntrackedTask( this ) );
+    }
 
     public App redirectStreamout()
     {
@@ -86,4 +136,35 @@ public class App
         }
     }
 
+    public static class TypedRunner
+    {
+        public void execute( final Runnable task )
+        {
+            UntrackedTask.class.cast( task ).run();
+        }
+    }
+
+    public static class UntrackedTask
+        implements Runnable
+    {
+        private final App app;
+
+        public UntrackedTask( final App app )
+        {
+            this.app = app;
+        }
+
+        public void run()
+        {
+            try
+            {
+                app.pub( "untracked", Arrays.asList( "task" ), 1 );
+                app.bar();
+            }
+            catch ( Exception e )
+            {
+                throw new IllegalStateException( e );
+            }
+        }
+    }
 }
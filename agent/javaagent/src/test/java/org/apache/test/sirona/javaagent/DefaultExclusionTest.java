@@ -52,6 +52,13 @@ public class DefaultExclusionTest {
         assertTrue(ConfigurableListener.DEFAULT_EXCLUDES.matches("org.apache.xbean."));
     }
 
+    @Test
+    public void wholeClasses() {
+        assertTrue(ConfigurableListener.DEFAULT_EXCLUDES.matchesAllStartingWith("java.util.HashMap."));
+        assertTrue(ConfigurableListener.DEFAULT_EXCLUDES.matchesAllStartingWith("org.apache.sirona.javaagent.AgentContext."));
+        assertFalse(ConfigurableListener.DEFAULT_EXCLUDES.matchesAllStartingWith("superbiz.Business."));
+    }
+
     @Test
     public void commons() {
         assertTrue(ConfigurableListener.DEFAULT_EXCLUDES.matches("org.apache.commons."));
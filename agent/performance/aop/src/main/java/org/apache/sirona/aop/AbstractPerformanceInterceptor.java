@@ -21,6 +21,7 @@ import org.apache.sirona.Role;
 import org.apache.sirona.SironaException;
 import org.apache.sirona.configuration.Configuration;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.EvictionAware;
 import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.stopwatches.StopWatch;
 
@@ -63,6 +64,9 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
 
     protected MonitorNameExtractor monitorNameExtractor;
 
+    // counters already resolved by this interceptor per method, replaced when the counter store generation changes
+    private transient volatile CounterHandles handles;
+
     public AbstractPerformanceInterceptor() {
         setMonitorNameExtractor(DefaultMonitorNameExtractor.INSTANCE);
     }
@@ -71,6 +75,10 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
      * API neutral method invocation
      */
     protected Object doInvoke(final T invocation) throws Throwable {
+        if (!isAdaptive()) {
+            return doInvokeWithoutContext(invocation);
+        }
+
         final String name = getCounterName(invocation);
         if (name == null) {
             return proceed(invocation);
@@ -92,6 +100,39 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
         }
     }
 
+    // no activation context to maintain so use the primitive repository API, nothing is allocated per call
+    private Object doInvokeWithoutContext(final T invocation) throws Throwable {
+        final Counter counter;
+        try {
+            counter = findCounter(invocation);
+        } catch (final Exception e) { // same as before(): ignore, can happen on start
+            return proceed(invocation);
+        }
+        if (counter == null) { // no counter name
+            return proceed(invocation);
+        }
+
+        final Repository repository = Repository.INSTANCE;
+        final long start = repository.startNanos(counter);
+        Throwable error = null;
+        try {
+            return proceed(invocation);
+        } catch (final Throwable t) {
+            error = t;
+            throw t;
+        } finally {
+            final long elapsedTime = repository.stop(counter, start);
+            if (error != null) {
+                addFailure(error, elapsedTime);
+            }
+        }
+    }
+
+    protected static void addFailure(final Throwable error, final long elapsedTime) {
+        Repository.INSTANCE.getCounter(
+                new Counter.Key(Role.FAILURES, error.getClass().getName() + ":" + (error.getMessage() != null ? error.getMessage() : ""))).add(elapsedTime);
+    }
+
     protected Context before(final T invocation, final String name) {
         final ActivationContext context = doFindContext(invocation);
 
@@ -99,15 +140,7 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
         {
             final StopWatch stopwatch;
             if (context.shouldExecute()) {
-                Repository repository =  Repository.INSTANCE;
-                if (repository==null){
-                    System.out.println("repository is null");
-                }
-                final Counter monitor = repository.getCounter(getKey(invocation, name));
-                if ( monitor == null){
-                    System.out.println("monitor is null");
-                }
-                stopwatch = Repository.INSTANCE.start(monitor);
+                stopwatch = Repository.INSTANCE.start(findCounter(invocation, name));
             } else {
                 stopwatch = null;
             }
@@ -144,6 +177,59 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
         return new Counter.Key(getRole(), name);
     }
 
+    protected Counter findCounter(final T invocation, final String name) {
+        return Repository.INSTANCE.getCounter(getKey(invocation, name));
+    }
+
+    /**
+     * Resolve the counter of an invocation once per intercepted method (see {@link #getMethodKey(Object)}):
+     * neither the counter name nor a Counter.Key is computed on each call. A cached counter is resolved again
+     * when the store generation changes (clearCounters), when it was evicted or when the class of the instance
+     * changes since the default name depends on it.
+     *
+     * @return the counter or null if the invocation has no counter name.
+     */
+    protected Counter findCounter(final T invocation) {
+        final Object method = getMethodKey(invocation);
+        final Repository repository = Repository.INSTANCE;
+        final long generation = method == null || monitorNameExtractor != DefaultMonitorNameExtractor.INSTANCE ? -1 : repository.counterGeneration();
+        if (generation < 0) { // no stable identity or store doesn't support caching
+            final String name = getCounterName(invocation);
+            return name == null ? null : findCounter(invocation, name);
+        }
+
+        CounterHandles current = handles;
+        if (current == null || current.generation != generation) {
+            current = new CounterHandles(generation);
+            handles = current;
+        }
+
+        final Object target = getTarget(invocation);
+        final Class<?> type = target == null ? null : target.getClass();
+        CounterHandle handle = current.get(method);
+        if (handle == null || handle.type != type || handle.isEvicted()) {
+            final String name = getCounterName(invocation);
+            handle = new CounterHandle(type, name == null ? null : findCounter(invocation, name));
+            current.put(method, handle);
+        }
+        return handle.counter;
+    }
+
+    /**
+     * @return an identity of the intercepted method (the Method itself for instance) if the counter name only
+     * depends on it and on the class of {@link #getTarget(Object)}, null to compute the name on each call.
+     */
+    protected Object getMethodKey(final T invocation) {
+        return null;
+    }
+
+    /**
+     * @return the instance the intercepted method is called on, null for static methods.
+     */
+    protected Object getTarget(final T invocation) {
+        return null;
+    }
+
     protected boolean isAdaptive() {
         return ADAPTIVE;
     }
@@ -242,8 +328,7 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
                     error.printStackTrace(new PrintStream(writer));
                     final String toString = writer.toString();
                     */
-                    Repository.INSTANCE.getCounter(
-                            new Counter.Key(Role.FAILURES, error.getClass().getName() + ":" + (error.getMessage() != null ? error.getMessage() : ""))).add(elapsedTime);
+                    addFailure(error, elapsedTime);
                 }
 
                 activationContext.elapsedTime(elapsedTime);
@@ -251,6 +336,30 @@ public abstract class AbstractPerformanceInterceptor<T> implements Serializable
         }
     }
 
+    protected static class CounterHandles extends ConcurrentHashMap<Object, CounterHandle> {
+        private static final long serialVersionUID = 1L;
+
+        protected final long generation;
+
+        public CounterHandles(final long generation) {
+            this.generation = generation;
+        }
+    }
+
+    protected static class CounterHandle {
+        protected final Class<?> type;
+        protected final Counter counter;
+
+        public CounterHandle(final Class<?> type, final Counter counter) {
+            this.type = type;
+            this.counter = counter;
+        }
+
+        public boolean isEvicted() {
+            return EvictionAware.class.isInstance(counter) && EvictionAware.class.cast(counter).isEvicted();
+        }
+    }
+
     protected static class SerializableMethod implements Serializable {
         protected final String clazz;
         protected final String method;
@@ -65,6 +65,16 @@ public final class SironaProxyFactory {
         protected Object extractContextKey(final Invocation invocation) {
             return new SerializableMethod(invocation.method);
         }
+
+        @Override
+        protected Object getMethodKey(final Invocation invocation) {
+            return invocation.method;
+        }
+
+        @Override
+        protected Object getTarget(final Invocation invocation) {
+            return invocation.target;
+        }
     }
 
     private static class Invocation {
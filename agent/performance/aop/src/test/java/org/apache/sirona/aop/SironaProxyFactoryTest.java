@@ -65,6 +65,20 @@ public class SironaProxyFactoryTest {
         assertEquals(1, failures.getHits());
     }
 
+    @Test
+    public void counterResolvedAgainAfterClear() {
+        final Foo foo = SironaProxyFactory.monitor(Foo.class, new FooImpl());
+        final Counter.Key key = new Counter.Key(Role.PERFORMANCES, FooImpl.class.getName() + ".haveARest");
+
+        foo.haveARest(0);
+        foo.haveARest(0);
+        assertEquals(2, Repository.INSTANCE.getCounter(key).getHits());
+
+        Repository.INSTANCE.clearCounters(); // cached counter is stale now
+        foo.haveARest(0);
+        assertEquals(1, Repository.INSTANCE.getCounter(key).getHits());
+    }
+
     public static interface Foo {
         void haveARest(long ms);
         void throwSthg();
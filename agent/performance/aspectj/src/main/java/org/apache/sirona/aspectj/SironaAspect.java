@@ -54,6 +54,16 @@ public abstract class SironaAspect extends AbstractPerformanceInterceptor<Procee
         return new SerializableMethod(findMethod(invocation.getSignature()));
     }
 
+    @Override
+    protected Object getMethodKey(final ProceedingJoinPoint invocation) {
+        return invocation.getStaticPart(); // one per join point, avoids findMethod() on each call
+    }
+
+    @Override
+    protected Object getTarget(final ProceedingJoinPoint invocation) {
+        return invocation.getTarget();
+    }
+
     private static Method findMethod(final Signature signature) {
         if ("org.aspectj.runtime.reflect.MethodSignatureImpl".equals(signature.getClass().getName())) {
             try {
@@ -53,4 +53,14 @@ public class SironaInterceptor extends AbstractPerformanceInterceptor<Invocation
     protected Object extractContextKey(final InvocationContext invocation) {
         return new SerializableMethod(invocation.getMethod());
     }
+
+    @Override
+    protected Object getMethodKey(final InvocationContext invocation) {
+        return invocation.getMethod();
+    }
+
+    @Override
+    protected Object getTarget(final InvocationContext invocation) {
+        return invocation.getTarget();
+    }
 }
@@ -20,7 +20,6 @@ package org.apache.sirona.jdbc;
 import org.apache.sirona.Role;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.repositories.Repository;
-import org.apache.sirona.stopwatches.StopWatch;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -45,19 +44,20 @@ public class MonitoredStatement implements InvocationHandler {
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
         final String name = method.getName();
         if (name.startsWith("execute")) {
-            final StopWatch stopWatch;
+            final Counter counter;
             if (name.endsWith("Batch") && (args == null || args.length == 0)) {
-                stopWatch = Repository.INSTANCE.start(Repository.INSTANCE.getCounter(new Counter.Key(Role.JDBC, "batch")));
+                counter = Repository.INSTANCE.getCounter(new Counter.Key(Role.JDBC, "batch"));
             } else {
-                stopWatch = Repository.INSTANCE.start(Repository.INSTANCE.getCounter(new Counter.Key(Role.JDBC, (String) args[0])));
+                counter = Repository.INSTANCE.getCounter(new Counter.Key(Role.JDBC, (String) args[0]));
             }
 
+            final long start = Repository.INSTANCE.startNanos(counter);
             try {
                 return doInvoke(method, args);
             } catch (final InvocationTargetException e) {
                 throw extractSQLException(e);
             } finally {
-                stopWatch.stop();
+                Repository.INSTANCE.stop(counter, start);
             }
         }
         try {
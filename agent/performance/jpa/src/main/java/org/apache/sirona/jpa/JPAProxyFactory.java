@@ -76,6 +76,16 @@ public final class JPAProxyFactory {
             return getCounterName(invocation.target, invocation.method);
         }
 
+        @Override
+        protected Object getMethodKey(final Invocation invocation) {
+            return invocation.method;
+        }
+
+        @Override
+        protected Object getTarget(final Invocation invocation) {
+            return invocation.target;
+        }
+
         @Override
         protected Role getRole() {
             return role;
@@ -46,4 +46,14 @@ public class AopaliancePerformanceInterceptor extends AbstractPerformanceInterce
     protected Object extractContextKey(final MethodInvocation invocation) {
         return new SerializableMethod(invocation.getMethod());
     }
+
+    @Override
+    protected Object getMethodKey(final MethodInvocation invocation) {
+        return invocation.getMethod();
+    }
+
+    @Override
+    protected Object getTarget(final MethodInvocation invocation) {
+        return invocation.getThis();
+    }
 }
\ No newline at end of file
@@ -64,13 +64,13 @@ public class AsyncHttpClientCube
 
 
     @Override
-    public void doPostBytes( final byte[] bytes, final String className )
+    public void doPostBytes( final byte[] bytes, final String className, final String contentType )
     {
         try
         {
             this.asyncHttpClient.preparePost( getConfig().getCollector() ) //
                 .setBody( bytes ) //
-                .addHeader( CONTENT_TYPE, APPLICATION_JAVA_OBJECT ) //
+                .addHeader( CONTENT_TYPE, contentType ) //
                 .addHeader( X_SIRONA_CLASSNAME, className )//
                 .execute( new AsyncHandler<String>()
                 {
@@ -19,8 +19,10 @@ package org.apache.sirona.cube;
 import org.apache.sirona.Role;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.apache.sirona.pathtracking.PathTrackingEntryCodec;
 import org.apache.sirona.status.NodeStatus;
 import org.apache.sirona.status.ValidationResult;
+import org.apache.sirona.util.SerializeUtils;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -59,6 +61,7 @@ public class Cube {
     private static final String ROLE = "role";
     private static final String UNIT = "unit";
     private static final String CONCURRENCY = "concurrency";
+    private static final String AVERAGE_CONCURRENCY = "averageConcurrency";
     private static final String MEAN = "mean";
     private static final String VARIANCE = "variance";
     private static final String HITS = "hits";
@@ -66,6 +69,10 @@ public class Cube {
     private static final String MIN = "min";
     private static final String SUM = "sum";
     private static final String M_2 = "m2";
+    private static final String P_50 = "p50";
+    private static final String P_95 = "p95";
+    private static final String P_99 = "p99";
+    private static final String P_999 = "p999";
 
     private static final String TRACKING_D = "trackingId";
     private static final String NODE_ID = "nodeId";
@@ -132,7 +139,23 @@ public class Cube {
         }
     }
 
+    public void doPostPathTrackingEntries( final Collection<PathTrackingEntry> entries )
+    {
+        if ( PathTrackingEntryCodec.JAVA_SERIALIZATION ) { // collectors only read one serialized entry per request
+            for ( final PathTrackingEntry entry : entries ) {
+                doPostBytes( SerializeUtils.serialize( entry ), PathTrackingEntry.class.getName() );
+            }
+        } else if ( !entries.isEmpty() ) {
+            doPostBytes( PathTrackingEntryCodec.encode( entries ), PathTrackingEntry.class.getName(), PathTrackingEntryCodec.CONTENT_TYPE );
+        }
+    }
+
     public void doPostBytes( byte[] bytes, String className )
+    {
+        doPostBytes( bytes, className, APPLICATION_JAVA_OBJECT );
+    }
+
+    public void doPostBytes( byte[] bytes, String className, String contentType )
     {
         try {
             final URL url = new URL(config.getCollector());
@@ -150,7 +173,7 @@ public class Cube {
             }
 
             connection.setRequestMethod(POST);
-            connection.setRequestProperty(CONTENT_TYPE, APPLICATION_JAVA_OBJECT);
+            connection.setRequestProperty(CONTENT_TYPE, contentType);
             connection.setRequestProperty( X_SIRONA_CLASSNAME, className );
             connection.setRequestProperty(CONTENT_LENGTH, Long.toString(bytes.length));
             connection.setUseCaches(false);
@@ -325,6 +348,7 @@ public class Cube {
                 .add(UNIT, counter.getKey().getRole().getUnit().getName())
                 // minimum metrics to be able to aggregate counters later
                 .add(CONCURRENCY, counter.currentConcurrency().intValue())
+                .add(AVERAGE_CONCURRENCY, counter.getAverageConcurrency())
                 .add(MEAN, counter.getMean())
                 .add(VARIANCE, counter.getVariance())
                 .add(HITS, counter.getHits())
@@ -332,6 +356,10 @@ public class Cube {
                 .add(MIN, counter.getMin())
                 .add(SUM, counter.getSum())
                 .add(M_2, counter.getSecondMoment())
+                .add(P_50, counter.getPercentile(50))
+                .add(P_95, counter.getPercentile(95))
+                .add(P_99, counter.getPercentile(99))
+                .add(P_999, counter.getPercentile(99.9))
                 .map());
         }
         return events;
@@ -23,8 +23,9 @@ import org.apache.sirona.configuration.ioc.IoCs;
 import org.apache.sirona.pathtracking.PathTrackingEntry;
 import org.apache.sirona.store.tracking.BatchPathTrackingDataStore;
 import org.apache.sirona.store.tracking.CollectorPathTrackingDataStore;
-import org.apache.sirona.util.SerializeUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -65,7 +66,7 @@ public class CubePathTrackingDataStore
     @Override
     public void store( final PathTrackingEntry pathTrackingEntry )
     {
-        CUBE.doPostBytes( SerializeUtils.serialize( pathTrackingEntry ), PathTrackingEntry.class.getName() );
+        CUBE.doPostPathTrackingEntries( Collections.singletonList( pathTrackingEntry ) );
     }
 
     @Override
@@ -76,14 +77,21 @@ public class CubePathTrackingDataStore
 
             for ( Map.Entry<String, List<Pointer>> entry : pathTrackingEntries.entrySet() )
             {
+                List<Pointer> pointers = new ArrayList<Pointer>( entry.getValue().size() );
                 for ( Pointer pointer : entry.getValue() )
                 {
                     if ( !pointer.isFree() )
                     {
-                        CUBE.doPostBytes( readBytes( pointer ), PathTrackingEntry.class.getName() );
-                        pointer.freeMemory();
+                        pointers.add( pointer );
                     }
                 }
+
+                // entries of a path are sent in a single message
+                CUBE.doPostPathTrackingEntries( deserialize( entry.getKey(), pointers ) );
+                for ( Pointer pointer : pointers )
+                {
+                    pointer.freeMemory();
+                }
             }
         }
     }
@@ -108,7 +108,7 @@ public class HttpClientCube
 
 
     @Override
-    public void doPostBytes( final byte[] bytes, final String className )
+    public void doPostBytes( final byte[] bytes, final String className, final String contentType )
     {
 
         try
@@ -117,7 +117,7 @@ public class HttpClientCube
 
             HttpPost httpPost = new HttpPost( uri );
             httpPost.setEntity( new ByteArrayEntity( bytes ) );
-            httpPost.setHeader( CONTENT_TYPE, APPLICATION_JAVA_OBJECT );
+            httpPost.setHeader( CONTENT_TYPE, contentType );
             httpPost.setHeader( X_SIRONA_CLASSNAME, className );
 
             httpPost.setConfig( requestConfig );
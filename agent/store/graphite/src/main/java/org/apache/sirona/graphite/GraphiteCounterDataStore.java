@@ -48,9 +48,14 @@ public class GraphiteCounterDataStore extends BatchCounterDataStore
                 final String prefix = COUNTER_PREFIX + key.getRole().getName() + SEP + key.getName() + SEP;
 
                 for (final MetricData data : MetricData.values()) {
+                    final double value = data.value(counter);
+                    if (!data.isReported(value)) { // don't create NaN series
+                        continue;
+                    }
+
                     graphite.push(
                             prefix + data.name(),
-                            data.value(counter),
+                            value,
                             ts);
                 }
             }
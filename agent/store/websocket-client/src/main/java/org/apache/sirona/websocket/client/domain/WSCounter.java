@@ -27,11 +27,16 @@ public class WSCounter extends WSDomain {
     private double secondMoment;
     private long hits;
     private int concurrency;
+    private double averageConcurrency;
     private double variance;
     private double sum;
     private double min;
     private double max;
     private double mean;
+    private double p50;
+    private double p95;
+    private double p99;
+    private double p999;
 
     public WSCounter() {
         // no-op
@@ -49,7 +54,12 @@ public class WSCounter extends WSDomain {
         min = counter.getMin();
         max = counter.getMax();
         mean = counter.getMean();
+        p50 = counter.getPercentile(50);
+        p95 = counter.getPercentile(95);
+        p99 = counter.getPercentile(99);
+        p999 = counter.getPercentile(99.9);
         concurrency = counter.currentConcurrency().get();
+        averageConcurrency = counter.getAverageConcurrency();
     }
 
     public String getName() {
@@ -139,4 +149,44 @@ public class WSCounter extends WSDomain {
     public void setMax(final double max) {
         this.max = max;
     }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(final double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public void setP95(final double p95) {
+        this.p95 = p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(final double p99) {
+        this.p99 = p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public void setP999(final double p999) {
+        this.p999 = p999;
+    }
+
+    public double getAverageConcurrency() {
+        return averageConcurrency;
+    }
+
+    public void setAverageConcurrency(final double averageConcurrency) {
+        this.averageConcurrency = averageConcurrency;
+    }
 }
@@ -28,13 +28,14 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 // very light "IoC" not respecting lazy init (so take care yourself of dependencies)
 public final class IoCs {
     private static final Map<Class<?>, Object> SINGLETONS = new ConcurrentHashMap<Class<?>, Object>();
-    private static final Collection<ToDestroy> INSTANCES = new ArrayList<ToDestroy>();
+    private static final List<ToDestroy> INSTANCES = new ArrayList<ToDestroy>();
     public static final String SETTER_PREFIX = "set";
     private static Thread shutdownHook = null;
 
@@ -242,8 +243,9 @@ public final class IoCs {
     }
 
     public static void shutdown() {
-        for (final ToDestroy c : INSTANCES) {
-            c.destroy();
+        // reverse creation order: an instance can still use what it was created with while destroyed
+        for (int i = INSTANCES.size() - 1; i >= 0; i--) {
+            INSTANCES.get(i).destroy();
         }
         INSTANCES.clear();
         SINGLETONS.clear();
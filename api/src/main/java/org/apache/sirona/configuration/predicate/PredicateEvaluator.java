@@ -18,19 +18,24 @@ package org.apache.sirona.configuration.predicate;
 
 import org.apache.sirona.spi.SPI;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class PredicateEvaluator {
     private static final String NOT = "!";
     private static final char SEPARATOR = ':';
+    private static final Predicate[] NO_PREDICATE = new Predicate[0];
 
     private final Map<String, Predicate> predicates = new HashMap<String, Predicate>();
     private final boolean truePredicate;
     private final boolean trueValue;
+    private Predicate[] compiled = NO_PREDICATE; // configured predicates only, iterated for each value
 
     public PredicateEvaluator(final String configuration, final String sep) {
         if (configuration != null && configuration.length()>0) {
@@ -93,6 +98,17 @@ public final class PredicateEvaluator {
         // no need to keep it in mem
         predicates.remove(TruePredicate.INSTANCE.prefix());
         predicates.remove("boolean");
+
+        // built-in predicates without configuration never match so don't even call them
+        final List<Predicate> used = new ArrayList<Predicate>(predicates.size());
+        for (final Predicate predicate : predicates.values()) {
+            if (!CompiledPredicate.class.isInstance(predicate)) {
+                used.add(predicate);
+            } else if (CompiledPredicate.class.cast(predicate).compile()) {
+                used.add(predicate);
+            }
+        }
+        compiled = used.toArray(new Predicate[used.size()]);
     }
 
     public boolean matches(final String value) {
@@ -100,7 +116,7 @@ public final class PredicateEvaluator {
             return trueValue;
         }
 
-        for (final Predicate predicate : predicates.values()) {
+        for (final Predicate predicate : compiled) {
             if (predicate.matches(value)) {
                 return true;
             }
@@ -108,10 +124,60 @@ public final class PredicateEvaluator {
         return false;
     }
 
+    /**
+     * Used to filter a whole class before looking at its methods: prefix is the class name and values are methods.
+     *
+     * @param prefix the start of the values which will be tested.
+     * @return false if no value starting with prefix can match, true if one may match.
+     */
+    public boolean mayMatchStartingWith(final String prefix) {
+        if (truePredicate) {
+            return trueValue;
+        }
+
+        for (final Predicate predicate : compiled) {
+            if (!CompiledPredicate.class.isInstance(predicate) // unknown so it can match anything
+                    || CompiledPredicate.class.cast(predicate).mayMatchStartingWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param prefix the start of the values which will be tested.
+     * @return true if all values starting with prefix match, false if some may not match.
+     */
+    public boolean matchesAllStartingWith(final String prefix) {
+        if (truePredicate) {
+            return trueValue;
+        }
+
+        for (final Predicate predicate : compiled) {
+            if (CompiledPredicate.class.isInstance(predicate)
+                    && CompiledPredicate.class.cast(predicate).matchesAllStartingWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // built-in predicates are compiled once configured and know which values starting with a prefix they can match
+    private static interface CompiledPredicate extends Predicate {
+        /**
+         * @return false if this predicate was not configured and never matches.
+         */
+        boolean compile();
+
+        boolean mayMatchStartingWith(String prefix);
+
+        boolean matchesAllStartingWith(String prefix);
+    }
+
     // exclude only filter, just an optimized version of N prefixes
     // a lot of prefixes uses the same prefix
     // so chaining them using substring is really faster when intrumenting a lot of classes
-    private static class ContainersPredicate implements Predicate {
+    private static class ContainersPredicate implements CompiledPredicate {
         private final Collection<String> containers = new CopyOnWriteArraySet<String>();
 
         @Override
@@ -191,6 +257,21 @@ public final class PredicateEvaluator {
         public void addConfiguration(final String value, final boolean negative) {
             containers.add(value);
         }
+
+        @Override
+        public boolean compile() {
+            return !containers.isEmpty();
+        }
+
+        @Override
+        public boolean mayMatchStartingWith(final String prefix) {
+            return true;
+        }
+
+        @Override
+        public boolean matchesAllStartingWith(final String prefix) { // only startsWith tests so a match stays a match
+            return matches(prefix);
+        }
     }
 
     private static class TruePredicate implements Predicate {
@@ -216,7 +297,7 @@ public final class PredicateEvaluator {
         }
     }
 
-    private static class SuffixPredicate implements Predicate {
+    private static class SuffixPredicate implements CompiledPredicate {
         private final Map<String, Boolean> suffixes = new HashMap<String, Boolean>();
 
         @Override
@@ -238,10 +319,27 @@ public final class PredicateEvaluator {
         public void addConfiguration(final String value, final boolean negative) {
             suffixes.put(value, negative);
         }
+
+        @Override
+        public boolean compile() {
+            return !suffixes.isEmpty();
+        }
+
+        @Override
+        public boolean mayMatchStartingWith(final String prefix) {
+            return suffixes.containsValue(Boolean.TRUE);
+        }
+
+        @Override
+        public boolean matchesAllStartingWith(final String prefix) {
+            return false;
+        }
     }
 
-    private static class PrefixPredicate implements Predicate {
-        private final Map<String, Boolean> prefixes = new HashMap<String, Boolean>();
+    // prefixes are stored in a trie so a value is tested in one pass whatever the number of prefixes is,
+    // the longest configured prefix of the value decides (prefix:org.foo,prefix:!org.foo.Bar excludes org.foo.Bar)
+    private static class PrefixPredicate implements CompiledPredicate {
+        private final PrefixNode root = new PrefixNode();
 
         @Override
         public String prefix() {
@@ -250,22 +348,119 @@ public final class PredicateEvaluator {
 
         @Override
         public boolean matches(final String value) {
-            for (final Map.Entry<String, Boolean> p : prefixes.entrySet()) {
-                if (value.startsWith(p.getKey())) {
-                    return p.getValue();
+            PrefixNode node = root;
+            Boolean result = node.value;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.child(value.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.value != null) {
+                    result = node.value;
                 }
             }
-            return false;
+            return result == Boolean.TRUE;
         }
 
         @Override
         public void addConfiguration(final String value, final boolean negative) {
-            prefixes.put(value, negative);
+            root.put(value, 0, negative);
+        }
+
+        @Override
+        public boolean compile() {
+            return root.positives > 0 || root.negatives > 0;
+        }
+
+        @Override
+        public boolean mayMatchStartingWith(final String prefix) {
+            final PrefixNode node = walk(prefix);
+            return node == null ? matches(prefix) : matches(prefix) || node.positives > 0;
+        }
+
+        @Override
+        public boolean matchesAllStartingWith(final String prefix) {
+            final PrefixNode node = walk(prefix);
+            return matches(prefix) && (node == null || node.negatives == 0);
+        }
+
+        // node of the prefix itself (with values configured for longer prefixes) or null if there is none
+        private PrefixNode walk(final String prefix) {
+            PrefixNode node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            return node;
+        }
+    }
+
+    private static class PrefixNode {
+        private char[] chars = new char[0];
+        private PrefixNode[] children = new PrefixNode[0];
+        private Boolean value; // not null if a prefix ends here
+        private int positives = 0; // number of prefixes ending in this subtree by value
+        private int negatives = 0;
+
+        private PrefixNode child(final char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private void put(final String prefix, final int index, final boolean positive) {
+            if (index == prefix.length()) {
+                if (value != null) { // overriden
+                    if (value) {
+                        positives--;
+                    } else {
+                        negatives--;
+                    }
+                }
+                value = positive;
+            } else {
+                PrefixNode child = child(prefix.charAt(index));
+                if (child == null) { // java 5 so no Arrays.copyOf
+                    final char[] newChars = new char[chars.length + 1];
+                    System.arraycopy(chars, 0, newChars, 0, chars.length);
+                    newChars[chars.length] = prefix.charAt(index);
+
+                    final PrefixNode[] newChildren = new PrefixNode[children.length + 1];
+                    System.arraycopy(children, 0, newChildren, 0, children.length);
+                    child = new PrefixNode();
+                    newChildren[children.length] = child;
+
+                    chars = newChars;
+                    children = newChildren;
+                }
+
+                final int oldPositives = child.positives;
+                final int oldNegatives = child.negatives;
+                child.put(prefix, index + 1, positive);
+                positives += child.positives - oldPositives;
+                negatives += child.negatives - oldNegatives;
+                return;
+            }
+
+            if (positive) {
+                positives++;
+            } else {
+                negatives++;
+            }
         }
     }
 
-    private static class RegexPredicate implements Predicate {
-        private final Map<Pattern, Boolean> patterns = new HashMap<Pattern, Boolean>();
+    // patterns are merged in a single alternation so a value is matched once and not once per pattern,
+    // a value matching an excluded pattern (regex:!...) doesn't match
+    private static class RegexPredicate implements CompiledPredicate {
+        private static final Pattern BACK_REFERENCE = Pattern.compile(".*\\\\([0-9]|k<).*");
+
+        private final List<String> included = new ArrayList<String>();
+        private final List<String> excluded = new ArrayList<String>();
+        private Pattern[] includes;
+        private Pattern[] excludes;
 
         @Override
         public String prefix() {
@@ -274,9 +469,14 @@ public final class PredicateEvaluator {
 
         @Override
         public boolean matches(final String value) {
-            for (final Map.Entry<Pattern, Boolean> p : patterns.entrySet()) {
-                if (p.getKey().matcher(value).matches()) {
-                    return p.getValue();
+            for (final Pattern pattern : excludes) {
+                if (pattern.matcher(value).matches()) {
+                    return false;
+                }
+            }
+            for (final Pattern pattern : includes) {
+                if (pattern.matcher(value).matches()) {
+                    return true;
                 }
             }
             return false;
@@ -284,7 +484,60 @@ public final class PredicateEvaluator {
 
         @Override
         public void addConfiguration(final String value, final boolean negative) {
-            patterns.put(Pattern.compile(value), negative);
+            Pattern.compile(value); // validate it now
+            if (negative) {
+                included.add(value);
+            } else {
+                excluded.add(value);
+            }
+        }
+
+        @Override
+        public boolean compile() {
+            includes = merge(included);
+            excludes = merge(excluded);
+            return includes.length > 0;
+        }
+
+        @Override
+        public boolean mayMatchStartingWith(final String prefix) {
+            for (final Pattern pattern : includes) {
+                final Matcher matcher = pattern.matcher(prefix);
+                if (matcher.matches() || matcher.hitEnd()) { // hitEnd: more characters could make it match
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean matchesAllStartingWith(final String prefix) {
+            return false;
+        }
+
+        private static Pattern[] merge(final List<String> regexes) {
+            if (regexes.isEmpty()) {
+                return new Pattern[0];
+            }
+            if (regexes.size() == 1) {
+                return new Pattern[]{ Pattern.compile(regexes.iterator().next()) };
+            }
+
+            final StringBuilder alternation = new StringBuilder();
+            for (final String regex : regexes) {
+                if (BACK_REFERENCE.matcher(regex).matches()) { // group numbers would change, keep them separated
+                    final Pattern[] patterns = new Pattern[regexes.size()];
+                    for (int i = 0; i < patterns.length; i++) {
+                        patterns[i] = Pattern.compile(regexes.get(i));
+                    }
+                    return patterns;
+                }
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(regex).append(')');
+            }
+            return new Pattern[]{ Pattern.compile(alternation.toString()) };
         }
     }
 }
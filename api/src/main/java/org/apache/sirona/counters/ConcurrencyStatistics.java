@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time weighted concurrency statistics fed with each concurrency transition of a counter
+ * (see {@link Counter#updateConcurrency(int)}). It gives the average number of threads
+ * being in the monitored resource since the last reset and the time spent at each concurrency
+ * level, levels being grouped in power of 2 buckets: 0, 1, 2, 3-4, 5-8, 9-16...
+ * <p/>
+ * Time is tracked in microseconds and the last transition (time and level) is a single long
+ * updated with a CAS so it is lock free. Two racing transitions can only swap a few microseconds
+ * between two neighbour levels.
+ */
+public class ConcurrencyStatistics {
+    public static final int BUCKETS = 16;
+
+    private static final int LEVEL_BITS = 20;
+    private static final long LEVEL_MASK = (1L << LEVEL_BITS) - 1;
+    private static final long MAX_OFFSET = Long.MAX_VALUE >>> LEVEL_BITS; // ~100 days
+
+    private final AtomicLong last = new AtomicLong(0); // offset since origin << LEVEL_BITS | level
+    private final AtomicLong weightedTime = new AtomicLong(0); // sum of level * duration
+    private final AtomicLongArray levelTimes = new AtomicLongArray(BUCKETS);
+    private volatile long origin = nanoTime();
+
+    public void transition(final int level) {
+        final long now = offset();
+        final long newLevel = Math.min(Math.max(level, 0), LEVEL_MASK);
+
+        long current;
+        long time;
+        do {
+            current = last.get();
+            time = Math.max(now, current >>> LEVEL_BITS);
+        } while (!last.compareAndSet(current, (time << LEVEL_BITS) | newLevel));
+
+        final long duration = time - (current >>> LEVEL_BITS);
+        if (duration > 0) {
+            final int previousLevel = (int) (current & LEVEL_MASK);
+            weightedTime.addAndGet(previousLevel * duration);
+            levelTimes.addAndGet(bucket(previousLevel), duration);
+        }
+    }
+
+    public void reset() { // keeps the current level, only the history is dropped
+        origin = nanoTime();
+        last.set(last.get() & LEVEL_MASK);
+        weightedTime.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            levelTimes.set(i, 0);
+        }
+    }
+
+    /**
+     * @return the time weighted average concurrency since the last reset.
+     */
+    public double getAverage() {
+        final long now = offset();
+        if (now <= 0) {
+            return Double.NaN;
+        }
+
+        final long state = last.get();
+        final long pending = Math.max(0, now - (state >>> LEVEL_BITS));
+        return (weightedTime.get() + (state & LEVEL_MASK) * pending) / (double) now;
+    }
+
+    /**
+     * @return time spent (in microseconds) in each concurrency bucket, see {@link #bucketLowerBound(int)}.
+     */
+    public long[] getLevelTimes() {
+        final long[] times = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            times[i] = levelTimes.get(i);
+        }
+
+        final long state = last.get();
+        final long pending = offset() - (state >>> LEVEL_BITS);
+        if (pending > 0) {
+            times[bucket((int) (state & LEVEL_MASK))] += pending;
+        }
+        return times;
+    }
+
+    public static int bucket(final int level) {
+        if (level <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 1 + (32 - Integer.numberOfLeadingZeros(level - 1)));
+    }
+
+    public static int bucketLowerBound(final int bucket) {
+        if (bucket <= 2) {
+            return bucket;
+        }
+        return (1 << (bucket - 2)) + 1;
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private long offset() {
+        final long offset = (nanoTime() - origin) / 1000;
+        if (offset >= MAX_OFFSET) { // very long lived counter, restart the history
+            reset();
+            return 0;
+        }
+        return offset;
+    }
+}
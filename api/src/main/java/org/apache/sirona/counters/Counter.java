@@ -38,10 +38,12 @@ public interface Counter {
 
     AtomicInteger currentConcurrency();
 
-    void updateConcurrency(int concurrency);
+    void updateConcurrency(int concurrency); // called with the new concurrency each time it changes (increment and decrement)
 
     int getMaxConcurrency();
 
+    double getAverageConcurrency(); // time weighted since the last reset, NaN if the counter doesn't track it
+
     // --- Statistical indicators --------------------------------------------
 
     double getMax();
@@ -60,6 +62,8 @@ public interface Counter {
 
     double getSecondMoment(); // here for aggregation etc but not (yet?) a human metric so not in MetricData
 
+    double getPercentile(double percentile); // percentile between 0 and 100, NaN if the counter doesn't track the distribution
+
     public static class Key implements Serializable {
         private final String name;
         private final Role role;
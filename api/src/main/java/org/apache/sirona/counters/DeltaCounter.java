@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable view of what a counter recorded during one collection interval,
+ * created by {@link LockableCounter#snapshotDelta()} which resets the live counter at the same time.
+ * <p/>
+ * Percentiles are only available when the source counter had a histogram, NaN otherwise.
+ */
+public class DeltaCounter implements Counter {
+    private final Key key;
+    private final OptimizedStatistics statistics;
+    private final Histogram histogram;
+    private final AtomicInteger concurrency;
+    private final int maxConcurrency;
+    private final double averageConcurrency;
+
+    public DeltaCounter(final Key key, final OptimizedStatistics statistics, final Histogram histogram,
+                        final int concurrency, final int maxConcurrency, final double averageConcurrency) {
+        this.key = key;
+        this.statistics = statistics;
+        this.histogram = histogram;
+        this.concurrency = new AtomicInteger(concurrency);
+        this.maxConcurrency = maxConcurrency;
+        this.averageConcurrency = averageConcurrency;
+    }
+
+    @Override
+    public Key getKey() {
+        return key;
+    }
+
+    @Override
+    public void reset() {
+        // no-op: snapshot
+    }
+
+    @Override
+    public void add(final double delta) {
+        // no-op: snapshot
+    }
+
+    @Override
+    public void add(final double delta, final Unit unit) {
+        // no-op: snapshot
+    }
+
+    @Override
+    public AtomicInteger currentConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public void updateConcurrency(final int concurrency) {
+        // no-op: snapshot
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public double getAverageConcurrency() {
+        return averageConcurrency;
+    }
+
+    @Override
+    public double getMax() {
+        return statistics.getMax();
+    }
+
+    @Override
+    public double getMin() {
+        return statistics.getMin();
+    }
+
+    @Override
+    public long getHits() {
+        return statistics.getN();
+    }
+
+    @Override
+    public double getSum() {
+        return statistics.getSum();
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return statistics.getStandardDeviation();
+    }
+
+    @Override
+    public double getVariance() {
+        return statistics.getVariance();
+    }
+
+    @Override
+    public double getMean() {
+        return statistics.getMean();
+    }
+
+    @Override
+    public double getSecondMoment() {
+        return statistics.getSecondMoment();
+    }
+
+    @Override
+    public double getPercentile(final double percentile) {
+        if (histogram == null) {
+            return Double.NaN;
+        }
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    public OptimizedStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!Counter.class.isInstance(o)) {
+            return false;
+        }
+
+        final Counter that = Counter.class.cast(o);
+        return key.equals(that.getKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaCounter{" +
+            "key=" + key +
+            ", maxConcurrency=" + maxConcurrency +
+            ", statistics=" + statistics +
+            '}';
+    }
+}
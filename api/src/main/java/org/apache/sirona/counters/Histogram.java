@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear bucketed histogram (same layout as HdrHistogram): values are split in buckets
+ * of power of 2 size, each bucket being split in linear sub-buckets. The number of sub-buckets
+ * is computed from the number of significant digits so the relative error of a recorded value
+ * is bounded by 10^-significantDigits.
+ * <p/>
+ * Memory is fixed at construction time and recording is a couple of bit operations plus
+ * one atomic increment so it doesn't allocate and is O(1).
+ */
+public class Histogram {
+    private final long highestTrackableValue;
+    private final int significantDigits;
+
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+
+    private final AtomicLongArray counts;
+
+    public Histogram(final long highestTrackableValue, final int significantDigits) {
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("highestTrackableValue should be >= 2");
+        }
+        if (significantDigits < 0 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits should be between 0 and 5");
+        }
+
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        final long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        final int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        subBucketHalfCountMagnitude = (subBucketCountMagnitude > 1 ? subBucketCountMagnitude : 1) - 1;
+        final int subBucketCount = (int) Math.pow(2, subBucketHalfCountMagnitude + 1);
+        subBucketHalfCount = subBucketCount / 2;
+        subBucketMask = subBucketCount - 1;
+        leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        long smallestUntrackableValue = subBucketCount;
+        int bucketCount = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        counts = new AtomicLongArray((bucketCount + 1) * subBucketHalfCount);
+    }
+
+    public void record(final double value) {
+        final long v;
+        if (!(value > 0)) { // also handles NaN
+            v = 0;
+        } else if (value >= highestTrackableValue) {
+            v = highestTrackableValue;
+        } else {
+            v = (long) value;
+        }
+        counts.incrementAndGet(countsIndex(v));
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Moves recorded values to a new histogram. Each bucket is swapped with 0 atomically
+     * so a value recorded concurrently ends up either in the returned histogram or in this one, never lost.
+     *
+     * @return a histogram with the values recorded since the last reset.
+     */
+    public Histogram snapshotAndReset() {
+        final Histogram snapshot = new Histogram(highestTrackableValue, significantDigits);
+        for (int i = 0; i < counts.length(); i++) {
+            final long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                snapshot.counts.set(i, count);
+            }
+        }
+        return snapshot;
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile the percentile to compute, between 0 and 100.
+     * @return the highest value equivalent (in the histogram precision) to the value at this percentile or NaN if empty.
+     */
+    public double getValueAtPercentile(final double percentile) {
+        final int length = counts.length();
+        final long[] snapshot = new long[length];
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        final double requested = Math.min(Math.max(percentile, 0.), 100.);
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(requested / 100. * total));
+
+        long cumulated = 0;
+        for (int i = 0; i < length; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), highestTrackableValue);
+            }
+        }
+        return highestTrackableValue;
+    }
+
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    private int countsIndex(final long value) {
+        final int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        final int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    private long highestEquivalentValue(final int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        final long lowestEquivalentValue = ((long) subBucketIndex) << bucketIndex;
+        return lowestEquivalentValue + (1L << bucketIndex) - 1;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import org.apache.sirona.store.counter.CounterDataStore;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A DefaultCounter also feeding a fixed size Histogram to be able to provide percentiles.
+ */
+public class HistogramCounter extends DefaultCounter {
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3600000000000L; // 1h in ns
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+    protected final Histogram histogram;
+
+    public HistogramCounter(final Key key, final CounterDataStore store) {
+        this(key, store, new Histogram(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS));
+    }
+
+    public HistogramCounter(final Key key, final CounterDataStore store, final Histogram histogram) {
+        super(key, store);
+        this.histogram = histogram;
+    }
+
+    @Override
+    public void addInternal(final double delta) {
+        super.addInternal(delta);
+        histogram.record(delta); // lock free
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        super.reset();
+    }
+
+    @Override
+    public DeltaCounter snapshotDelta() {
+        final Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            // histogram is recorded outside the lock so swap it instead of resetting it to not lose concurrent values
+            final DeltaCounter delta = new DeltaCounter(getKey(), statistics.copy(), histogram.snapshotAndReset(),
+                currentConcurrency().get(), getMaxConcurrency(), getAverageConcurrency());
+            statistics.clear();
+            resetConcurrency();
+            return delta;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double getPercentile(final double percentile) {
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramCounter{" +
+            "concurrency=" + currentConcurrency().get() +
+            ", key=" + getKey() +
+            ", maxConcurrency=" + getMaxConcurrency() +
+            ", statistics=" + statistics +
+            ", p99=" + getPercentile(99) +
+            '}';
+    }
+}
@@ -20,16 +20,22 @@ import org.apache.sirona.store.counter.CounterDataStore;
 
 import javax.management.ObjectName;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public abstract class LockableCounter implements Counter {
+    private static final AtomicIntegerFieldUpdater<LockableCounter> MAX_CONCURRENCY =
+        AtomicIntegerFieldUpdater.newUpdater(LockableCounter.class, "maxConcurrency");
+
     private final Key key;
     private final CounterDataStore dataStore;
     protected final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private final AtomicInteger concurrency = new AtomicInteger(0);
     private volatile int maxConcurrency = 0;
+    private final ConcurrencyStatistics concurrencyStatistics = new ConcurrencyStatistics();
     private ObjectName jmx = null;
 
     protected LockableCounter(final Key key, final CounterDataStore dataStore) {
@@ -57,8 +63,11 @@ public abstract class LockableCounter implements Counter {
 
     @Override
     public void updateConcurrency(final int concurrency) {
-        if (concurrency > maxConcurrency) {
-            maxConcurrency = concurrency;
+        getConcurrencyStatistics().transition(concurrency);
+
+        int max = maxConcurrency;
+        while (concurrency > max && !MAX_CONCURRENCY.compareAndSet(this, max, concurrency)) {
+            max = maxConcurrency;
         }
     }
 
@@ -67,6 +76,15 @@ public abstract class LockableCounter implements Counter {
         return maxConcurrency;
     }
 
+    @Override
+    public double getAverageConcurrency() {
+        return getConcurrencyStatistics().getAverage();
+    }
+
+    public ConcurrencyStatistics getConcurrencyStatistics() {
+        return concurrencyStatistics;
+    }
+
     @Override
     public AtomicInteger currentConcurrency() {
         return concurrency;
@@ -85,7 +103,25 @@ public abstract class LockableCounter implements Counter {
     }
 
     public void reset() {
+        resetConcurrency();
+    }
+
+    protected void resetConcurrency() {
         maxConcurrency = 0;
+        concurrencyStatistics.reset();
+    }
+
+    // copy and reset are done under the write lock so a value is either in the returned delta or in the next one
+    public DeltaCounter snapshotDelta() {
+        final Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            final DeltaCounter delta = new DeltaCounter(getKey(), getStatistics(), null, currentConcurrency().get(), getMaxConcurrency(), getAverageConcurrency());
+            reset();
+            return delta;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -128,6 +164,11 @@ public abstract class LockableCounter implements Counter {
         return getStatistics().getSecondMoment();
     }
 
+    @Override
+    public double getPercentile(final double percentile) {
+        return Double.NaN;
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
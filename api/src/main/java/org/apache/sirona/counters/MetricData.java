@@ -141,9 +141,88 @@ public enum MetricData {
         public boolean isTime() {
             return false;
         }
+    },
+    P50 {
+        @Override
+        public double value(final Counter counter) {
+            return counter.getPercentile(50);
+        }
+
+        @Override
+        public boolean isTime() {
+            return true;
+        }
+
+        @Override
+        public boolean isPercentile() {
+            return true;
+        }
+    },
+    P95 {
+        @Override
+        public double value(final Counter counter) {
+            return counter.getPercentile(95);
+        }
+
+        @Override
+        public boolean isTime() {
+            return true;
+        }
+
+        @Override
+        public boolean isPercentile() {
+            return true;
+        }
+    },
+    P99 {
+        @Override
+        public double value(final Counter counter) {
+            return counter.getPercentile(99);
+        }
+
+        @Override
+        public boolean isTime() {
+            return true;
+        }
+
+        @Override
+        public boolean isPercentile() {
+            return true;
+        }
+    },
+    P999 {
+        @Override
+        public double value(final Counter counter) {
+            return counter.getPercentile(99.9);
+        }
+
+        @Override
+        public boolean isTime() {
+            return true;
+        }
+
+        @Override
+        public boolean isPercentile() {
+            return true;
+        }
     };
 
     public abstract double value(Counter counter);
 
     public abstract boolean isTime();
+
+    /**
+     * Percentiles are only computed by counters tracking their distribution (HistogramCounter), others return NaN.
+     */
+    public boolean isPercentile() {
+        return false;
+    }
+
+    /**
+     * @param value the value of this metric for a counter.
+     * @return false if the value should be skipped by reports: percentile of a counter not tracking its distribution.
+     */
+    public boolean isReported(final double value) {
+        return !isPercentile() || !Double.isNaN(value);
+    }
 }
\ No newline at end of file
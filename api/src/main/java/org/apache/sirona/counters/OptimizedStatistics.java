@@ -72,6 +72,41 @@ public class OptimizedStatistics {
         return this;
     }
 
+    // parallel variant of addValue (Chan et al.), merging other into this gives the same moments
+    // than if all values of other were added one by one
+    public OptimizedStatistics merge(final OptimizedStatistics other) {
+        if (other.n == 0) {
+            return this;
+        }
+        if (n == 0) {
+            n = other.n;
+            sum = other.sum;
+            min = other.min;
+            max = other.max;
+            m1 = other.m1;
+            m2 = other.m2;
+            return this;
+        }
+
+        final long oldN = n;
+        n += other.n;
+        sum += other.sum;
+
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+
+        final double dev = other.m1 - m1;
+        final double nDev = dev * other.n / n;
+        m1 += nDev;
+        m2 += other.m2 + dev * nDev * oldN;
+
+        return this;
+    }
+
     public void clear() {
         n = 0;
         sum = 0;
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import org.apache.sirona.store.counter.CounterDataStore;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A DefaultCounter also keeping a ring of per interval statistics (for instance 90 x 10s)
+ * to be able to compute statistics of a sliding window (last minute, last 5 minutes...)
+ * merging the buckets of the window. Nothing is reset on read.
+ */
+public class WindowedCounter extends DefaultCounter implements WindowAware {
+    public static final long DEFAULT_INTERVAL = 10000; // ms
+    public static final int DEFAULT_SIZE = 90; // 15mn with the default interval
+
+    private final long interval;
+    private final OptimizedStatistics[] buckets;
+    private final long[] bucketIndexes; // interval index (time / interval) of the values in the matching bucket
+
+    public WindowedCounter(final Key key, final CounterDataStore store) {
+        this(key, store, DEFAULT_INTERVAL, DEFAULT_SIZE);
+    }
+
+    public WindowedCounter(final Key key, final CounterDataStore store, final long interval, final int size) {
+        super(key, store);
+        if (interval <= 0 || size <= 0) {
+            throw new IllegalArgumentException("interval and size should be positive");
+        }
+
+        this.interval = interval;
+        this.buckets = new OptimizedStatistics[size];
+        this.bucketIndexes = new long[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new OptimizedStatistics();
+        }
+        Arrays.fill(bucketIndexes, -1);
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void addInternal(final double delta) {
+        final long index = now() / interval;
+        final int slot = (int) (index % buckets.length);
+
+        final Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            statistics.addValue(delta);
+
+            final OptimizedStatistics bucket = buckets[slot];
+            if (bucketIndexes[slot] != index) { // bucket of a previous turn of the ring
+                bucket.clear();
+                bucketIndexes[slot] = index;
+            }
+            bucket.addValue(delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        final Lock lock = getLock().writeLock();
+        lock.lock();
+        try {
+            for (final OptimizedStatistics bucket : buckets) {
+                bucket.clear();
+            }
+            Arrays.fill(bucketIndexes, -1);
+        } finally {
+            lock.unlock();
+        }
+        super.reset();
+    }
+
+    @Override
+    public OptimizedStatistics getWindowStatistics(final long duration) {
+        final long bucketNumber = Math.max(1, (duration + interval - 1) / interval);
+        if (bucketNumber > buckets.length) {
+            return null;
+        }
+
+        final long index = now() / interval;
+        final long oldest = index - bucketNumber + 1;
+
+        final OptimizedStatistics window = new OptimizedStatistics();
+        final Lock lock = getLock().readLock();
+        lock.lock();
+        try {
+            for (int i = 0; i < buckets.length; i++) {
+                final long bucketIndex = bucketIndexes[i];
+                if (bucketIndex >= oldest && bucketIndex <= index) {
+                    window.merge(buckets[i]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return window;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getSize() {
+        return buckets.length;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowedCounter{" +
+            "concurrency=" + currentConcurrency().get() +
+            ", key=" + getKey() +
+            ", maxConcurrency=" + getMaxConcurrency() +
+            ", statistics=" + statistics +
+            ", interval=" + interval +
+            ", size=" + buckets.length +
+            '}';
+    }
+}
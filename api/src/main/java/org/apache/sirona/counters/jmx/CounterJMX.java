@@ -55,6 +55,31 @@ public class CounterJMX implements CounterJMXMBean {
         return delegate.getMean();
     }
 
+    @Override
+    public double getP50() {
+        return delegate.getPercentile(50);
+    }
+
+    @Override
+    public double getP95() {
+        return delegate.getPercentile(95);
+    }
+
+    @Override
+    public double getP99() {
+        return delegate.getPercentile(99);
+    }
+
+    @Override
+    public double getP999() {
+        return delegate.getPercentile(99.9);
+    }
+
+    @Override
+    public double getAverageConcurrency() {
+        return delegate.getAverageConcurrency();
+    }
+
     @Override
     public String getRole() {
         return delegate.getKey().getRole().getName();
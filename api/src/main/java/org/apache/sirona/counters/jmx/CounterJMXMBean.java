@@ -29,6 +29,16 @@ public interface CounterJMXMBean {
 
     double getMean();
 
+    double getP50();
+
+    double getP95();
+
+    double getP99();
+
+    double getP999();
+
+    double getAverageConcurrency();
+
     String getRole();
 
     String getName();
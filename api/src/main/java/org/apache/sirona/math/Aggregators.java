@@ -40,8 +40,17 @@ public class Aggregators {
         double max = current.getMax();
         double m2 = current.getSecondMoment();
         double mean = current.getMean();
+        double p50 = current.getPercentile(50);
+        double p95 = current.getPercentile(95);
+        double p99 = current.getPercentile(99);
+        double p999 = current.getPercentile(99.9);
         while (iterator.hasNext()) {
             current = iterator.next();
+            // percentiles can't be merged without the distributions so keep the worst node value (upper bound)
+            p50 = maxIgnoringNaN(p50, current.getPercentile(50));
+            p95 = maxIgnoringNaN(p95, current.getPercentile(95));
+            p99 = maxIgnoringNaN(p99, current.getPercentile(99));
+            p999 = maxIgnoringNaN(p999, current.getPercentile(99.9));
             if (current.getMin() < min || Double.isNaN(min)) {
                 min = current.getMin();
             }
@@ -65,7 +74,14 @@ public class Aggregators {
         } else {
             variance = m2 / (n - 1);
         }
-        return new M2AwareStatisticalSummary(mean, variance, n, max, min, sum, m2);
+        return new M2AwareStatisticalSummary(mean, variance, n, max, min, sum, m2, p50, p95, p99, p999);
+    }
+
+    private static double maxIgnoringNaN(final double current, final double value) {
+        if (Double.isNaN(current) || value > current) {
+            return value;
+        }
+        return current;
     }
 
     private Aggregators() {
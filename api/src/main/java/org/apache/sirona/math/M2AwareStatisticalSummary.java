@@ -27,10 +27,21 @@ public class M2AwareStatisticalSummary implements Serializable {
     private final double min;
     private final double sum;
     private final double m2;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double p999;
 
     public M2AwareStatisticalSummary(final double mean, final double variance, final long n,
                                      final double max, final double min, final double sum,
                                      final double m2) {
+        this(mean, variance, n, max, min, sum, m2, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public M2AwareStatisticalSummary(final double mean, final double variance, final long n,
+                                     final double max, final double min, final double sum,
+                                     final double m2,
+                                     final double p50, final double p95, final double p99, final double p999) {
         this.mean = mean;
         this.variance = variance;
         this.n = n;
@@ -38,12 +49,17 @@ public class M2AwareStatisticalSummary implements Serializable {
         this.min = min;
         this.sum = sum;
         this.m2 = m2;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.p999 = p999;
     }
 
     public M2AwareStatisticalSummary(final Map<String, Object> data) {
         this(toDouble(data.get("mean")), toDouble(data.get("variance")), toLong(data.get("hits")),
             toDouble(data.get("max")), toDouble(data.get("min")), toDouble(data.get("sum")),
-            toDouble(data.get("m2")));
+            toDouble(data.get("m2")),
+            toDouble(data.get("p50")), toDouble(data.get("p95")), toDouble(data.get("p99")), toDouble(data.get("p999")));
     }
 
     private static double toDouble(final Object mean) {
@@ -96,4 +112,37 @@ public class M2AwareStatisticalSummary implements Serializable {
     public double getSum() {
         return sum;
     }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    // only the percentiles sent over the wire are known
+    public double getPercentile(final double percentile) {
+        if (percentile == 50) {
+            return p50;
+        }
+        if (percentile == 95) {
+            return p95;
+        }
+        if (percentile == 99) {
+            return p99;
+        }
+        if (percentile == 99.9) {
+            return p999;
+        }
+        return Double.NaN;
+    }
 }
@@ -38,12 +38,29 @@ public class PathCallInformation
      */
     private Date startTime;
 
+    /**
+     * execution time of the root method in nano seconds, -1 if unknown
+     */
+    private long duration = -1;
+
+    /**
+     * number of entries of the path, -1 if unknown
+     */
+    private int entryCount = -1;
+
     public PathCallInformation( String trackingId, Date startTime )
     {
         this.trackingId = trackingId;
         this.startTime = startTime;
     }
 
+    public PathCallInformation( String trackingId, Date startTime, long duration, int entryCount )
+    {
+        this( trackingId, startTime );
+        this.duration = duration;
+        this.entryCount = entryCount;
+    }
+
     public String getTrackingId()
     {
         return trackingId;
@@ -64,12 +81,34 @@ public class PathCallInformation
         this.startTime = startTime;
     }
 
+    public long getDuration()
+    {
+        return duration;
+    }
+
+    public void setDuration( long duration )
+    {
+        this.duration = duration;
+    }
+
+    public int getEntryCount()
+    {
+        return entryCount;
+    }
+
+    public void setEntryCount( int entryCount )
+    {
+        this.entryCount = entryCount;
+    }
+
     @Override
     public String toString()
     {
         return "PathCallInformation{" +
             "trackingId='" + trackingId + '\'' +
             ", startTime=" + startTime +
+            ", duration=" + duration +
+            ", entryCount=" + entryCount +
             '}';
     }
 
@@ -89,4 +128,20 @@ public class PathCallInformation
             return i;
         }
     };
+
+    /**
+     * longest paths first
+     */
+    public static final Comparator<PathCallInformation> DURATION_COMPARATOR = new Comparator<PathCallInformation>()
+    {
+        @Override
+        public int compare( PathCallInformation o1, PathCallInformation o2 )
+        {
+            if ( o1.getDuration() != o2.getDuration() )
+            {
+                return o1.getDuration() > o2.getDuration() ? -1 : 1;
+            }
+            return COMPARATOR.compare( o1, o2 );
+        }
+    };
 }
@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.pathtracking;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.util.SerializeUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact binary format for {@link PathTrackingEntry}: longs are written as varints (start time being
+ * delta encoded) and names are written once then referenced by id.
+ * <p/>
+ * Two flavors are available:
+ * <ul>
+ * <li>an instance one used by stores: class, method and node names are interned in the codec dictionary
+ * and the tracking id is not written at all as stores already index entries by tracking id</li>
+ * <li>a static self contained one used to transfer a batch of entries (agent to collector), the dictionary
+ * being scoped to the message</li>
+ * </ul>
+ * Java serialization is still available as a fallback setting <code>org.apache.sirona.pathtracking.codec</code>
+ * to <code>java</code> (to push to an old collector for instance) and {@link #decode(byte[])} reads both formats.
+ */
+public class PathTrackingEntryCodec
+{
+    public static final boolean JAVA_SERIALIZATION = "java".equalsIgnoreCase(
+        Configuration.getProperty( Configuration.CONFIG_PROPERTY_PREFIX + "pathtracking.codec", "binary" ) );
+
+    public static final String CONTENT_TYPE = "application/x-sirona-pathtracking";
+
+    // java serialization streams start with 0xACED so a message starting with this byte is ours
+    private static final byte MAGIC = (byte) 0x5A;
+
+    private static final byte VERSION = 1;
+
+    private static final String UTF_8 = "UTF-8";
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    private volatile String[] names = new String[64];
+
+    private int size = 0;
+
+    private final long baseTime;
+
+    public PathTrackingEntryCodec()
+    {
+        // start times are wall clock nanoseconds, see PathTrackingInformation#getStartDateNs
+        this( TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis() ) );
+    }
+
+    /**
+     * @param baseTime start times are encoded as a delta from this value so it should be close to them.
+     */
+    public PathTrackingEntryCodec( long baseTime )
+    {
+        this.baseTime = baseTime;
+    }
+
+    /**
+     * @return the entry without its tracking id, names being referenced in this codec dictionary.
+     */
+    public byte[] encode( PathTrackingEntry entry )
+    {
+        Output output = new Output( 16 );
+        output.writeVarLong( intern( entry.getNodeId() ) );
+        output.writeVarLong( intern( entry.getClassName() ) );
+        output.writeVarLong( intern( entry.getMethodName() ) );
+        output.writeZigZag( entry.getStartTime() - baseTime );
+        output.writeVarLong( entry.getExecutionTime() );
+        output.writeVarLong( entry.getLevel() );
+        return output.toByteArray();
+    }
+
+    public PathTrackingEntry decode( String trackingId, byte[] bytes )
+    {
+        Input input = new Input( bytes );
+        String nodeId = name( (int) input.readVarLong() );
+        String className = name( (int) input.readVarLong() );
+        String methodName = name( (int) input.readVarLong() );
+        long startTime = baseTime + input.readZigZag();
+        long executionTime = input.readVarLong();
+        int level = (int) input.readVarLong();
+        return new PathTrackingEntry( trackingId, nodeId, className, methodName, startTime, executionTime, level );
+    }
+
+    /**
+     * @return the number of names in the dictionary.
+     */
+    public int getDictionarySize()
+    {
+        synchronized ( ids )
+        {
+            return size;
+        }
+    }
+
+    // 0 is null, an existing name is id + 1
+    private int intern( String name )
+    {
+        if ( name == null )
+        {
+            return 0;
+        }
+
+        Integer id = ids.get( name );
+        if ( id == null )
+        {
+            synchronized ( ids )
+            {
+                id = ids.get( name );
+                if ( id == null )
+                {
+                    String[] current = names;
+                    if ( size == current.length )
+                    {
+                        String[] bigger = new String[current.length * 2];
+                        System.arraycopy( current, 0, bigger, 0, current.length );
+                        current = bigger;
+                    }
+                    current[size] = name;
+                    names = current; // publish the name before its id
+                    id = size++;
+                    ids.put( name, id );
+                }
+            }
+        }
+        return id + 1;
+    }
+
+    private String name( int ref )
+    {
+        if ( ref == 0 )
+        {
+            return null;
+        }
+        return names[ref - 1];
+    }
+
+    /**
+     * @return a self contained message with all the entries.
+     */
+    public static byte[] encode( Collection<PathTrackingEntry> entries )
+    {
+        Output output = new Output( 32 + 24 * entries.size() );
+        output.writeByte( MAGIC );
+        output.writeByte( VERSION );
+        output.writeVarLong( entries.size() );
+
+        Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        long previousStartTime = 0;
+        for ( PathTrackingEntry entry : entries )
+        {
+            output.writeString( entry.getTrackingId(), dictionary );
+            output.writeString( entry.getNodeId(), dictionary );
+            output.writeString( entry.getClassName(), dictionary );
+            output.writeString( entry.getMethodName(), dictionary );
+            output.writeZigZag( entry.getStartTime() - previousStartTime );
+            output.writeVarLong( entry.getExecutionTime() );
+            output.writeVarLong( entry.getLevel() );
+            previousStartTime = entry.getStartTime();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * @param bytes a message created by {@link #encode(Collection)} or a java serialized entry.
+     * @return the entries of the message.
+     */
+    public static List<PathTrackingEntry> decode( byte[] bytes )
+    {
+        if ( bytes.length == 0 || bytes[0] != MAGIC )
+        {
+            PathTrackingEntry entry = SerializeUtils.deserialize( bytes, PathTrackingEntry.class );
+            if ( entry == null )
+            {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList( entry );
+        }
+
+        Input input = new Input( bytes );
+        input.position = 1;
+        byte version = input.readByte();
+        if ( version != VERSION )
+        {
+            throw new IllegalArgumentException( "Unsupported path tracking format version: " + version );
+        }
+
+        int count = (int) input.readVarLong();
+        List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>( count );
+        List<String> dictionary = new ArrayList<String>();
+        long startTime = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            String trackingId = input.readString( dictionary );
+            String nodeId = input.readString( dictionary );
+            String className = input.readString( dictionary );
+            String methodName = input.readString( dictionary );
+            startTime += input.readZigZag();
+            long executionTime = input.readVarLong();
+            int level = (int) input.readVarLong();
+            entries.add(
+                new PathTrackingEntry( trackingId, nodeId, className, methodName, startTime, executionTime, level ) );
+        }
+        return entries;
+    }
+
+    private static class Output
+    {
+        private byte[] buffer;
+
+        private int position;
+
+        private Output( int capacity )
+        {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure( int needed )
+        {
+            if ( position + needed > buffer.length )
+            {
+                byte[] bigger = new byte[Math.max( buffer.length * 2, position + needed )];
+                System.arraycopy( buffer, 0, bigger, 0, position );
+                buffer = bigger;
+            }
+        }
+
+        private void writeByte( byte value )
+        {
+            ensure( 1 );
+            buffer[position++] = value;
+        }
+
+        private void writeVarLong( long value )
+        {
+            ensure( 10 );
+            while ( ( value & ~0x7FL ) != 0 )
+            {
+                buffer[position++] = (byte) ( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeZigZag( long value )
+        {
+            writeVarLong( ( value << 1 ) ^ ( value >> 63 ) );
+        }
+
+        // 0 is null, 1 a new name followed by its bytes, an already written name is its index + 2
+        private void writeString( String value, Map<String, Integer> dictionary )
+        {
+            if ( value == null )
+            {
+                writeVarLong( 0 );
+                return;
+            }
+
+            Integer index = dictionary.get( value );
+            if ( index != null )
+            {
+                writeVarLong( index + 2 );
+                return;
+            }
+
+            dictionary.put( value, dictionary.size() );
+            byte[] bytes = utf8( value );
+            writeVarLong( 1 );
+            writeVarLong( bytes.length );
+            ensure( bytes.length );
+            System.arraycopy( bytes, 0, buffer, position, bytes.length );
+            position += bytes.length;
+        }
+
+        private byte[] toByteArray()
+        {
+            byte[] bytes = new byte[position];
+            System.arraycopy( buffer, 0, bytes, 0, position );
+            return bytes;
+        }
+    }
+
+    private static class Input
+    {
+        private final byte[] buffer;
+
+        private int position;
+
+        private Input( byte[] buffer )
+        {
+            this.buffer = buffer;
+        }
+
+        private byte readByte()
+        {
+            return buffer[position++];
+        }
+
+        private long readVarLong()
+        {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = buffer[position++];
+                value |= (long) ( b & 0x7F ) << shift;
+                shift += 7;
+            }
+            while ( ( b & 0x80 ) != 0 );
+            return value;
+        }
+
+        private long readZigZag()
+        {
+            long value = readVarLong();
+            return ( value >>> 1 ) ^ -( value & 1 );
+        }
+
+        private String readString( List<String> dictionary )
+        {
+            int ref = (int) readVarLong();
+            if ( ref == 0 )
+            {
+                return null;
+            }
+            if ( ref > 1 )
+            {
+                return dictionary.get( ref - 2 );
+            }
+
+            int length = (int) readVarLong();
+            String value;
+            try
+            {
+                value = new String( buffer, position, length, UTF_8 );
+            }
+            catch ( UnsupportedEncodingException e )
+            {
+                throw new IllegalStateException( e ); // UTF-8 is always supported
+            }
+            position += length;
+            dictionary.add( value );
+            return value;
+        }
+    }
+
+    private static byte[] utf8( String value )
+    {
+        try
+        {
+            return value.getBytes( UTF_8 );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e ); // UTF-8 is always supported
+        }
+    }
+}
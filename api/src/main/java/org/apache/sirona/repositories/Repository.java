@@ -20,6 +20,7 @@ package org.apache.sirona.repositories;
 import org.apache.sirona.Role;
 import org.apache.sirona.configuration.ioc.IoCs;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.OptimizedStatistics;
 import org.apache.sirona.gauges.Gauge;
 import org.apache.sirona.status.NodeStatus;
 import org.apache.sirona.stopwatches.StopWatch;
@@ -37,10 +38,22 @@ public interface Repository {
 
     void clearCounters();
 
+    // counter store generation (see CounterGenerationAware) or -1 if counters can't be cached by callers
+    long counterGeneration();
+
     void reset();
 
+    // statistics of the last duration (ms) or null if the counter doesn't keep windows
+    OptimizedStatistics getWindowStatistics(Counter counter, long duration);
+
     StopWatch start(Counter counter);
 
+    // allocation free alternative to start(counter).stop(): startNanos returns the value to give back to stop
+    long startNanos(Counter counter);
+
+    // returns the elapsed time in nanoseconds
+    long stop(Counter counter, long startNanos);
+
     void addGauge(final Gauge gauge);
 
     void stopGauge(Gauge role);
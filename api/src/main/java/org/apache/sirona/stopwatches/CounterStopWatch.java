@@ -62,7 +62,7 @@ public class CounterStopWatch implements StopWatch {
 
     protected void doStop() {
         counter.add(getElapsedTime(), NANOSECOND);
-        concurrencyCounter.decrementAndGet();
+        counter.updateConcurrency(concurrencyCounter.decrementAndGet());
     }
 
     @Override
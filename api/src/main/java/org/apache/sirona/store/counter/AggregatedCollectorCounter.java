@@ -47,6 +47,7 @@ public class AggregatedCollectorCounter extends CollectorCounter implements Aggr
             statistics = Aggregators.aggregate(counters);
             concurrency.set(computeConcurrency(counters));
             updateConcurrency(concurrency.get());
+            averageConcurrency = computeAverageConcurrency(counters);
         } finally {
             workLock.unlock();
         }
@@ -64,6 +65,18 @@ public class AggregatedCollectorCounter extends CollectorCounter implements Aggr
         return i;
     }
 
+    // nodes are distinct resources so their average concurrencies add up
+    private static double computeAverageConcurrency(final Collection<LeafCollectorCounter> counters) {
+        double sum = Double.NaN;
+        for (final LeafCollectorCounter counter : counters) {
+            final double average = counter.getAverageConcurrency();
+            if (!Double.isNaN(average)) {
+                sum = Double.isNaN(sum) ? average : sum + average;
+            }
+        }
+        return sum;
+    }
+
     @Override
     public Map<String, ? extends Counter> aggregated() {
         return aggregation;
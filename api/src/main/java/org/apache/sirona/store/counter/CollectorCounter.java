@@ -30,6 +30,7 @@ public abstract class CollectorCounter implements Counter, Serializable {
     protected final Key key;
     protected final ReadWriteLock lock = new ReentrantReadWriteLock();
     protected volatile int maxConcurrency = 0;
+    protected volatile double averageConcurrency = Double.NaN;
     protected volatile AtomicInteger concurrency = new AtomicInteger(0);
     protected M2AwareStatisticalSummary statistics;
 
@@ -87,6 +88,10 @@ public abstract class CollectorCounter implements Counter, Serializable {
         }
     }
 
+    public double getAverageConcurrency() {
+        return averageConcurrency;
+    }
+
     public double getMax() {
         final Lock workLock = lock.readLock();
         workLock.lock();
@@ -172,6 +177,16 @@ public abstract class CollectorCounter implements Counter, Serializable {
         }
     }
 
+    public double getPercentile(final double percentile) {
+        final Lock workLock = lock.readLock();
+        workLock.lock();
+        try {
+            return statistics.getPercentile(percentile);
+        } finally {
+            workLock.unlock();
+        }
+    }
+
     
     public boolean equals(final Object o) {
         if (this == o) {
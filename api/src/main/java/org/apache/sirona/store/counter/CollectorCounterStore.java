@@ -23,6 +23,7 @@ import java.util.Collection;
 
 public interface CollectorCounterStore extends CounterDataStore {
     void update(Counter.Key key, String marker, M2AwareStatisticalSummary stats, int concurrency);
+    void update(Counter.Key key, String marker, M2AwareStatisticalSummary stats, int concurrency, double averageConcurrency);
     Collection<String> markers();
     Collection<? extends Counter> getCounters(String marker);
     Counter getOrCreateCounter(Counter.Key key, final String marker);
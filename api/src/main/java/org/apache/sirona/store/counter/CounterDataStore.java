@@ -27,5 +27,8 @@ public interface CounterDataStore {
 
     Collection<Counter> getCounters();
 
+    // copies and resets atomically each counter which got hits since the last call, used to push interval deltas
+    Collection<Counter> snapshotDeltas();
+
     void addToCounter(Counter defaultCounter, double delta);  // sensitive method which need to be thread safe
 }
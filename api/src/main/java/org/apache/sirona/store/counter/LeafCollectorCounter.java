@@ -27,11 +27,16 @@ public class LeafCollectorCounter extends CollectorCounter {
     }
 
     public void update(final M2AwareStatisticalSummary newStats, final int newConcurrency) {
+        update(newStats, newConcurrency, Double.NaN);
+    }
+
+    public void update(final M2AwareStatisticalSummary newStats, final int newConcurrency, final double newAverageConcurrency) {
         final Lock workLock = lock.writeLock();
         workLock.lock();
         try {
             concurrency.set(newConcurrency);
             updateConcurrency(newConcurrency);
+            averageConcurrency = newAverageConcurrency;
             statistics = newStats;
         } finally {
             workLock.unlock();
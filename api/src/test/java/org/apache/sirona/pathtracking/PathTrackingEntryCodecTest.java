@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.pathtracking;
+
+import org.apache.sirona.util.SerializeUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrackingEntryCodecTest
+{
+    @Test
+    public void storeRoundTrip()
+    {
+        final long now = System.nanoTime();
+        final PathTrackingEntryCodec codec = new PathTrackingEntryCodec( now );
+
+        final PathTrackingEntry entry = new PathTrackingEntry( "id", "node", "org.foo.Service", "find", now - 12345, 789, 3 );
+        final byte[] bytes = codec.encode( entry );
+        assertTrue( bytes.length < 12 );
+
+        final PathTrackingEntry decoded = codec.decode( "id", bytes );
+        assertEquals( entry.toString(), decoded.toString() ); // no equals()
+
+        // names are interned once
+        codec.encode( new PathTrackingEntry( "other", "node", "org.foo.Service", "all", now, 1, 1 ) );
+        assertEquals( 4, codec.getDictionarySize() );
+    }
+
+    @Test
+    public void nullNames()
+    {
+        final PathTrackingEntryCodec codec = new PathTrackingEntryCodec();
+        final PathTrackingEntry decoded = codec.decode( "id", codec.encode( new PathTrackingEntry( "id", null, "Foo", null, 0, 0, 0 ) ) );
+        assertNull( decoded.getNodeId() );
+        assertNull( decoded.getMethodName() );
+        assertEquals( "Foo", decoded.getClassName() );
+    }
+
+    @Test
+    public void messageRoundTrip()
+    {
+        final long now = System.nanoTime();
+        final List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            entries.add( new PathTrackingEntry( "tracking", "node", "org.foo.Service" + ( i % 2 ), "m\u00e9thod" + ( i % 3 ), now + i * 1000, 50 * i, i ) );
+        }
+
+        final byte[] bytes = PathTrackingEntryCodec.encode( entries );
+        assertEquals( entries.toString(), PathTrackingEntryCodec.decode( bytes ).toString() );
+
+        int serialized = 0;
+        for ( final PathTrackingEntry entry : entries )
+        {
+            serialized += SerializeUtils.serialize( entry ).length;
+        }
+        assertTrue( bytes.length * 10 < serialized );
+    }
+
+    @Test
+    public void javaSerializationFallback()
+    {
+        final PathTrackingEntry entry = new PathTrackingEntry( "id", "node", "Foo", "bar", 1, 2, 3 );
+        final List<PathTrackingEntry> decoded = PathTrackingEntryCodec.decode( SerializeUtils.serialize( entry ) );
+        assertEquals( 1, decoded.size() );
+        assertEquals( entry.toString(), decoded.get( 0 ).toString() );
+    }
+}
@@ -53,6 +53,39 @@ public class PredicateTest
         assertTrue(evaluator.matches("Ends with Cat"));
     }
 
+    @Test
+    public void longestPrefixWins() {
+        final PredicateEvaluator evaluator = new PredicateEvaluator("prefix:org.foo,prefix:!org.foo.internal,prefix:org.foo.internal.Api", ",");
+        assertTrue(evaluator.matches("org.foo.Service.run()"));
+        assertFalse(evaluator.matches("org.foo.internal.Impl.run()"));
+        assertTrue(evaluator.matches("org.foo.internal.Api.run()"));
+        assertFalse(evaluator.matches("org.bar.Service.run()"));
+    }
+
+    @Test
+    public void startingWith() {
+        final PredicateEvaluator prefixes = new PredicateEvaluator("prefix:org.foo,prefix:!org.foo.internal.Impl.hidden", ",");
+        assertTrue(prefixes.mayMatchStartingWith("org.foo.Service."));
+        assertTrue(prefixes.matchesAllStartingWith("org.foo.Service."));
+        assertTrue(prefixes.mayMatchStartingWith("org.foo.internal.Impl."));
+        assertFalse(prefixes.matchesAllStartingWith("org.foo.internal.Impl."));
+        assertTrue(prefixes.mayMatchStartingWith("org.")); // org.foo is under org.
+        assertFalse(prefixes.mayMatchStartingWith("org.bar.Service."));
+
+        final PredicateEvaluator regex = new PredicateEvaluator("regex:org\\.foo\\..*Service\\.run\\(\\),regex:com\\.bar\\..*", ",");
+        assertTrue(regex.mayMatchStartingWith("org.foo.MyService."));
+        assertTrue(regex.mayMatchStartingWith("com.bar.Dao."));
+        assertFalse(regex.mayMatchStartingWith("net.baz.Dao."));
+        assertFalse(regex.matchesAllStartingWith("com.bar.Dao."));
+
+        final PredicateEvaluator containers = new PredicateEvaluator("container:jvm", ",");
+        assertTrue(containers.matchesAllStartingWith("java.lang.String."));
+        assertFalse(containers.matchesAllStartingWith("org.foo.Service."));
+
+        assertTrue(new PredicateEvaluator("true:true", ",").matchesAllStartingWith("org.foo."));
+        assertFalse(new PredicateEvaluator("true:false", ",").mayMatchStartingWith("org.foo."));
+    }
+
     @Test
     public void allFalse() {
         assertFalse(new PredicateEvaluator("true:!true",",").matches("or"));
@@ -22,6 +22,9 @@ import org.apache.sirona.alert.AlertListener;
 import org.apache.sirona.configuration.Configuration;
 import org.apache.sirona.configuration.ioc.IoCs;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.Unit;
+import org.apache.sirona.counters.WindowAware;
 import org.apache.sirona.gauges.Gauge;
 import org.apache.sirona.gauges.GaugeAware;
 import org.apache.sirona.gauges.jvm.ActiveThreadGauge;
@@ -34,6 +37,7 @@ import org.apache.sirona.stopwatches.StopWatch;
 import org.apache.sirona.store.DataStoreFactory;
 import org.apache.sirona.store.counter.CollectorCounterStore;
 import org.apache.sirona.store.counter.CounterDataStore;
+import org.apache.sirona.store.counter.CounterGenerationAware;
 import org.apache.sirona.store.gauge.CollectorGaugeDataStore;
 import org.apache.sirona.store.gauge.CommonGaugeDataStore;
 import org.apache.sirona.store.gauge.GaugeDataStore;
@@ -209,6 +213,14 @@ public class DefaultRepository implements Repository
         counterDataStore.clearCounters();
     }
 
+    @Override
+    public long counterGeneration() {
+        if (CounterGenerationAware.class.isInstance(counterDataStore)) {
+            return CounterGenerationAware.class.cast(counterDataStore).getGeneration();
+        }
+        return -1;
+    }
+
     @Override
     public void reset() {
         clearCounters();
@@ -218,11 +230,33 @@ public class DefaultRepository implements Repository
         }
     }
 
+    @Override
+    public OptimizedStatistics getWindowStatistics(final Counter counter, final long duration) {
+        if (WindowAware.class.isInstance(counter)) {
+            return WindowAware.class.cast(counter).getWindowStatistics(duration);
+        }
+        return null;
+    }
+
     @Override
     public StopWatch start(final Counter monitor) {
         return new CounterStopWatch(monitor);
     }
 
+    @Override
+    public long startNanos(final Counter counter) {
+        counter.updateConcurrency(counter.currentConcurrency().incrementAndGet());
+        return System.nanoTime();
+    }
+
+    @Override
+    public long stop(final Counter counter, final long startNanos) {
+        final long elapsed = System.nanoTime() - startNanos;
+        counter.add(elapsed, Unit.Time.NANOSECOND);
+        counter.updateConcurrency(counter.currentConcurrency().decrementAndGet());
+        return elapsed;
+    }
+
     @Override
     public SortedMap<Long, Double> getGaugeValues(final long start, final long end, final Role role) {
         return gaugeDataStore.getGaugeValues(new GaugeValuesRequest(start, end, role));
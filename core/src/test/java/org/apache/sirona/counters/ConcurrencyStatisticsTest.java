@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.repositories.Repository;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrencyStatisticsTest {
+    @Test
+    public void timeWeighted() {
+        final ManualClockStatistics statistics = new ManualClockStatistics();
+
+        statistics.transition(1); // 0 for 0ms then 1
+        statistics.now = ms(100);
+        statistics.transition(2);
+        statistics.now = ms(200);
+        statistics.transition(1);
+        statistics.now = ms(300);
+        statistics.transition(0);
+        statistics.now = ms(400);
+
+        // 100ms at 1, 100ms at 2, 100ms at 1, 100ms at 0 => 4 "thread x 100ms" over 400ms
+        assertEquals(1., statistics.getAverage(), 0.);
+
+        final long[] times = statistics.getLevelTimes();
+        assertEquals(100000, times[ConcurrencyStatistics.bucket(0)]);
+        assertEquals(200000, times[ConcurrencyStatistics.bucket(1)]);
+        assertEquals(100000, times[ConcurrencyStatistics.bucket(2)]);
+
+        statistics.reset();
+        statistics.now = ms(500);
+        assertEquals(0., statistics.getAverage(), 0.);
+    }
+
+    @Test
+    public void buckets() {
+        assertEquals(0, ConcurrencyStatistics.bucket(0));
+        assertEquals(1, ConcurrencyStatistics.bucket(1));
+        assertEquals(2, ConcurrencyStatistics.bucket(2));
+        assertEquals(3, ConcurrencyStatistics.bucket(3));
+        assertEquals(3, ConcurrencyStatistics.bucket(4));
+        assertEquals(4, ConcurrencyStatistics.bucket(5));
+        assertEquals(4, ConcurrencyStatistics.bucket(8));
+        assertEquals(ConcurrencyStatistics.BUCKETS - 1, ConcurrencyStatistics.bucket(Integer.MAX_VALUE));
+        assertEquals(5, ConcurrencyStatistics.bucketLowerBound(ConcurrencyStatistics.bucket(5)));
+    }
+
+    @Test
+    public void maxConcurrencyIsNotLost() throws InterruptedException {
+        final Counter counter = Repository.INSTANCE.getCounter(new Counter.Key(Role.PERFORMANCES, "ConcurrencyStatisticsTest"));
+        counter.reset();
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        final long startNanos = Repository.INSTANCE.startNanos(counter);
+                        end.countDown();
+                        end.await(); // all threads are in the counter
+                        Repository.INSTANCE.stop(counter, startNanos);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(threads, counter.getMaxConcurrency());
+        assertEquals(0, counter.currentConcurrency().get());
+        assertEquals(threads, counter.getHits());
+    }
+
+    private static long ms(final long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+
+    private static class ManualClockStatistics extends ConcurrencyStatistics {
+        private long now;
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.sirona.counters;
 
 import org.apache.sirona.Role;
 import org.apache.sirona.store.memory.counter.InMemoryCounterDataStore;
+import org.apache.sirona.store.memory.counter.StripedCounter;
 import org.junit.Test;
 
 import java.util.concurrent.ExecutorService;
@@ -40,6 +41,13 @@ public class CounterBench implements Runnable {
         runConcurrent();
     }
 
+    @Test
+    public void stripedCounter() throws Exception {
+        mode = "StripedCounter";
+        counter = new StripedCounter(new Counter.Key(Role.FAILURES, mode), new InMemoryCounterDataStore());
+        runConcurrent();
+    }
+
     private void runConcurrent() throws InterruptedException {
         final long start = System.nanoTime();
         final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
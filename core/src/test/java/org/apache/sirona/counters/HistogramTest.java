@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.store.memory.counter.InMemoryCounterDataStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void percentiles() {
+        final Histogram histogram = new Histogram(3600000000000L, 2);
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10000, histogram.getTotalCount());
+        assertPrecision(5000, histogram.getValueAtPercentile(50));
+        assertPrecision(9500, histogram.getValueAtPercentile(95));
+        assertPrecision(9900, histogram.getValueAtPercentile(99));
+        assertPrecision(9990, histogram.getValueAtPercentile(99.9));
+        assertPrecision(10000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0), 0.);
+    }
+
+    @Test
+    public void bounds() {
+        final Histogram histogram = new Histogram(1000, 1);
+        assertTrue(Double.isNaN(histogram.getValueAtPercentile(50)));
+
+        histogram.record(-5);
+        histogram.record(Double.NaN);
+        histogram.record(50000);
+        assertEquals(3, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(50), 0.);
+        assertEquals(1000, histogram.getValueAtPercentile(100), 0.);
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+    @Test
+    public void counter() {
+        final HistogramCounter counter = new HistogramCounter(new Counter.Key(Role.PERFORMANCES, "histogram"), new InMemoryCounterDataStore());
+        for (int i = 1; i <= 100; i++) {
+            counter.add(i * 1000);
+        }
+
+        assertEquals(100, counter.getHits());
+        assertPrecision(50000, MetricData.P50.value(counter));
+        assertPrecision(99000, MetricData.P99.value(counter));
+
+        counter.reset();
+        assertEquals(0, counter.getHits());
+        assertTrue(Double.isNaN(counter.getPercentile(50)));
+    }
+
+    private static void assertPrecision(final double expected, final double actual) {
+        assertEquals(expected, actual, expected / 100.);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.counters;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.store.memory.counter.InMemoryCounterDataStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WindowedCounterTest {
+    @Test
+    public void slidingWindows() {
+        final ManualClockCounter counter = new ManualClockCounter();
+
+        counter.time = 0;
+        counter.add(10);
+        counter.time = 1500;
+        counter.add(20);
+        counter.time = 5500;
+        counter.add(30);
+
+        // cumulative view untouched
+        assertEquals(3, counter.getHits());
+        assertEquals(60, counter.getSum(), 0.);
+
+        // current bucket (5s-6s) only
+        final OptimizedStatistics last = counter.getWindowStatistics(1000);
+        assertEquals(1, last.getN());
+        assertEquals(30, last.getMean(), 0.);
+
+        // 2s -> 6s
+        assertEquals(1, counter.getWindowStatistics(4000).getN());
+
+        // 1s -> 6s
+        final OptimizedStatistics fiveSeconds = counter.getWindowStatistics(5000);
+        assertEquals(2, fiveSeconds.getN());
+        assertEquals(25, fiveSeconds.getMean(), 0.);
+        assertEquals(20, fiveSeconds.getMin(), 0.);
+        assertEquals(30, fiveSeconds.getMax(), 0.);
+
+        // whole ring
+        final OptimizedStatistics all = counter.getWindowStatistics(10000);
+        assertEquals(3, all.getN());
+        assertEquals(counter.getStatistics().getSecondMoment(), all.getSecondMoment(), 1e-9);
+
+        // bigger than the ring
+        assertNull(counter.getWindowStatistics(11000));
+
+        // once the ring turned old buckets are ignored then reused
+        counter.time = 12000;
+        assertEquals(1, counter.getWindowStatistics(10000).getN());
+        counter.add(40);
+        assertEquals(2, counter.getWindowStatistics(10000).getN());
+        assertEquals(4, counter.getHits());
+
+        counter.reset();
+        assertEquals(0, counter.getWindowStatistics(10000).getN());
+    }
+
+    private static class ManualClockCounter extends WindowedCounter {
+        private long time;
+
+        private ManualClockCounter() {
+            super(new Counter.Key(Role.PERFORMANCES, "windowed"), new InMemoryCounterDataStore(), 1000, 10);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+}
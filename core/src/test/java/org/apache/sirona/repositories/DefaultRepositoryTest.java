@@ -16,9 +16,11 @@
  */
 package org.apache.sirona.repositories;
 
+import org.apache.sirona.Role;
 import org.apache.sirona.SironaException;
 import org.apache.sirona.alert.AlertListener;
 import org.apache.sirona.configuration.ioc.IoCs;
+import org.apache.sirona.counters.Counter;
 import org.apache.sirona.status.NodeStatus;
 import org.apache.sirona.status.NodeStatusReporter;
 import org.apache.sirona.status.Status;
@@ -71,6 +73,21 @@ public class DefaultRepositoryTest {
         }
     }
 
+    @Test
+    public void primitiveStopWatch() {
+        final Counter counter = Repository.INSTANCE.getCounter(new Counter.Key(Role.PERFORMANCES, "primitive-stopwatch"));
+        counter.reset();
+
+        final long start = Repository.INSTANCE.startNanos(counter);
+        assertEquals(1, counter.currentConcurrency().get());
+
+        final long elapsed = Repository.INSTANCE.stop(counter, start);
+        assertEquals(0, counter.currentConcurrency().get());
+        assertEquals(1, counter.getMaxConcurrency());
+        assertEquals(1, counter.getHits());
+        assertEquals(elapsed, counter.getMax(), 0.);
+    }
+
     public static class Alerter1 implements AlertListener {
         private static volatile Alerter1 instance;
 
@@ -16,14 +16,21 @@
 */
 package org.apache.sirona.store.memory.tracking;
 
+import org.apache.sirona.pathtracking.PathCallInformation;
 import org.apache.sirona.pathtracking.PathTrackingEntry;
 import org.apache.sirona.store.memory.tracking.InMemoryPathTrackingDataStore;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -63,4 +70,67 @@ public class InMemoryPathTrackingTest
         Assert.assertEquals( 0, all.size() );
         */
     }
+
+    @Test
+    public void retrieveTrackingIdsByRootStartTime()
+        throws Exception
+    {
+        InMemoryPathTrackingDataStore store = new InMemoryPathTrackingDataStore();
+        try
+        {
+            long now = TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis() );
+            long hour = TimeUnit.HOURS.toNanos( 1 );
+
+            // a propagated task can be stored before its root
+            store.store( new PathTrackingEntry( "recent", "nodeId", "className", "task", now + 10, 5, 2 ) );
+            store.store( Arrays.asList( new PathTrackingEntry( "recent", "nodeId", "className", "root", now, 50, 1 ),
+                                        new PathTrackingEntry( "recent", "nodeId", "className", "child", now + 1, 20, 2 ) ) );
+            store.store( new PathTrackingEntry( "older", "nodeId", "className", "root", now - hour, 100, 1 ) );
+            store.store( new PathTrackingEntry( "tooOld", "nodeId", "className", "root", now - 3 * hour, 1, 1 ) );
+
+            List<PathCallInformation> informations = new ArrayList<PathCallInformation>( store.retrieveTrackingIds(
+                new Date( TimeUnit.NANOSECONDS.toMillis( now - 2 * hour ) ),
+                new Date( TimeUnit.NANOSECONDS.toMillis( now ) + 1 ) ) );
+
+            Assert.assertEquals( 2, informations.size() );
+            Assert.assertEquals( "older", informations.get( 0 ).getTrackingId() );
+            Assert.assertEquals( "recent", informations.get( 1 ).getTrackingId() );
+            Assert.assertEquals( TimeUnit.NANOSECONDS.toMillis( now ), informations.get( 1 ).getStartTime().getTime() );
+            Assert.assertEquals( 50, informations.get( 1 ).getDuration() );
+            Assert.assertEquals( 3, informations.get( 1 ).getEntryCount() );
+
+            Collections.sort( informations, PathCallInformation.DURATION_COMPARATOR );
+            Assert.assertEquals( "older", informations.get( 0 ).getTrackingId() );
+        }
+        finally
+        {
+            store.releaseMemory();
+        }
+    }
+
+    @Test
+    public void evictOldestPaths()
+        throws Exception
+    {
+        InMemoryPathTrackingDataStore store = new InMemoryPathTrackingDataStore( 256, 64 );
+        try
+        {
+            long now = System.nanoTime();
+            for ( int i = 0; i < 100; i++ )
+            {
+                store.store( new PathTrackingEntry( "path-" + i, "nodeId", "className", "methodName", now + i, 1, 1 ) );
+            }
+
+            Assert.assertTrue( store.retrieve( "path-0" ).isEmpty() );
+            Assert.assertEquals( 1, store.retrieve( "path-99" ).size() );
+            Assert.assertTrue( store.getUsedBytes() <= 256 );
+            Assert.assertTrue( store.getPathTrackingEntries().size() < 100 );
+            Assert.assertEquals( store.getPathTrackingEntries().size(),
+                                 store.retrieveTrackingIds( new Date( 0 ), new Date( Long.MAX_VALUE / 1000000 ) ).size() );
+        }
+        finally
+        {
+            store.releaseMemory();
+        }
+    }
 }
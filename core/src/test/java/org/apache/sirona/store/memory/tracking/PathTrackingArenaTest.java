@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.tracking;
+
+import org.apache.sirona.store.memory.tracking.InMemoryPathTrackingDataStore.Pointer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PathTrackingArenaTest
+{
+    @Test
+    public void budget()
+    {
+        final PathTrackingArena arena = new PathTrackingArena( 128, 64 );
+        try
+        {
+            final List<Pointer> pointers = new ArrayList<Pointer>();
+            Pointer pointer;
+            while ( ( pointer = arena.allocate( new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 } ) ) != null )
+            {
+                pointers.add( pointer );
+            }
+
+            assertEquals( 12, pointers.size() ); // 6 entries per slab, 4 bytes lost at the end of each slab
+            assertEquals( 120, arena.getUsedBytes() );
+            assertEquals( 0, arena.getFreeBytes() ); // the failed allocation sealed the last slab
+            assertArrayEquals( new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, arena.read( pointers.get( 3 ) ) );
+
+            // first slab is sealed so it is recycled as soon as its entries are released
+            for ( int i = 0; i < 6; i++ )
+            {
+                pointers.get( i ).freeMemory();
+            }
+            assertEquals( 60, arena.getUsedBytes() );
+            assertEquals( 64, arena.getFreeBytes() );
+            assertNull( arena.read( pointers.get( 3 ) ) );
+
+            final Pointer reused = arena.allocate( new byte[] { 42 } );
+            assertNotNull( reused );
+            assertEquals( pointers.get( 0 ).getOffheapPointer(), reused.getOffheapPointer() );
+            assertNull( arena.read( pointers.get( 0 ) ) );
+            assertArrayEquals( new byte[] { 42 }, arena.read( reused ) );
+        }
+        finally
+        {
+            arena.destroy();
+        }
+    }
+
+    @Test
+    public void doubleRelease()
+    {
+        final PathTrackingArena arena = new PathTrackingArena( 64, 64 );
+        try
+        {
+            final Pointer pointer = arena.allocate( new byte[8] );
+            pointer.freeMemory();
+            pointer.freeMemory();
+            assertEquals( 0, arena.getUsedBytes() );
+        }
+        finally
+        {
+            arena.destroy();
+        }
+    }
+
+    @Test
+    public void destroyWhileReading()
+        throws InterruptedException
+    {
+        final PathTrackingArena arena = new PathTrackingArena( 1024 * 1024, 64 * 1024 );
+        final List<Pointer> pointers = new ArrayList<Pointer>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            pointers.add( arena.allocate( new byte[512] ) );
+        }
+
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final Thread[] readers = new Thread[2];
+        for ( int t = 0; t < readers.length; t++ )
+        {
+            readers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    started.countDown();
+                    for ( int i = 0; i < 100000; i++ )
+                    {
+                        arena.read( pointers.get( i % pointers.size() ) );
+                    }
+                }
+            };
+            readers[t].start();
+        }
+
+        started.await();
+        arena.destroy(); // waits for the copies in progress, later reads see the new epoch
+        for ( final Thread reader : readers )
+        {
+            reader.join();
+        }
+
+        assertNull( arena.read( pointers.get( 0 ) ) );
+        assertNull( arena.allocate( new byte[8] ) );
+    }
+}
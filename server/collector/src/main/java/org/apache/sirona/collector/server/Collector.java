@@ -37,6 +37,7 @@ import org.apache.sirona.counters.Counter;
 import org.apache.sirona.counters.Unit;
 import org.apache.sirona.math.M2AwareStatisticalSummary;
 import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.apache.sirona.pathtracking.PathTrackingEntryCodec;
 import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.status.NodeStatus;
 import org.apache.sirona.status.Status;
@@ -48,7 +49,6 @@ import org.apache.sirona.store.status.CollectorNodeStatusDataStore;
 import org.apache.sirona.store.status.NodeStatusDataStore;
 import org.apache.sirona.store.tracking.CollectorPathTrackingDataStore;
 import org.apache.sirona.util.DaemonThreadFactory;
-import org.apache.sirona.util.SerializeUtils;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -338,7 +338,8 @@ public class Collector extends HttpServlet {
 
         final ServletInputStream inputStream = req.getInputStream();
         try {
-            if (APPLICATION_JAVA_OBJECT.equals( req.getHeader( CONTENT_TYPE ) )) {
+            final String contentType = req.getHeader( CONTENT_TYPE );
+            if (APPLICATION_JAVA_OBJECT.equals( contentType ) || PathTrackingEntryCodec.CONTENT_TYPE.equals( contentType )) {
                 if (PathTrackingEntry.class.getName().equals( req.getHeader( X_SIRONA_CLASSNAME ) )) {
                     int length = req.getContentLength();
                     updatePathTracking( readBytes( req.getInputStream(), length ) );
@@ -481,31 +482,17 @@ public class Collector extends HttpServlet {
                                     Number.class.cast(data.get("executionTime")).longValue(), //
                                     Number.class.cast(data.get("level") ).intValue() );
 
-        if (this.disableDisruptor) {
-            pathTrackingDataStore.store( pathTrackingEntry );
-        } else {
-            ringBuffer.publishEvent( new EventTranslator<PathTrackingEntry>()
-            {
-                @Override
-                public void translateTo( PathTrackingEntry event, long sequence )
-                {
-                    event.setClassName( pathTrackingEntry.getClassName() );
-                    event.setExecutionTime( pathTrackingEntry.getExecutionTime() );
-                    event.setLevel( pathTrackingEntry.getLevel() );
-                    event.setMethodName( pathTrackingEntry.getMethodName() );
-                    event.setNodeId( pathTrackingEntry.getNodeId() );
-                    event.setStartTime( pathTrackingEntry.getStartTime() );
-                    event.setTrackingId( pathTrackingEntry.getTrackingId() );
-                }
-            } );
-        }
+        updatePathTracking( pathTrackingEntry );
     }
 
-
     private void updatePathTracking(final byte[] bytes) {
+        // binary messages can contain several entries, java serialized ones (old agents) a single one
+        for (final PathTrackingEntry pathTrackingEntry : PathTrackingEntryCodec.decode( bytes )) {
+            updatePathTracking( pathTrackingEntry );
+        }
+    }
 
-        final PathTrackingEntry pathTrackingEntry = SerializeUtils.deserialize( bytes, PathTrackingEntry.class );
-
+    private void updatePathTracking(final PathTrackingEntry pathTrackingEntry) {
         if (this.disableDisruptor)
         {
             pathTrackingDataStore.store( pathTrackingEntry );
@@ -532,9 +519,11 @@ public class Collector extends HttpServlet {
     private void updateCounter(final Event event) {
         final Map<String, Object> data = event.getData();
 
+        final Object averageConcurrency = data.get( "averageConcurrency" ); // NaN is not sent and old agents don't send it
         counterDataStore.update( new Counter.Key( role( data ), String.class.cast( data.get( "name" ) ) ),
                                  String.class.cast( data.get( "marker" ) ), new M2AwareStatisticalSummary( data ),
-                                 Number.class.cast( data.get( "concurrency" ) ).intValue() );
+                                 Number.class.cast( data.get( "concurrency" ) ).intValue(),
+                                 averageConcurrency != null ? Number.class.cast( averageConcurrency ).doubleValue() : Double.NaN );
     }
 
     private Role role(final Map<String, Object> data) {
@@ -48,8 +48,39 @@ public class CounterInfo
 
     private final double maxConcurrency;
 
+    private final double p50;
+
+    private final double p95;
+
+    private final double p99;
+
+    private final double p999;
+
+    private final double averageConcurrency;
+
+    /**
+     * time (in microseconds) spent at each concurrency level bucket (0, 1, 2, 3-4, 5-8...), null if not tracked
+     */
+    private final long[] concurrencyLevelTimes;
+
     public CounterInfo( KeyInfo keyInfo, double hits, double max, double mean, double min, double standardDeviation,
                         double sum, double variance, double concurrency, double maxConcurrency )
+    {
+        this( keyInfo, hits, max, mean, min, standardDeviation, sum, variance, concurrency, maxConcurrency, Double.NaN,
+              Double.NaN, Double.NaN, Double.NaN );
+    }
+
+    public CounterInfo( KeyInfo keyInfo, double hits, double max, double mean, double min, double standardDeviation,
+                        double sum, double variance, double concurrency, double maxConcurrency, double p50, double p95,
+                        double p99, double p999 )
+    {
+        this( keyInfo, hits, max, mean, min, standardDeviation, sum, variance, concurrency, maxConcurrency, p50, p95,
+              p99, p999, Double.NaN, null );
+    }
+
+    public CounterInfo( KeyInfo keyInfo, double hits, double max, double mean, double min, double standardDeviation,
+                        double sum, double variance, double concurrency, double maxConcurrency, double p50, double p95,
+                        double p99, double p999, double averageConcurrency, long[] concurrencyLevelTimes )
     {
         this.name = keyInfo.getName();
         this.roleName = keyInfo.getRoleName();
@@ -63,6 +94,12 @@ public class CounterInfo
         this.variance = variance;
         this.concurrency = concurrency;
         this.maxConcurrency = maxConcurrency;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.averageConcurrency = averageConcurrency;
+        this.concurrencyLevelTimes = concurrencyLevelTimes;
     }
 
     public String getName()
@@ -125,6 +162,36 @@ public class CounterInfo
         return maxConcurrency;
     }
 
+    public double getP50()
+    {
+        return p50;
+    }
+
+    public double getP95()
+    {
+        return p95;
+    }
+
+    public double getP99()
+    {
+        return p99;
+    }
+
+    public double getP999()
+    {
+        return p999;
+    }
+
+    public double getAverageConcurrency()
+    {
+        return averageConcurrency;
+    }
+
+    public long[] getConcurrencyLevelTimes()
+    {
+        return concurrencyLevelTimes;
+    }
+
     @Override
     public String toString()
     {
@@ -141,6 +208,11 @@ public class CounterInfo
             ", variance=" + variance +
             ", concurrency=" + concurrency +
             ", maxConcurrency=" + maxConcurrency +
+            ", p50=" + p50 +
+            ", p95=" + p95 +
+            ", p99=" + p99 +
+            ", p999=" + p999 +
+            ", averageConcurrency=" + averageConcurrency +
             '}';
     }
 }
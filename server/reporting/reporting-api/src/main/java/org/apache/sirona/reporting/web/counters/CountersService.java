@@ -18,7 +18,9 @@ package org.apache.sirona.reporting.web.counters;
 
 import org.apache.sirona.Role;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.LockableCounter;
 import org.apache.sirona.counters.MetricData;
+import org.apache.sirona.counters.OptimizedStatistics;
 import org.apache.sirona.counters.Unit;
 import org.apache.sirona.repositories.Repository;
 
@@ -68,7 +70,13 @@ public class CountersService
                                           MetricData.Sum.value( counter ), //
                                           MetricData.Variance.value( counter ), //
                                           MetricData.Concurrency.value( counter ), //
-                                          MetricData.MaxConcurrency.value( counter ) ) ); //
+                                          MetricData.MaxConcurrency.value( counter ), //
+                                          MetricData.P50.value( counter ), //
+                                          MetricData.P95.value( counter ), //
+                                          MetricData.P99.value( counter ), //
+                                          MetricData.P999.value( counter ), //
+                                          counter.getAverageConcurrency(), //
+                                          concurrencyLevelTimes( counter ) ) ); //
             }
             else
             {
@@ -81,7 +89,13 @@ public class CountersService
                                           unit.convert( MetricData.Sum.value( counter ), currentUnit ), //
                                           unit.convert( MetricData.Variance.value( counter ), currentUnit ), //
                                           MetricData.Concurrency.value( counter ), //
-                                          MetricData.MaxConcurrency.value( counter ) ) ); //
+                                          MetricData.MaxConcurrency.value( counter ), //
+                                          unit.convert( MetricData.P50.value( counter ), currentUnit ), //
+                                          unit.convert( MetricData.P95.value( counter ), currentUnit ), //
+                                          unit.convert( MetricData.P99.value( counter ), currentUnit ), //
+                                          unit.convert( MetricData.P999.value( counter ), currentUnit ), //
+                                          counter.getAverageConcurrency(), //
+                                          concurrencyLevelTimes( counter ) ) ); //
             }
         }
 
@@ -90,6 +104,71 @@ public class CountersService
     }
 
 
+    /**
+     * @param window the window duration, either in milliseconds or suffixed by s, m or h (1m, 5m, 15m...).
+     * @return the statistics of the counters keeping time windows for the last window duration.
+     */
+    @GET
+    @Path( "/window/{window}" )
+    @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
+    public List<CounterInfo> window( @PathParam( "window" ) String window, @QueryParam( "unit" ) String unitName )
+    {
+        final long duration = toMilliseconds( window );
+        final Unit unit = unitName == null ? null : Unit.get( unitName );
+
+        Collection<Counter> counters = Repository.INSTANCE.counters();
+
+        List<CounterInfo> out = new ArrayList<CounterInfo>( counters.size() );
+
+        for ( Counter counter : counters )
+        {
+            final OptimizedStatistics statistics = Repository.INSTANCE.getWindowStatistics( counter, duration );
+            if ( statistics == null )
+            {
+                continue;
+            }
+
+            final Unit currentUnit = counter.getKey().getRole().getUnit();
+            final Unit targetUnit = unit == null ? currentUnit : unit;
+            final KeyInfo keyInfo = unit == null ? new KeyInfo( counter.getKey() ) : new KeyInfo( counter.getKey() ).unitName( unit.getName() );
+
+            out.add( new CounterInfo( keyInfo, //
+                                      statistics.getN(), //
+                                      targetUnit.convert( statistics.getMax(), currentUnit ), //
+                                      targetUnit.convert( statistics.getMean(), currentUnit ), //
+                                      targetUnit.convert( statistics.getMin(), currentUnit ), //
+                                      targetUnit.convert( statistics.getStandardDeviation(), currentUnit ), //
+                                      targetUnit.convert( statistics.getSum(), currentUnit ), //
+                                      targetUnit.convert( statistics.getVariance(), currentUnit ), //
+                                      MetricData.Concurrency.value( counter ), //
+                                      MetricData.MaxConcurrency.value( counter ) ) ); //
+        }
+
+        return out;
+    }
+
+    private static long toMilliseconds( final String window )
+    {
+        final String value = window.trim().toLowerCase();
+        if ( value.endsWith( "ms" ) )
+        {
+            return Long.parseLong( value.substring( 0, value.length() - 2 ) );
+        }
+        if ( value.endsWith( "s" ) )
+        {
+            return Long.parseLong( value.substring( 0, value.length() - 1 ) ) * 1000;
+        }
+        if ( value.endsWith( "m" ) )
+        {
+            return Long.parseLong( value.substring( 0, value.length() - 1 ) ) * 60 * 1000;
+        }
+        if ( value.endsWith( "h" ) )
+        {
+            return Long.parseLong( value.substring( 0, value.length() - 1 ) ) * 60 * 60 * 1000;
+        }
+        return Long.parseLong( value );
+    }
+
     @GET
     @Path( "/{name}/{unitName}" )
     @Produces( { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML } )
@@ -104,8 +183,20 @@ public class CountersService
                                MetricData.Max.value( counter ), MetricData.Mean.value( counter ), //
                                MetricData.Min.value( counter ), MetricData.StandardDeviation.value( counter ), //
                                MetricData.Sum.value( counter ), MetricData.Variance.value( counter ), //
-                               MetricData.Concurrency.value( counter ), MetricData.MaxConcurrency.value( counter ) );
+                               MetricData.Concurrency.value( counter ), MetricData.MaxConcurrency.value( counter ), //
+                               MetricData.P50.value( counter ), MetricData.P95.value( counter ), //
+                               MetricData.P99.value( counter ), MetricData.P999.value( counter ), //
+                               counter.getAverageConcurrency(), concurrencyLevelTimes( counter ) );
+
+    }
 
+    private static long[] concurrencyLevelTimes( final Counter counter )
+    {
+        if ( LockableCounter.class.isInstance( counter ) )
+        {
+            return LockableCounter.class.cast( counter ).getConcurrencyStatistics().getLevelTimes();
+        }
+        return null;
     }
 
 
@@ -39,6 +39,11 @@ define(['jquery','angular','bootstrap','services','ui-bootstrap','nggrid'], func
         {field: 'variance', displayName: 'Variance'},
         {field: 'concurrency', displayName: 'Concurrency'},
         {field: 'maxConcurrency', displayName: 'MaxConcurrency'},
+        {field: 'averageConcurrency', displayName: 'AverageConcurrency'},
+        {field: 'p50', displayName: 'P50'},
+        {field: 'p95', displayName: 'P95'},
+        {field: 'p99', displayName: 'P99'},
+        {field: 'p999', displayName: 'P99.9'},
       ];
 
       var csvOpts = {fileName: "counters.csv"};
@@ -26,11 +26,14 @@ import org.apache.sirona.reporting.web.plugin.report.format.HTMLFormat;
 import org.apache.sirona.store.tracking.PathTrackingDataStore;
 import org.apache.sirona.util.Environment;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,8 +45,29 @@ public class PathTrackingEndpoints
     private static final PathTrackingDataStore PATH_TRACKING_DATA_STORE =
         IoCs.findOrCreateInstance( PathTrackingDataStore.class );
 
+    private static final int PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String SORT_BY_START = "start";
+
+    private static final String SORT_BY_DURATION = "duration";
+
     @Regex
     public Template home()
+    {
+        return page( 0, PAGE_SIZE, SORT_BY_START );
+    }
+
+    /**
+     * paths of the last day
+     *
+     * @param page index of the page, starting at 0
+     * @param size number of paths per page
+     * @param sort start (oldest first) or duration (longest first)
+     */
+    @Regex( "/page/([0-9]+)/([0-9]+)/(" + SORT_BY_START + "|" + SORT_BY_DURATION + ")" )
+    public Template page( final int page, final int size, final String sort )
     {
         final Map<String, Object> params = new HashMap<String, Object>();
         if ( !Environment.isCollector() )
@@ -54,10 +78,23 @@ public class PathTrackingEndpoints
         Calendar cal = Calendar.getInstance();
         cal.add( Calendar.DATE, -1 );
 
-        Collection<PathCallInformation> pathCallInformations =
-            PATH_TRACKING_DATA_STORE.retrieveTrackingIds( cal.getTime(), new Date() );
-
-        params.put( "pathCallInformations", pathCallInformations );
+        List<PathCallInformation> pathCallInformations = new ArrayList<PathCallInformation>(
+            PATH_TRACKING_DATA_STORE.retrieveTrackingIds( cal.getTime(), new Date() ) );
+        Collections.sort( pathCallInformations, SORT_BY_DURATION.equals( sort ) //
+            ? PathCallInformation.DURATION_COMPARATOR //
+            : PathCallInformation.COMPARATOR );
+
+        final int pageSize = Math.min( Math.max( 1, size ), MAX_PAGE_SIZE );
+        // page and size come from the url, long to not overflow
+        final int from = (int) Math.min( (long) page * pageSize, pathCallInformations.size() );
+        final int to = Math.min( from + pageSize, pathCallInformations.size() );
+
+        params.put( "pathCallInformations", pathCallInformations.subList( from, to ) );
+        params.put( "page", page );
+        params.put( "size", pageSize );
+        params.put( "sort", sort );
+        params.put( "total", pathCallInformations.size() );
+        params.put( "hasNext", to < pathCallInformations.size() );
 
         return new Template( "pathtracking/home.vm", params );
     }
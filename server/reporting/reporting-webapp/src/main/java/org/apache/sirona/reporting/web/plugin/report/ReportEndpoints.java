@@ -20,6 +20,7 @@ import org.apache.sirona.Role;
 import org.apache.sirona.SironaException;
 import org.apache.sirona.counters.AggregatedCounter;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.MetricData;
 import org.apache.sirona.counters.Unit;
 import org.apache.sirona.reporting.web.plugin.api.MapBuilder;
 import org.apache.sirona.reporting.web.plugin.api.Regex;
@@ -40,6 +41,8 @@ import java.util.TreeMap;
 
 import static org.apache.sirona.reporting.web.plugin.report.format.MapFormat.format;
 import static org.apache.sirona.reporting.web.plugin.report.format.MapFormat.generateLine;
+import static org.apache.sirona.reporting.web.plugin.report.format.MapFormat.headers;
+import static org.apache.sirona.reporting.web.plugin.report.format.MapFormat.metrics;
 import static org.apache.sirona.reporting.web.plugin.report.format.MapFormat.timeUnit;
 
 public class ReportEndpoints {
@@ -56,18 +59,22 @@ public class ReportEndpoints {
         final Unit timeUnit = timeUnit(params);
         final String format = format(params, HTMLFormat.NUMBER_FORMAT);
 
-        final Map<String, Collection<String>> counters = new TreeMap<String, Collection<String>>();
+        final Map<String, Counter> byMarker = new TreeMap<String, Counter>();
         if (AggregatedCounter.class.isInstance(counter)) {
-            for (final Map.Entry<String, ? extends Counter> marker : AggregatedCounter.class.cast(counter).aggregated().entrySet()) {
-                counters.put(marker.getKey(), generateLine(marker.getValue(), timeUnit, format));
-            }
+            byMarker.putAll(AggregatedCounter.class.cast(counter).aggregated());
         } else {
-            counters.put("", generateLine(counter, timeUnit, format));
+            byMarker.put("", counter);
+        }
+
+        final Collection<MetricData> metrics = metrics(byMarker.values());
+        final Map<String, Collection<String>> counters = new TreeMap<String, Collection<String>>();
+        for (final Map.Entry<String, Counter> marker : byMarker.entrySet()) {
+            counters.put(marker.getKey(), generateLine(marker.getValue(), metrics, timeUnit, format));
         }
 
         return new Template("report/counter.vm",
             new MapBuilder<String, Object>()
-                .set("headers", HTMLFormat.ATTRIBUTES_ORDERED_LIST)
+                .set("headers", headers(metrics))
                 .set("counter", counter)
                 .set("counters", counters)
                 .build());
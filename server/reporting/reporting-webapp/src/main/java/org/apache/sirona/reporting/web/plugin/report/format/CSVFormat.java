@@ -17,28 +17,38 @@
 package org.apache.sirona.reporting.web.plugin.report.format;
 
 import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.MetricData;
 import org.apache.sirona.counters.Unit;
 import org.apache.sirona.reporting.web.plugin.api.MapBuilder;
 import org.apache.sirona.reporting.web.plugin.api.Template;
+import org.apache.sirona.repositories.Repository;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 public class CSVFormat extends MapFormat implements Format {
     private static final String SEPARATOR = Configuration.getProperty(Configuration.CONFIG_PROPERTY_PREFIX + "csv.separator", ";");
-    public static final String HEADER = "Counter" + SEPARATOR + "Role" + SEPARATOR + toCsv(ATTRIBUTES_ORDERED_LIST);
+    public static final String HEADER = header(metrics(Collections.<Counter>emptyList())); // no percentile
 
     @Override
     public Template render(final Map<String, ?> params) {
         final Unit timeUnit = timeUnit(params);
+        final Collection<Counter> counters = Repository.INSTANCE.counters();
+        final Collection<MetricData> metrics = metrics(counters);
         return new Template("/templates/report/report-csv.vm",
                         new MapBuilder<String, Object>()
-                        .set("headers", HEADER)
+                        .set("headers", header(metrics))
                         .set("separator", SEPARATOR)
-                        .set("lines", snapshot(timeUnit, format(params, null)))
+                        .set("lines", snapshot(counters, metrics, timeUnit, format(params, null)))
                         .build(), false);
     }
 
+    public static String header(final Collection<MetricData> metrics) {
+        return "Counter" + SEPARATOR + "Role" + SEPARATOR + toCsv(headers(metrics));
+    }
+
     @Override
     public String type() {
         return "text/plain";
@@ -20,14 +20,15 @@ import org.apache.sirona.Role;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.counters.MetricData;
 import org.apache.sirona.counters.Unit;
-import org.apache.sirona.repositories.Repository;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -38,15 +39,41 @@ public abstract class MapFormat {
     public static final Collection<String> ATTRIBUTES_ORDERED_LIST = buildMetricDataHeader();
 
     protected static Collection<String> buildMetricDataHeader() {
+        return headers(Arrays.asList(MetricData.values()));
+    }
+
+    public static Collection<String> headers(final Collection<MetricData> metrics) {
         final Collection<String> list = new CopyOnWriteArrayList<String>();
         list.add("Counter");
         list.add("Role");
-        for (final MetricData md : MetricData.values()) {
+        for (final MetricData md : metrics) {
             list.add(md.name());
         }
         return list;
     }
 
+    /**
+     * @param counters the counters to report.
+     * @return the metrics to use as columns, percentiles are only there if one of the counters tracks its distribution.
+     */
+    public static Collection<MetricData> metrics(final Collection<? extends Counter> counters) {
+        boolean percentiles = false;
+        for (final Counter counter : counters) {
+            if (MetricData.P50.isReported(MetricData.P50.value(counter))) {
+                percentiles = true;
+                break;
+            }
+        }
+
+        final Collection<MetricData> metrics = new ArrayList<MetricData>();
+        for (final MetricData md : MetricData.values()) {
+            if (percentiles || !md.isPercentile()) {
+                metrics.add(md);
+            }
+        }
+        return metrics;
+    }
+
     public static String format(final Map<String, ?> params, final String defaultValue) {
         if (params == null) {
             return defaultValue;
@@ -100,11 +127,12 @@ public abstract class MapFormat {
         return Unit.Time.MILLISECOND;
     }
 
-    protected static Map<String, Collection<String>> snapshotByPath(final Unit timeUnit, final String format) {
+    protected static Map<String, Collection<String>> snapshotByPath(final Collection<Counter> counters, final Collection<MetricData> metrics,
+                                                                    final Unit timeUnit, final String format) {
         final Map<String, Collection<String>> data = new TreeMap<String, Collection<String>>();
-        for (final Counter counter : Repository.INSTANCE.counters()) {
+        for (final Counter counter : counters) {
             final Counter.Key key = counter.getKey();
-            data.put(generateCounterKeyString(key), generateLine(counter, timeUnit, format));
+            data.put(generateCounterKeyString(key), generateLine(counter, metrics, timeUnit, format));
         }
         return data;
     }
@@ -118,15 +146,21 @@ public abstract class MapFormat {
         }
     }
 
-    protected static Collection<Collection<String>> snapshot(final Unit timeUnit, final String format) {
+    protected static Collection<Collection<String>> snapshot(final Collection<Counter> counters, final Collection<MetricData> metrics,
+                                                             final Unit timeUnit, final String format) {
         final Collection<Collection<String>> data = new ArrayList<Collection<String>>();
-        for (final Counter counter : Repository.INSTANCE.counters()) {
-            data.add(generateLine(counter, timeUnit, format));
+        for (final Counter counter : counters) {
+            data.add(generateLine(counter, metrics, timeUnit, format));
         }
         return data;
     }
 
     public static Collection<String> generateLine(final Counter counter, final Unit timeUnit, final String format) {
+        return generateLine(counter, metrics(Collections.singletonList(counter)), timeUnit, format);
+    }
+
+    public static Collection<String> generateLine(final Counter counter, final Collection<MetricData> metrics,
+                                                  final Unit timeUnit, final String format) {
         final Unit counterUnit = counter.getKey().getRole().getUnit();
         final boolean compatible = timeUnit.isCompatible(counterUnit);
 
@@ -147,8 +181,12 @@ public abstract class MapFormat {
             formatter = null;
         }
 
-        for (final MetricData md : MetricData.values()) {
+        for (final MetricData md : metrics) {
             double value = md.value(counter);
+            if (!md.isReported(value)) { // percentile column but this counter doesn't track its distribution
+                line.add("");
+                continue;
+            }
             if (md.isTime() && compatible && timeUnit != counterUnit) {
                 value = timeUnit.convert(value, counterUnit);
             }
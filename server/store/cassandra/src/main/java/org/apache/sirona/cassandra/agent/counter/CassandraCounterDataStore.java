@@ -51,7 +51,8 @@ public class CassandraCounterDataStore extends BatchCounterDataStore
             delegate.getOrCreateCounter(counter.getKey(), marker)
                 .update(new M2AwareStatisticalSummary(
                         counter.getMean(), counter.getVariance(), counter.getHits(),
-                        counter.getMax(), counter.getMin(), counter.getSum(), counter.getSecondMoment()),
+                        counter.getMax(), counter.getMin(), counter.getSum(), counter.getSecondMoment(),
+                        counter.getPercentile(50), counter.getPercentile(95), counter.getPercentile(99), counter.getPercentile(99.9)),
                     counter.currentConcurrency().get());
         }
     }
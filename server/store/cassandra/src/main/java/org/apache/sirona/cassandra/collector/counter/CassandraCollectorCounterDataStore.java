@@ -135,6 +135,12 @@ public class CassandraCollectorCounterDataStore extends InMemoryCollectorCounter
         save(new CassandraLeafCounter(key, this, marker).sync(stats, concurrency), marker);
     }
 
+    @Override // average concurrency is not persisted (yet?)
+    public void update(final Counter.Key key, final String marker, final M2AwareStatisticalSummary stats,
+                       final int concurrency, final double averageConcurrency) {
+        update(key, marker, stats, concurrency);
+    }
+
     @Override // TODO: should we really clear counters or use a timestamp or a flag?
     public void clearCounters() {
         // no-op
@@ -169,7 +175,12 @@ public class CassandraCollectorCounterDataStore extends InMemoryCollectorCounter
                 getOrDefault( serializer, map.getColumnByName( "max" ), DoubleSerializer.get() ).doubleValue(),
                 getOrDefault( serializer, map.getColumnByName( "min" ), DoubleSerializer.get() ).doubleValue(),
                 getOrDefault( serializer, map.getColumnByName( "sum" ), DoubleSerializer.get() ).doubleValue(),
-                getOrDefault( serializer, map.getColumnByName( "m2" ), DoubleSerializer.get() ).doubleValue()),
+                getOrDefault( serializer, map.getColumnByName( "m2" ), DoubleSerializer.get() ).doubleValue(),
+                // NaN when not tracked by the counter or saved before percentiles were persisted
+                getOrDefault( serializer, map.getColumnByName( "p50" ), DoubleSerializer.get() ).doubleValue(),
+                getOrDefault( serializer, map.getColumnByName( "p95" ), DoubleSerializer.get() ).doubleValue(),
+                getOrDefault( serializer, map.getColumnByName( "p99" ), DoubleSerializer.get() ).doubleValue(),
+                getOrDefault( serializer, map.getColumnByName( "p999" ), DoubleSerializer.get() ).doubleValue()),
                 getOrDefault( serializer, map.getColumnByName( "maxConcurrency" ),
                                               IntegerSerializer.get() ).intValue());
     }
@@ -190,6 +201,10 @@ public class CassandraCollectorCounterDataStore extends InMemoryCollectorCounter
             .addInsertion(id, family, column("sum", counter.getSum()))
             .addInsertion(id, family, column("m2", counter.getSecondMoment()))
             .addInsertion(id, family, column("mean", counter.getMean()))
+            .addInsertion(id, family, column("p50", counter.getPercentile(50)))
+            .addInsertion(id, family, column("p95", counter.getPercentile(95)))
+            .addInsertion(id, family, column("p99", counter.getPercentile(99)))
+            .addInsertion(id, family, column("p999", counter.getPercentile(99.9)))
             // counter in marker
             .addInsertion(marker, markerFamily, emptyColumn(id))
             //save it
@@ -37,8 +37,10 @@ public class CounterEndpoint {
             new Counter.Key(new Role(counter.getRoleName(), Unit.get(counter.getRoleUnit())), counter.getName()),
             counter.getMarker(),
             new M2AwareStatisticalSummary(
-                counter.getMean(), counter.getVariance(), counter.getHits(), counter.getMax(), counter.getMin(), counter.getSum(), counter.getSecondMoment()),
-            counter.getConcurrency()
+                counter.getMean(), counter.getVariance(), counter.getHits(), counter.getMax(), counter.getMin(), counter.getSum(), counter.getSecondMoment(),
+                counter.getP50(), counter.getP95(), counter.getP99(), counter.getP999()),
+            counter.getConcurrency(),
+            counter.getAverageConcurrency()
         );
     }
 
@@ -61,20 +61,17 @@ public abstract class BatchCounterDataStore extends InMemoryCounterDataStore {
         scheduledTask.done();
     }
 
-    protected void clearCountersIfNeeded() {
-        if (clearAfterCollect) {
-            clearCounters();
-        }
-    }
-
     protected abstract void pushCountersByBatch(final Collection<Counter> instance);
 
     private class BatchPushCountersTask implements Runnable {
         @Override
         public void run() {
             try {
-                pushCountersByBatch(counters.values());
-                clearCountersIfNeeded();
+                if (clearAfterCollect) { // push what happened during the period, counters are reset in place
+                    pushCountersByBatch(snapshotDeltas());
+                } else {
+                    pushCountersByBatch(counters.values());
+                }
             } catch (final Exception e) {
                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
             }
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.counters.LockableCounter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.store.counter.CounterDataStore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// forward decay sampling, see http://dimacs.rutgers.edu/~graham/pubs/papers/fwddecay.pdf
+//
+// Same model as ExponentialDecayCounter but without boxing nor allocation per sample:
+// - samples are spread over striped reservoirs
+// - each reservoir is a bounded min-heap of priorities stored in parallel primitive arrays (priority, value, weight)
+// - each reservoir rescales its own landmark when it gets too old so there is no global rescaling pause
+// - statistics use the decay weights (not the priorities) as reliability weights so m2 is the weighted one
+public class ForwardDecayCounter extends LockableCounter {
+    private static final long RESCALE_THRESHOLD = TimeUnit.HOURS.toSeconds(1);
+
+    private final double alpha;
+    private final long refreshStatInterval; // ms
+    private final Reservoir[] reservoirs;
+
+    private volatile long computedStatsAt = 0;
+    private volatile OptimizedStatistics currentStats;
+
+    public ForwardDecayCounter(final Key key, final CounterDataStore store,
+                               final double alpha, final int samplingSize, final long refreshStatInterval) {
+        this(key, store, alpha, samplingSize, refreshStatInterval, StripedCounter.DEFAULT_CELLS);
+    }
+
+    public ForwardDecayCounter(final Key key, final CounterDataStore store,
+                               final double alpha, final int samplingSize, final long refreshStatInterval,
+                               final int stripes) {
+        super(key, store);
+        if (samplingSize <= 0) {
+            throw new IllegalArgumentException("samplingSize should be positive");
+        }
+
+        this.alpha = alpha;
+        this.refreshStatInterval = TimeUnit.SECONDS.toMillis(refreshStatInterval);
+
+        final int reservoirNumber = Math.max(1, Math.min(stripes, samplingSize));
+        final int reservoirSize = (samplingSize + reservoirNumber - 1) / reservoirNumber;
+        final long now = seconds();
+        reservoirs = new Reservoir[reservoirNumber];
+        for (int i = 0; i < reservoirNumber; i++) {
+            reservoirs[i] = new Reservoir(reservoirSize, now);
+        }
+    }
+
+    protected long seconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    @Override
+    public void addInternal(final double delta) {
+        final long now = seconds();
+
+        // unlike StripedCounter a thread doesn't stick to a reservoir, it walks them to fill all of them
+        // even with a single writer, it only jumps elsewhere on contention
+        final int[] probe = StripeProbe.current();
+        int h = probe[0] + 1;
+        Reservoir reservoir = reservoirs[(h & Integer.MAX_VALUE) % reservoirs.length];
+        int attempts = 0;
+        while (!reservoir.tryLock()) {
+            if (++attempts % reservoirs.length == 0) {
+                Thread.yield();
+            }
+            h = StripeProbe.rehash(h);
+            reservoir = reservoirs[(h & Integer.MAX_VALUE) % reservoirs.length];
+        }
+        try {
+            reservoir.add(now, delta, alpha);
+        } finally {
+            reservoir.unlock();
+        }
+        probe[0] = h;
+    }
+
+    @Override
+    public void reset() {
+        final long now = seconds();
+        for (final Reservoir reservoir : reservoirs) {
+            reservoir.lock();
+            try {
+                reservoir.clear(now);
+            } finally {
+                reservoir.unlock();
+            }
+        }
+        computedStatsAt = 0;
+        super.reset();
+    }
+
+    @Override
+    public OptimizedStatistics getStatistics() {
+        final long now = System.currentTimeMillis();
+        final OptimizedStatistics cached = currentStats;
+        if (computedStatsAt != 0 && cached != null && now - computedStatsAt < refreshStatInterval) {
+            return cached;
+        }
+
+        // snapshot
+        int total = 0;
+        final double[][] values = new double[reservoirs.length][];
+        final double[][] weights = new double[reservoirs.length][];
+        final long[] landmarks = new long[reservoirs.length];
+        long landmark = Long.MIN_VALUE;
+        for (int r = 0; r < reservoirs.length; r++) {
+            final Reservoir reservoir = reservoirs[r];
+            reservoir.lock();
+            try {
+                values[r] = new double[reservoir.size];
+                weights[r] = new double[reservoir.size];
+                System.arraycopy(reservoir.values, 0, values[r], 0, reservoir.size);
+                System.arraycopy(reservoir.weights, 0, weights[r], 0, reservoir.size);
+                landmarks[r] = reservoir.landmark;
+            } finally {
+                reservoir.unlock();
+            }
+            total += values[r].length;
+            landmark = Math.max(landmark, landmarks[r]);
+        }
+
+        final OptimizedStatistics statistics = computeStatistics(total, values, weights, landmarks, landmark);
+        currentStats = statistics;
+        computedStatsAt = now;
+        return statistics;
+    }
+
+    private OptimizedStatistics computeStatistics(final int n, final double[][] values, final double[][] weights,
+                                                  final long[] landmarks, final long landmark) {
+        if (n == 0) {
+            return new OptimizedStatistics();
+        }
+
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0; // sum of the samples, gives an idea but doesn't represent the stream sum
+        double weightSum = 0;
+        double weightSquareSum = 0;
+        double weightedSum = 0;
+        for (int r = 0; r < values.length; r++) {
+            final double landmarkFactor = Math.exp(-alpha * (landmark - landmarks[r])); // align weights on the same landmark
+            for (int i = 0; i < values[r].length; i++) {
+                final double value = values[r][i];
+                final double weight = weights[r][i] * landmarkFactor;
+                weights[r][i] = weight;
+
+                if (Double.isNaN(min) || value < min) {
+                    min = value;
+                }
+                if (Double.isNaN(max) || value > max) {
+                    max = value;
+                }
+                sum += value;
+                weightSum += weight;
+                weightSquareSum += weight * weight;
+                weightedSum += weight * value;
+            }
+        }
+
+        final double mean = weightedSum / weightSum;
+
+        double m2 = 0;
+        if (n > 1) {
+            double weightedDeviations = 0;
+            for (int r = 0; r < values.length; r++) {
+                for (int i = 0; i < values[r].length; i++) {
+                    final double dev = values[r][i] - mean;
+                    weightedDeviations += weights[r][i] * dev * dev;
+                }
+            }
+
+            // unbiased variance with reliability weights, m2 is scaled to keep variance = m2 / (n - 1)
+            final double denominator = weightSum - weightSquareSum / weightSum;
+            if (denominator > 0) {
+                m2 = weightedDeviations / denominator * (n - 1);
+            }
+        }
+
+        return new OptimizedStatistics(n, sum, min, max, mean, m2);
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardDecayCounter{" +
+                "key=" + getKey() +
+                ", stats=" + getStatistics() +
+                '}';
+    }
+
+    private static class Reservoir {
+        private static final AtomicIntegerFieldUpdater<Reservoir> BUSY = AtomicIntegerFieldUpdater.newUpdater(Reservoir.class, "busy");
+
+        private volatile int busy = 0;
+
+        // min-heap on priorities, values and weights follow the same permutations
+        private final double[] priorities;
+        private final double[] values;
+        private final double[] weights;
+        private final Random random = new Random();
+        private int size = 0;
+        private long landmark;
+
+        @SuppressWarnings("unused")
+        private long p0, p1, p2, p3, p4, p5, p6, p7;
+
+        private Reservoir(final int capacity, final long landmark) {
+            this.priorities = new double[capacity];
+            this.values = new double[capacity];
+            this.weights = new double[capacity];
+            this.landmark = landmark;
+        }
+
+        private void add(final long now, final double value, final double alpha) {
+            if (now - landmark >= RESCALE_THRESHOLD) {
+                rescale(now, alpha);
+            }
+
+            final double weight = Math.exp(alpha * (now - landmark));
+            double u = random.nextDouble();
+            if (u == 0) {
+                u = Double.MIN_VALUE;
+            }
+            final double priority = weight / u;
+
+            if (size < priorities.length) {
+                set(size, priority, value, weight);
+                siftUp(size);
+                size++;
+            } else if (priority > priorities[0]) {
+                set(0, priority, value, weight);
+                siftDown(0);
+            }
+        }
+
+        // scaling all priorities by the same factor keeps the heap valid
+        private void rescale(final long now, final double alpha) {
+            final double factor = Math.exp(-alpha * (now - landmark));
+            for (int i = 0; i < size; i++) {
+                priorities[i] *= factor;
+                weights[i] *= factor;
+            }
+            landmark = now;
+        }
+
+        private void clear(final long now) {
+            size = 0;
+            landmark = now;
+        }
+
+        private void siftUp(final int from) {
+            int i = from;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (priorities[parent] <= priorities[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(final int from) {
+            int i = from;
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                final int right = left + 1;
+                final int smallest = right < size && priorities[right] < priorities[left] ? right : left;
+                if (priorities[i] <= priorities[smallest]) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void set(final int i, final double priority, final double value, final double weight) {
+            priorities[i] = priority;
+            values[i] = value;
+            weights[i] = weight;
+        }
+
+        private void swap(final int i, final int j) {
+            final double priority = priorities[i];
+            final double value = values[i];
+            final double weight = weights[i];
+            set(i, priorities[j], values[j], weights[j]);
+            set(j, priority, value, weight);
+        }
+
+        private boolean tryLock() {
+            return busy == 0 && BUSY.compareAndSet(this, 0, 1);
+        }
+
+        private void lock() {
+            while (!tryLock()) {
+                Thread.yield();
+            }
+        }
+
+        private void unlock() {
+            busy = 0;
+        }
+    }
+}
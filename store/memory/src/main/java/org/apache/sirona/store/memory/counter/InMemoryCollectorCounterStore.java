@@ -33,7 +33,13 @@ public class InMemoryCollectorCounterStore extends InMemoryCounterDataStore impl
 
     @Override
     public void update(final Counter.Key key, final String marker, final M2AwareStatisticalSummary stats, final int concurrency) {
-        getOrCreateCounter(key, marker).update(stats, concurrency);
+        update(key, marker, stats, concurrency, Double.NaN);
+    }
+
+    @Override
+    public void update(final Counter.Key key, final String marker, final M2AwareStatisticalSummary stats,
+                       final int concurrency, final double averageConcurrency) {
+        getOrCreateCounter(key, marker).update(stats, concurrency, averageConcurrency);
         getOrCreateCounter(key).update();
     }
 
@@ -20,14 +20,19 @@ import org.apache.sirona.configuration.Configuration;
 import org.apache.sirona.configuration.ioc.Destroying;
 import org.apache.sirona.counters.Counter;
 import org.apache.sirona.counters.DefaultCounter;
+import org.apache.sirona.counters.DeltaCounter;
+import org.apache.sirona.counters.Histogram;
+import org.apache.sirona.counters.HistogramCounter;
 import org.apache.sirona.counters.LockableCounter;
 import org.apache.sirona.counters.MetricData;
 import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.WindowedCounter;
 import org.apache.sirona.counters.jmx.CounterJMX;
 import org.apache.sirona.gauges.Gauge;
 import org.apache.sirona.gauges.counter.CounterGauge;
 import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.store.counter.CounterDataStore;
+import org.apache.sirona.store.counter.CounterGenerationAware;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -36,11 +41,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class InMemoryCounterDataStore implements CounterDataStore {
+public class InMemoryCounterDataStore implements CounterDataStore, CounterGenerationAware {
     protected final boolean gauged = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.with-gauge", false);
     protected final boolean jmx = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.with-jmx", false);
 
@@ -53,7 +59,29 @@ public class InMemoryCounterDataStore implements CounterDataStore {
     protected final long exponentialDecayRefresh =
             (long) Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.exponential-decay.refresh-seconds",
                     (int) ExponentialDecayCounter.ACCEPTABLE_STATISTICS_REFRESH_SECONDS);
+    protected final boolean useLegacyExponentialDecay = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.exponential-decay.legacy", false);
+    protected final int exponentialDecayStripes =
+            Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.exponential-decay.stripes", StripedCounter.DEFAULT_CELLS);
 
+    protected final boolean useHistogram = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.histogram", false);
+    protected final long histogramHighestTrackableValue = Long.parseLong(
+            Configuration.getProperty(Configuration.CONFIG_PROPERTY_PREFIX + "counter.histogram.highest-trackable-value",
+                    Long.toString(HistogramCounter.DEFAULT_HIGHEST_TRACKABLE_VALUE)));
+    protected final int histogramSignificantDigits =
+            Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.histogram.significant-digits", HistogramCounter.DEFAULT_SIGNIFICANT_DIGITS);
+
+    protected final boolean useWindow = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.window", false);
+    protected final long windowInterval = Long.parseLong(
+            Configuration.getProperty(Configuration.CONFIG_PROPERTY_PREFIX + "counter.window.interval",
+                    Long.toString(WindowedCounter.DEFAULT_INTERVAL)));
+    protected final int windowSize =
+            Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.window.size", WindowedCounter.DEFAULT_SIZE);
+
+    protected final boolean useStriped = Configuration.is(Configuration.CONFIG_PROPERTY_PREFIX + "counter.striped", false);
+    protected final int stripedCells =
+            Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.striped.cells", StripedCounter.DEFAULT_CELLS);
+
+    protected final AtomicLong generation = new AtomicLong(0); // incremented once counters are removed
     protected final ConcurrentMap<Counter.Key, Counter> counters = newCounterMap();
     protected final ConcurrentMap<Counter.Key, Collection<Gauge>> gauges = new ConcurrentHashMap<Counter.Key, Collection<Gauge>>();
     protected final ReadWriteLock stateLock = new ReentrantReadWriteLock(); // this lock ensures consistency between createcounter and clearcounters
@@ -63,9 +91,22 @@ public class InMemoryCounterDataStore implements CounterDataStore {
     }
 
     protected Counter newCounter(final Counter.Key key) {
-        return useExponentialDecay ?
-                new ExponentialDecayCounter(key, this, exponentialDecayAlpha, exponentialDecaySamplingSize, exponentialDecayRefresh) :
-                new DefaultCounter(key, this);
+        if (useExponentialDecay) {
+            if (useLegacyExponentialDecay) {
+                return new ExponentialDecayCounter(key, this, exponentialDecayAlpha, exponentialDecaySamplingSize, exponentialDecayRefresh);
+            }
+            return new ForwardDecayCounter(key, this, exponentialDecayAlpha, exponentialDecaySamplingSize, exponentialDecayRefresh, exponentialDecayStripes);
+        }
+        if (useHistogram) {
+            return new HistogramCounter(key, this, new Histogram(histogramHighestTrackableValue, histogramSignificantDigits));
+        }
+        if (useWindow) {
+            return new WindowedCounter(key, this, windowInterval, windowSize);
+        }
+        if (useStriped) {
+            return new StripedCounter(key, this, stripedCells);
+        }
+        return new DefaultCounter(key, this);
     }
 
     @Override
@@ -143,6 +184,7 @@ public class InMemoryCounterDataStore implements CounterDataStore {
                 }
             }
             counters.clear();
+            generation.incrementAndGet();
 
             synchronized (gauges) {
                 for (final Collection<Gauge> list : gauges.values()) {
@@ -158,11 +200,32 @@ public class InMemoryCounterDataStore implements CounterDataStore {
         }
     }
 
+    @Override
+    public long getGeneration() {
+        return generation.get();
+    }
+
     @Override
     public Collection<Counter> getCounters() {
         return counters.values();
     }
 
+    @Override
+    public Collection<Counter> snapshotDeltas() {
+        final Collection<Counter> deltas = new ArrayList<Counter>(counters.size());
+        for (final Counter counter : counters.values()) {
+            if (!LockableCounter.class.isInstance(counter)) { // collector counters are not sampled by interval
+                continue;
+            }
+
+            final DeltaCounter delta = LockableCounter.class.cast(counter).snapshotDelta();
+            if (delta.getHits() > 0) {
+                deltas.add(delta);
+            }
+        }
+        return deltas;
+    }
+
     @Override
     public void addToCounter(final Counter counter, final double delta) {
         if (!LockableCounter.class.isInstance(counter)) {
@@ -18,21 +18,24 @@ package org.apache.sirona.store.memory.counter;
 
 import org.apache.sirona.Role;
 import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.counters.ConcurrencyStatistics;
 import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.DeltaCounter;
+import org.apache.sirona.counters.EvictionAware;
 import org.apache.sirona.counters.LockableCounter;
 import org.apache.sirona.counters.OptimizedStatistics;
 import org.apache.sirona.counters.Unit;
+import org.apache.sirona.counters.WindowAware;
 import org.apache.sirona.gauges.Gauge;
 import org.apache.sirona.repositories.Repository;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -43,8 +46,6 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
 {
     private static final int MAX_SIZE = Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.max-size", 1000);
     private static final boolean ONLY_EVICT_WEB_COUNTERS = Boolean.parseBoolean(Configuration.getProperty(Configuration.CONFIG_PROPERTY_PREFIX + "counter.evict-web-only", "true"));
-    private static final double EVITION_RATIO = Double.parseDouble(Configuration.getProperty(Configuration.CONFIG_PROPERTY_PREFIX
-            + "counter.evition.ratio", "0.25"));
 
     @Override
     protected ConcurrentMap<Counter.Key, Counter> newCounterMap() {
@@ -62,7 +63,14 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
         return new DefaultCounterTimestamped(LockableCounter.class.cast(super.newCounter(key)));
     }
 
+    // CLOCK (second chance) eviction: evictable counters are queued when created, used counters get their
+    // reference bit set and when the store is full the queue head is evicted if not referenced since the last
+    // pass or requeued with a cleared bit otherwise. Each creation evicts at most one counter in amortized
+    // constant time and nothing blocks other creations.
     protected class FixedSizedMap extends ConcurrentSkipListMap<Counter.Key, Counter> {
+        private final Queue<DefaultCounterTimestamped> clock = new ConcurrentLinkedQueue<DefaultCounterTimestamped>();
+        private final AtomicInteger size = new AtomicInteger(0); // skip list size() is O(n)
+
         protected FixedSizedMap() {
             super(new Comparator<Counter.Key>() {
                 @Override
@@ -78,93 +86,94 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
 
         @Override // shouldn't be called
         public Counter put(final Counter.Key key, final Counter value) {
-            if (size() >= MAX_SIZE) {
+            if (size.get() >= MAX_SIZE) {
                 evict();
             }
-            return super.put(key, value);
+            final Counter old = super.put(key, value);
+            if (old == null) {
+                added(value);
+            }
+            return old;
         }
 
         @Override
         public Counter putIfAbsent(final Counter.Key key, final Counter value) {
-            if (size() >= MAX_SIZE) {
+            if (size.get() >= MAX_SIZE) { // before the insertion to not evict the new counter
                 evict();
             }
-            return super.putIfAbsent(key, value);
+            final Counter old = super.putIfAbsent(key, value);
+            if (old == null) {
+                added(value);
+            }
+            return old;
         }
 
-        private synchronized void evict() {
-            if (size() < MAX_SIZE) {
-                return;
-            }
+        @Override
+        public void clear() {
+            super.clear();
+            clock.clear();
+            size.set(0);
+        }
 
-            final int size = size();
-            int toEvict = (int) (size * EVITION_RATIO);
-            final List<Entry<Counter.Key, Counter>> entries = new ArrayList<Entry<Counter.Key, Counter>>(size);
-            for (final Entry<Counter.Key, Counter> entry : entrySet()) {
-                entries.add(entry);
-                if (entries.size() >= size) { // size can increase while eviting so ensure we don't force the arraylist to be resized
-                    break;
-                }
+        private void added(final Counter value) {
+            if (DefaultCounterTimestamped.class.isInstance(value)) {
+                clock.offer(DefaultCounterTimestamped.class.cast(value));
             }
+            size.incrementAndGet();
+        }
 
-            Collections.sort(entries, new Comparator<Entry<Counter.Key, Counter>>() {
-                @Override
-                public int compare(final Entry<Counter.Key, Counter> o1, final Entry<Counter.Key, Counter> o2) {
-                    final boolean o1HasTimestamp = DefaultCounterTimestamped.class.isInstance(o1);
-                    final boolean o2hasTimestamp = DefaultCounterTimestamped.class.isInstance(o2);
-                    if (!o1HasTimestamp && !o2hasTimestamp) { // we don't care
-                        return o1.getKey().getName().compareTo(o2.getKey().getName());
-                    }
-                    if (o1HasTimestamp && !o2hasTimestamp) {
-                        return -1;
-                    }
-                    if (!o1HasTimestamp) {
-                        return 1;
-                    }
-                    final long hitDiff = DefaultCounterTimestamped.class.cast(o1.getValue()).timestamp - DefaultCounterTimestamped.class.cast(o2.getValue()).timestamp;
-                    return (int) hitDiff;
+        private void evict() {
+            // a full turn clears all reference bits so two turns always find a victim if there is one
+            for (int i = 0; i <= 2 * MAX_SIZE; i++) {
+                final DefaultCounterTimestamped candidate = clock.poll();
+                if (candidate == null) { // nothing evictable
+                    return;
                 }
-            });
 
-            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
-            for (final Entry<Counter.Key, Counter> entry : entries) {
-                final Counter.Key key = entry.getKey();
-                if (!DefaultCounterTimestamped.class.isInstance(entry.getValue())) {
+                if (candidate.referenced) {
+                    candidate.referenced = false;
+                    clock.offer(candidate);
                     continue;
                 }
 
-                final boolean removed = remove(key) != null;
-                if (removed) {
-					if (gauged) {
-                        final Collection<Gauge> g = gauges.remove(key);
-						if (g != null) {
-							for (final Gauge gauge : g) {
-								Repository.INSTANCE.stopGauge(gauge);
-							}
-						}
-					}
-                    if (jmx) {
-                        try {
-                            final ObjectName objectName = LockableCounter.class.cast(entry.getValue()).getJmx();
-                            if (server.isRegistered(objectName)) {
-                                server.unregisterMBean(objectName);
-                            }
-                        } catch (final Exception e) {
-                            // no-op
-                        }
-                    }
+                final Counter.Key key = candidate.getKey();
+                if (remove(key, candidate)) {
+                    size.decrementAndGet();
+                    release(key, candidate);
+                    candidate.evicted = true; // after removal, see EvictionAware
+                    return;
+                }
+                // else already removed (cleared)
+            }
+        }
 
-                    if (toEvict-- <= 0) {
-                        break;
+        private void release(final Counter.Key key, final DefaultCounterTimestamped counter) {
+            if (gauged) {
+                final Collection<Gauge> g = gauges.remove(key);
+                if (g != null) {
+                    for (final Gauge gauge : g) {
+                        Repository.INSTANCE.stopGauge(gauge);
+                    }
+                }
+            }
+            if (jmx) {
+                try {
+                    final ObjectName objectName = counter.getJmx();
+                    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                    if (objectName != null && server.isRegistered(objectName)) {
+                        server.unregisterMBean(objectName);
                     }
+                } catch (final Exception e) {
+                    // no-op
                 }
             }
         }
     }
 
-    private static class DefaultCounterTimestamped extends LockableCounter {
+    private static class DefaultCounterTimestamped extends LockableCounter implements WindowAware, EvictionAware {
         private final LockableCounter delegate;
-        private volatile long timestamp = System.currentTimeMillis();
+        private volatile boolean referenced = false; // CLOCK reference bit
+        private volatile boolean evicted = false;
 
         public DefaultCounterTimestamped(final LockableCounter delegate) {
             super(null, null);
@@ -201,15 +210,21 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
             this.delegate.reset();
         }
 
+        @Override
+        public DeltaCounter snapshotDelta() {
+            return this.delegate.snapshotDelta();
+        }
+
         @Override
         public void add(final double delta) {
             delegate.add(delta);
-            timestamp = System.currentTimeMillis();
+            touch();
         }
 
         @Override
         public void add(final double delta, final Unit unit) {
             this.delegate.add(delta, unit);
+            touch();
         }
 
         @Override
@@ -220,6 +235,7 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
         @Override
         public void updateConcurrency(final int concurrency) {
             delegate.updateConcurrency(concurrency);
+            touch();
         }
 
         @Override
@@ -227,6 +243,11 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
             return delegate.getMaxConcurrency();
         }
 
+        @Override
+        public ConcurrencyStatistics getConcurrencyStatistics() {
+            return delegate.getConcurrencyStatistics();
+        }
+
         @Override
         public double getMax() {
             return delegate.getMax();
@@ -267,9 +288,33 @@ public class LimitedInMemoryCounterDataStore extends InMemoryCounterDataStore
             return delegate.getSecondMoment();
         }
 
+        @Override
+        public double getPercentile(final double percentile) {
+            return delegate.getPercentile(percentile);
+        }
+
+        @Override
+        public OptimizedStatistics getWindowStatistics(final long duration) {
+            if (WindowAware.class.isInstance(delegate)) {
+                return WindowAware.class.cast(delegate).getWindowStatistics(duration);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isEvicted() {
+            return evicted;
+        }
+
         @Override
         public Key getKey() {
             return delegate.getKey();
         }
+
+        private void touch() {
+            if (!referenced) { // avoid to write the shared cache line on each hit
+                referenced = true;
+            }
+        }
     }
 }
@@ -0,0 +1,610 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.configuration.ioc.Destroying;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.DeltaCounter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.Unit;
+import org.apache.sirona.store.memory.tracking.UnsafeUtils;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Counter store keeping statistics off heap for very high counter cardinality.
+ * <p/>
+ * Each counter owns a 64 bytes slot (n, sum, min, max, m1, m2, max concurrency and a spin lock)
+ * in chunks of native memory. Counters are found through an open addressing table and are
+ * lightweight flyweights (key, slot and concurrency) so there is no statistics, lock or JMX
+ * object on the heap. JMX, gauges, percentiles and average concurrency are not supported by this store.
+ * <p/>
+ * Activated with org.apache.sirona.store.counter.CounterDataStore = org.apache.sirona.store.memory.counter.OffHeapCounterDataStore.
+ */
+@IgnoreJRERequirement
+public class OffHeapCounterDataStore extends InMemoryCounterDataStore {
+    private static final Logger LOGGER = Logger.getLogger(OffHeapCounterDataStore.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    // slot layout
+    private static final int N = 0;
+    private static final int SUM = 8;
+    private static final int MIN = 16;
+    private static final int MAX = 24;
+    private static final int M1 = 32;
+    private static final int M2 = 40;
+    private static final int MAX_CONCURRENCY = 48;
+    private static final int LOCK = 52;
+    private static final int SLOT_SIZE = 64; // a cache line
+
+    private static final int PADDING = 16; // ints, keeps two stripes of users on different cache lines
+
+    private final int chunkShift;
+    private final int chunkMask;
+
+    // threads currently accessing native memory, striped to not add a shared write on the hot path
+    private final AtomicIntegerArray users;
+    private final int stripeMask;
+
+    private final Object tableLock = new Object();
+    private volatile AtomicReferenceArray<OffHeapCounter> table = new AtomicReferenceArray<OffHeapCounter>(64);
+    private volatile long[] chunks = new long[0];
+    private volatile int generation = 0;
+    private volatile boolean destroyed = false;
+    private int size = 0; // guarded by tableLock, also next free slot
+
+    public OffHeapCounterDataStore() {
+        this(Configuration.getInteger(Configuration.CONFIG_PROPERTY_PREFIX + "counter.off-heap.chunk-size", DEFAULT_CHUNK_SIZE));
+    }
+
+    public OffHeapCounterDataStore(final int chunkSize) {
+        int shift = 0;
+        while ((1 << shift) < chunkSize) {
+            shift++;
+        }
+        chunkShift = shift;
+        chunkMask = (1 << shift) - 1;
+
+        int stripes = 1;
+        while (stripes < StripedCounter.DEFAULT_CELLS) {
+            stripes <<= 1;
+        }
+        stripeMask = stripes - 1;
+        users = new AtomicIntegerArray(stripes * PADDING);
+
+        if (jmx || gauged) {
+            LOGGER.warning(getClass().getSimpleName() + " doesn't support counter JMX nor gauges, ignoring them");
+        }
+    }
+
+    @Override
+    public Counter getOrCreateCounter(final Counter.Key key) {
+        final OffHeapCounter existing = find(table, key);
+        if (existing != null) {
+            return existing;
+        }
+
+        synchronized (tableLock) {
+            AtomicReferenceArray<OffHeapCounter> current = table;
+            final OffHeapCounter concurrentlyCreated = find(current, key);
+            if (concurrentlyCreated != null) {
+                return concurrentlyCreated;
+            }
+
+            if ((size + 1) * 2 > current.length()) { // keep load factor under 0.5
+                current = resize(current);
+                table = current;
+            }
+
+            final int slot = size++;
+            initSlot(slot);
+
+            final OffHeapCounter counter = new OffHeapCounter(this, key, slot, generation);
+            final int mask = current.length() - 1;
+            int i = index(key, mask);
+            while (current.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            current.set(i, counter); // volatile write, publishes the counter for lock free readers
+            return counter;
+        }
+    }
+
+    @Override
+    public void clearCounters() {
+        synchronized (tableLock) {
+            // slots are reused, flyweights still referenced elsewhere will notice the new generation
+            generation++;
+            size = 0;
+            table = new AtomicReferenceArray<OffHeapCounter>(64);
+        }
+    }
+
+    @Override
+    @Destroying
+    public void cleanUp() {
+        synchronized (tableLock) {
+            if (destroyed) {
+                return;
+            }
+
+            clearCounters();
+            destroyed = true;
+            for (int i = 0; i < users.length(); i += PADDING) { // wait for threads still reading or writing a slot
+                while (users.get(i) != 0) {
+                    Thread.yield();
+                }
+            }
+            for (final long chunk : chunks) {
+                UnsafeUtils.getUnsafe().freeMemory(chunk);
+            }
+            chunks = new long[0];
+        }
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public Collection<Counter> getCounters() {
+        final AtomicReferenceArray<OffHeapCounter> current = table;
+        final Collection<Counter> counters = new ArrayList<Counter>(current.length() / 2);
+        for (int i = 0; i < current.length(); i++) {
+            final OffHeapCounter counter = current.get(i);
+            if (counter != null) {
+                counters.add(counter);
+            }
+        }
+        return counters;
+    }
+
+    @Override
+    public Collection<Counter> snapshotDeltas() {
+        final AtomicReferenceArray<OffHeapCounter> current = table;
+        final Collection<Counter> deltas = new ArrayList<Counter>();
+        for (int i = 0; i < current.length(); i++) {
+            final OffHeapCounter counter = current.get(i);
+            if (counter == null) {
+                continue;
+            }
+
+            final int slot = counter.slot(); // can lock the table so before enter()
+            final int stripe = enter();
+            if (stripe < 0) {
+                break;
+            }
+
+            final OptimizedStatistics statistics;
+            final int maxConcurrency;
+            try {
+                final long address = address(slot);
+                lock(address);
+                try {
+                    statistics = readStatistics(address);
+                    maxConcurrency = getIntVolatile(address + MAX_CONCURRENCY);
+                    clearStatistics(address);
+                    putIntVolatile(address + MAX_CONCURRENCY, 0);
+                } finally {
+                    unlock(address);
+                }
+            } finally {
+                exit(stripe);
+            }
+
+            if (statistics.getN() > 0) {
+                deltas.add(new DeltaCounter(counter.getKey(), statistics, null, counter.currentConcurrency().get(), maxConcurrency, Double.NaN));
+            }
+        }
+        return deltas;
+    }
+
+    @Override
+    public void addToCounter(final Counter counter, final double delta) {
+        if (!OffHeapCounter.class.isInstance(counter)) {
+            throw new IllegalArgumentException(getClass().getName() + " only supports " + OffHeapCounter.class.getName());
+        }
+
+        final int slot = OffHeapCounter.class.cast(counter).slot();
+        final int stripe = enter();
+        if (stripe < 0) {
+            return;
+        }
+
+        try {
+            final long address = address(slot);
+            lock(address);
+            try { // same algorithm as OptimizedStatistics.addValue
+                long n = getLong(address + N);
+                double m1 = getDouble(address + M1);
+                double m2 = getDouble(address + M2);
+                if (n == 0) {
+                    m1 = 0.;
+                    m2 = 0.;
+                }
+
+                n++;
+                putLong(address + N, n);
+                putDouble(address + SUM, getDouble(address + SUM) + delta);
+
+                final double min = getDouble(address + MIN);
+                if (delta < min || Double.isNaN(min)) {
+                    putDouble(address + MIN, delta);
+                }
+                final double max = getDouble(address + MAX);
+                if (delta > max || Double.isNaN(max)) {
+                    putDouble(address + MAX, delta);
+                }
+
+                final double dev = delta - m1;
+                final double nDev = dev / n;
+                m1 += nDev;
+                m2 += dev * nDev * (n - 1);
+                putDouble(address + M1, m1);
+                putDouble(address + M2, m2);
+            } finally {
+                unlock(address);
+            }
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    private OptimizedStatistics statistics(final int slot) {
+        final int stripe = enter();
+        if (stripe < 0) {
+            return new OptimizedStatistics();
+        }
+
+        try {
+            final long address = address(slot);
+            lock(address);
+            try {
+                return readStatistics(address);
+            } finally {
+                unlock(address);
+            }
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    private void reset(final int slot) {
+        final int stripe = enter();
+        if (stripe < 0) {
+            return;
+        }
+
+        try {
+            resetSlot(address(slot));
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    private void updateMaxConcurrency(final int slot, final int concurrency) {
+        final int stripe = enter();
+        if (stripe < 0) {
+            return;
+        }
+
+        try {
+            final long address = address(slot) + MAX_CONCURRENCY;
+            int current = getIntVolatile(address);
+            while (concurrency > current && !UnsafeUtils.getUnsafe().compareAndSwapInt(null, address, current, concurrency)) {
+                current = getIntVolatile(address);
+            }
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    private int maxConcurrency(final int slot) {
+        final int stripe = enter();
+        if (stripe < 0) {
+            return 0;
+        }
+
+        try {
+            return getIntVolatile(address(slot) + MAX_CONCURRENCY);
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    // registers the thread as using native memory so cleanUp() doesn't free it, returns -1 if already destroyed
+    private int enter() {
+        final int stripe = (StripeProbe.current()[0] & stripeMask) * PADDING;
+        users.incrementAndGet(stripe);
+        if (destroyed) {
+            users.decrementAndGet(stripe);
+            return -1;
+        }
+        return stripe;
+    }
+
+    private void exit(final int stripe) {
+        users.decrementAndGet(stripe);
+    }
+
+    // slot of a counter for the current generation, recreated if the counter was cleared
+    private int resolve(final OffHeapCounter counter) {
+        return OffHeapCounter.class.cast(getOrCreateCounter(counter.getKey())).slot;
+    }
+
+    private void initSlot(final int slot) { // guarded by tableLock so cleanUp() can't run concurrently
+        final int chunk = slot >>> chunkShift;
+        if (chunk >= chunks.length) {
+            final long[] newChunks = new long[chunk + 1];
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            final long chunkBytes = ((long) SLOT_SIZE) << chunkShift;
+            newChunks[chunk] = UnsafeUtils.getUnsafe().allocateMemory(chunkBytes);
+            UnsafeUtils.getUnsafe().setMemory(newChunks[chunk], chunkBytes, (byte) 0); // all slots unlocked
+            chunks = newChunks;
+        }
+
+        // a reused slot can still be used by a flyweight of the previous generation so keep its lock
+        resetSlot(address(slot));
+    }
+
+    private long address(final int slot) {
+        return chunks[slot >>> chunkShift] + ((long) (slot & chunkMask)) * SLOT_SIZE;
+    }
+
+    private static void resetSlot(final long address) {
+        lock(address);
+        try {
+            clearStatistics(address);
+            putIntVolatile(address + MAX_CONCURRENCY, 0);
+        } finally {
+            unlock(address);
+        }
+    }
+
+    private static OptimizedStatistics readStatistics(final long address) {
+        return new OptimizedStatistics(
+            getLong(address + N), getDouble(address + SUM),
+            getDouble(address + MIN), getDouble(address + MAX),
+            getDouble(address + M1), getDouble(address + M2));
+    }
+
+    private static void clearStatistics(final long address) {
+        putLong(address + N, 0);
+        putDouble(address + SUM, 0);
+        putDouble(address + MIN, Double.NaN);
+        putDouble(address + MAX, Double.NaN);
+        putDouble(address + M1, Double.NaN);
+        putDouble(address + M2, Double.NaN);
+    }
+
+    private static void lock(final long address) {
+        while (!UnsafeUtils.getUnsafe().compareAndSwapInt(null, address + LOCK, 0, 1)) {
+            Thread.yield();
+        }
+    }
+
+    private static void unlock(final long address) {
+        putIntVolatile(address + LOCK, 0);
+    }
+
+    private static long getLong(final long address) {
+        return UnsafeUtils.getUnsafe().getLong(address);
+    }
+
+    private static void putLong(final long address, final long value) {
+        UnsafeUtils.getUnsafe().putLong(address, value);
+    }
+
+    private static double getDouble(final long address) {
+        return UnsafeUtils.getUnsafe().getDouble(address);
+    }
+
+    private static void putDouble(final long address, final double value) {
+        UnsafeUtils.getUnsafe().putDouble(address, value);
+    }
+
+    private static int getIntVolatile(final long address) {
+        return UnsafeUtils.getUnsafe().getIntVolatile(null, address);
+    }
+
+    private static void putIntVolatile(final long address, final int value) {
+        UnsafeUtils.getUnsafe().putIntVolatile(null, address, value);
+    }
+
+    private static OffHeapCounter find(final AtomicReferenceArray<OffHeapCounter> table, final Counter.Key key) {
+        final int mask = table.length() - 1;
+        int i = index(key, mask);
+        OffHeapCounter counter;
+        while ((counter = table.get(i)) != null) {
+            if (counter.getKey().equals(key)) {
+                return counter;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private static AtomicReferenceArray<OffHeapCounter> resize(final AtomicReferenceArray<OffHeapCounter> table) {
+        final AtomicReferenceArray<OffHeapCounter> newTable = new AtomicReferenceArray<OffHeapCounter>(table.length() * 2);
+        final int mask = newTable.length() - 1;
+        for (int j = 0; j < table.length(); j++) {
+            final OffHeapCounter counter = table.get(j);
+            if (counter == null) {
+                continue;
+            }
+
+            int i = index(counter.getKey(), mask);
+            while (newTable.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            newTable.set(i, counter);
+        }
+        return newTable;
+    }
+
+    private static int index(final Counter.Key key, final int mask) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public static class OffHeapCounter implements Counter {
+        private final OffHeapCounterDataStore store;
+        private final Key key;
+        private final AtomicInteger concurrency = new AtomicInteger(0);
+        private int slot;
+        private volatile int generation;
+
+        private OffHeapCounter(final OffHeapCounterDataStore store, final Key key, final int slot, final int generation) {
+            this.store = store;
+            this.key = key;
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        private int slot() {
+            if (generation != store.generation) {
+                final int storeGeneration = store.generation;
+                slot = store.resolve(this);
+                generation = storeGeneration;
+            }
+            return slot;
+        }
+
+        @Override
+        public Key getKey() {
+            return key;
+        }
+
+        @Override
+        public void reset() {
+            store.reset(slot());
+        }
+
+        @Override
+        public void add(final double delta) {
+            store.addToCounter(this, delta);
+        }
+
+        @Override
+        public void add(final double delta, final Unit unit) {
+            add(key.getRole().getUnit().convert(delta, unit));
+        }
+
+        @Override
+        public AtomicInteger currentConcurrency() {
+            return concurrency;
+        }
+
+        @Override
+        public void updateConcurrency(final int concurrency) {
+            store.updateMaxConcurrency(slot(), concurrency);
+        }
+
+        @Override
+        public int getMaxConcurrency() {
+            return store.maxConcurrency(slot());
+        }
+
+        @Override
+        public double getAverageConcurrency() {
+            return Double.NaN;
+        }
+
+        public OptimizedStatistics getStatistics() {
+            return store.statistics(slot());
+        }
+
+        @Override
+        public double getMax() {
+            return getStatistics().getMax();
+        }
+
+        @Override
+        public double getMin() {
+            return getStatistics().getMin();
+        }
+
+        @Override
+        public long getHits() {
+            return getStatistics().getN();
+        }
+
+        @Override
+        public double getSum() {
+            return getStatistics().getSum();
+        }
+
+        @Override
+        public double getStandardDeviation() {
+            return getStatistics().getStandardDeviation();
+        }
+
+        @Override
+        public double getVariance() {
+            return getStatistics().getVariance();
+        }
+
+        @Override
+        public double getMean() {
+            return getStatistics().getMean();
+        }
+
+        @Override
+        public double getSecondMoment() {
+            return getStatistics().getSecondMoment();
+        }
+
+        @Override
+        public double getPercentile(final double percentile) {
+            return Double.NaN;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!Counter.class.isInstance(o)) {
+                return false;
+            }
+            return key.equals(Counter.class.cast(o).getKey());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "OffHeapCounter{" +
+                "key=" + key +
+                ", slot=" + slot +
+                ", statistics=" + getStatistics() +
+                '}';
+        }
+    }
+}
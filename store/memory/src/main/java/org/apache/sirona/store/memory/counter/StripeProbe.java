@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import java.util.Random;
+
+// per thread hash used to pick a stripe, rehashed by the caller when the stripe is contended (Striped64 style)
+final class StripeProbe {
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        private final Random seeds = new Random();
+
+        @Override
+        protected int[] initialValue() {
+            final int seed;
+            synchronized (seeds) {
+                seed = seeds.nextInt();
+            }
+            return new int[] { seed == 0 ? 1 : seed };
+        }
+    };
+
+    static int[] current() {
+        return PROBE.get();
+    }
+
+    static int rehash(final int probe) { // xorshift
+        int h = probe;
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+
+    private StripeProbe() {
+        // no-op
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.counters.DeltaCounter;
+import org.apache.sirona.counters.LockableCounter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.store.counter.CounterDataStore;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// counter spreading writes over several cells (Striped64 style), each cell being an OptimizedStatistics
+// guarded by its own tiny spin flag. A thread sticks to a cell until it sees contention then moves to another one.
+// Reads merge all cells so moments are the same as a DefaultCounter fed with the same values.
+public class StripedCounter extends LockableCounter {
+    public static final int DEFAULT_CELLS = Runtime.getRuntime().availableProcessors();
+
+    private final Cell[] cells;
+    private final int mask;
+
+    public StripedCounter(final Key key, final CounterDataStore store) {
+        this(key, store, DEFAULT_CELLS);
+    }
+
+    public StripedCounter(final Key key, final CounterDataStore store, final int cellNumber) {
+        super(key, store);
+
+        int size = 1;
+        while (size < cellNumber) {
+            size <<= 1;
+        }
+
+        cells = new Cell[size];
+        for (int i = 0; i < size; i++) {
+            cells[i] = new Cell();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public void addInternal(final double delta) {
+        final int[] probe = StripeProbe.current();
+        int h = probe[0];
+        Cell cell = cells[h & mask];
+        int attempts = 0;
+        while (!cell.tryLock()) { // contended, retry on another cell
+            if (++attempts % cells.length == 0) { // likely all busy, let owners progress (matters when threads > cores)
+                Thread.yield();
+            }
+            h = StripeProbe.rehash(h);
+            cell = cells[h & mask];
+        }
+        try {
+            cell.addValue(delta);
+        } finally {
+            cell.unlock();
+        }
+        probe[0] = h;
+    }
+
+    @Override
+    public void reset() {
+        for (final Cell cell : cells) {
+            cell.lock();
+            try {
+                cell.clear();
+            } finally {
+                cell.unlock();
+            }
+        }
+        super.reset();
+    }
+
+    @Override
+    public DeltaCounter snapshotDelta() { // cells are not guarded by the counter lock so swap them one by one
+        final OptimizedStatistics statistics = new OptimizedStatistics();
+        for (final Cell cell : cells) {
+            final OptimizedStatistics copy;
+            cell.lock();
+            try {
+                copy = cell.copy();
+                cell.clear();
+            } finally {
+                cell.unlock();
+            }
+            statistics.merge(copy);
+        }
+        final DeltaCounter delta = new DeltaCounter(getKey(), statistics, null, currentConcurrency().get(), getMaxConcurrency(), getAverageConcurrency());
+        resetConcurrency();
+        return delta;
+    }
+
+    @Override
+    public OptimizedStatistics getStatistics() {
+        final OptimizedStatistics statistics = new OptimizedStatistics();
+        for (final Cell cell : cells) {
+            final OptimizedStatistics copy;
+            cell.lock();
+            try {
+                copy = cell.copy();
+            } finally {
+                cell.unlock();
+            }
+            statistics.merge(copy);
+        }
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedCounter{" +
+            "concurrency=" + currentConcurrency().get() +
+            ", key=" + getKey() +
+            ", maxConcurrency=" + getMaxConcurrency() +
+            ", statistics=" + getStatistics() +
+            '}';
+    }
+
+    private static class Cell extends OptimizedStatistics {
+        private static final AtomicIntegerFieldUpdater<Cell> BUSY = AtomicIntegerFieldUpdater.newUpdater(Cell.class, "busy");
+
+        private volatile int busy = 0;
+
+        // padding to keep two cells on different cache lines
+        @SuppressWarnings("unused")
+        private long p0, p1, p2, p3, p4, p5, p6, p7;
+
+        private boolean tryLock() {
+            return busy == 0 && BUSY.compareAndSet(this, 0, 1);
+        }
+
+        private void lock() {
+            while (!tryLock()) {
+                Thread.yield();
+            }
+        }
+
+        private void unlock() {
+            busy = 0;
+        }
+    }
+}
@@ -16,45 +16,108 @@
  */
 package org.apache.sirona.store.memory.tracking;
 
+import org.apache.sirona.Role;
+import org.apache.sirona.configuration.Configuration;
+import org.apache.sirona.configuration.ioc.Destroying;
+import org.apache.sirona.counters.Unit;
+import org.apache.sirona.gauges.Gauge;
 import org.apache.sirona.pathtracking.PathCallInformation;
 import org.apache.sirona.pathtracking.PathTrackingEntry;
+import org.apache.sirona.pathtracking.PathTrackingEntryCodec;
 import org.apache.sirona.pathtracking.PathTrackingEntryComparator;
+import org.apache.sirona.repositories.Repository;
 import org.apache.sirona.store.tracking.AbstractPathTrackingDataStore;
 import org.apache.sirona.store.tracking.CollectorPathTrackingDataStore;
 import org.apache.sirona.store.tracking.PathTrackingDataStore;
 import org.apache.sirona.util.SerializeUtils;
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 /**
  * Very simple in memory storage for Path tracking feature
  * <b>MUST NOT be used in production</b>
+ * <p/>
+ * Entries are kept off heap in slabs of <code>org.apache.sirona.pathtracking.memory.slab-size</code> bytes
+ * (1MB by default) and never use more than <code>org.apache.sirona.pathtracking.memory.max-bytes</code>
+ * (64MB by default): when the budget is exhausted the oldest paths are evicted.
  */
 public class InMemoryPathTrackingDataStore
     extends AbstractPathTrackingDataStore
     implements PathTrackingDataStore, CollectorPathTrackingDataStore
 {
+    private static final Logger LOGGER = Logger.getLogger( InMemoryPathTrackingDataStore.class.getName() );
 
+    private static final long MAX_BYTES =
+        Long.parseLong( Configuration.getProperty( Configuration.CONFIG_PROPERTY_PREFIX + "pathtracking.memory.max-bytes", //
+                                                   Long.toString( 64 * 1024 * 1024 ) ) );
+
+    private static final int SLAB_SIZE =
+        Configuration.getInteger( Configuration.CONFIG_PROPERTY_PREFIX + "pathtracking.memory.slab-size", 1024 * 1024 );
+
+    private static final boolean GAUGES =
+        Configuration.is( Configuration.CONFIG_PROPERTY_PREFIX + "pathtracking.memory.gauges", true );
 
     /**
      * store path track tracking entries list per path tracking id
      * the value is the memory address
      */
-    private ConcurrentMap<String, List<Pointer>> pathTrackingEntries =
-        new ConcurrentHashMap<String, List<Pointer>>( 50 );
+    private ConcurrentMap<String, Trace> pathTrackingEntries = new ConcurrentHashMap<String, Trace>( 50 );
+
+    /**
+     * paths in creation order, the head is the first one evicted
+     */
+    private final ConcurrentLinkedQueue<Trace> traces = new ConcurrentLinkedQueue<Trace>();
+
+    /**
+     * paths by root start time for range queries
+     */
+    private final ConcurrentSkipListMap<IndexKey, Trace> index = new ConcurrentSkipListMap<IndexKey, Trace>();
+
+    /**
+     * entries are written with the binary codec (names are interned in its dictionary)
+     * unless java serialization is forced
+     */
+    private final PathTrackingEntryCodec codec = new PathTrackingEntryCodec();
+
+    private final long maxBytes;
+
+    private final PathTrackingArena arena;
+
+    private final AtomicBoolean gaugesRegistered = new AtomicBoolean( !GAUGES );
+
+    private final Collection<Gauge> gauges = new ArrayList<Gauge>( 2 );
+
+    private volatile boolean evicting = false;
+
+    public InMemoryPathTrackingDataStore()
+    {
+        this( MAX_BYTES, SLAB_SIZE );
+    }
+
+    public InMemoryPathTrackingDataStore( long maxBytes, int slabSize )
+    {
+        this.maxBytes = maxBytes;
+        this.arena = new PathTrackingArena( maxBytes, slabSize );
+    }
 
     @Override
     public void store( PathTrackingEntry pathTrackingEntry )
@@ -70,6 +133,12 @@ public class InMemoryPathTrackingDataStore
             return;
         }
 
+        // lazily as the repository can be the one creating this store
+        if ( !gaugesRegistered.get() && gaugesRegistered.compareAndSet( false, true ) )
+        {
+            registerGauges();
+        }
+
         // possible different trackingId so get that
         Map<String, Set<PathTrackingEntry>> entries = new HashMap<String, Set<PathTrackingEntry>>();
 
@@ -86,14 +155,34 @@ public class InMemoryPathTrackingDataStore
 
         for ( Map.Entry<String, Set<PathTrackingEntry>> entry : entries.entrySet() )
         {
-            List<Pointer> entriesList = this.pathTrackingEntries.get( entry.getKey() );
+            List<Pointer> pointers = serialize( entry.getValue() );
+            if ( pointers.isEmpty() )
+            {
+                continue;
+            }
 
-            if ( entriesList == null )
+            while ( true )
             {
-                entriesList = new CopyOnWriteArrayList<Pointer>();
+                Trace trace = this.pathTrackingEntries.get( entry.getKey() );
+                if ( trace == null )
+                {
+                    // several threads can store parts of the same path (propagated tasks) so don't override
+                    final Trace newTrace = new Trace( entry.getKey() );
+                    trace = this.pathTrackingEntries.putIfAbsent( entry.getKey(), newTrace );
+                    if ( trace == null )
+                    {
+                        trace = newTrace;
+                        traces.add( newTrace );
+                    }
+                }
+
+                if ( trace.append( pointers, root( entry.getValue() ) ) )
+                {
+                    break;
+                }
+                // evicted or cleared concurrently
+                this.pathTrackingEntries.remove( entry.getKey(), trace );
             }
-            entriesList.addAll( serialize( entry.getValue() ) );
-            this.pathTrackingEntries.put( entry.getKey(), entriesList );
         }
 
     }
@@ -103,42 +192,57 @@ public class InMemoryPathTrackingDataStore
     {
         List<Pointer> buffers = this.pathTrackingEntries.get( trackingId );
 
-        return deserialize( buffers );
+        if ( buffers == null )
+        {
+            return Collections.emptyList();
+        }
+        return deserialize( trackingId, buffers );
     }
 
+    /**
+     * @return paths whose root started between startTime (inclusive) and endTime (exclusive) ordered by start time.
+     */
     @Override
     public Collection<PathCallInformation> retrieveTrackingIds( Date startTime, Date endTime )
     {
-        Set<PathCallInformation> trackingIds = new TreeSet<PathCallInformation>( PathCallInformation.COMPARATOR );
-        for ( List<Pointer> buffers : this.pathTrackingEntries.values() )
+        Collection<Trace> found = this.index.subMap( //
+            new IndexKey( TimeUnit.MILLISECONDS.toNanos( startTime.getTime() ), "" ), //
+            new IndexKey( TimeUnit.MILLISECONDS.toNanos( endTime.getTime() ), "" ) ).values();
+
+        List<PathCallInformation> trackingIds = new ArrayList<PathCallInformation>();
+        for ( Trace trace : found )
         {
-            if ( pathTrackingEntries.isEmpty() )
+            PathCallInformation information = trace.information();
+            if ( information != null )
             {
-                continue;
+                trackingIds.add( information );
             }
+        }
+        return trackingIds;
+    }
 
-            PathTrackingEntry first =
-                SerializeUtils.deserialize( readBytes( buffers.iterator().next() ), PathTrackingEntry.class );
-
-            if ( first.getStartTime() / 1000000 > startTime.getTime() //
-                && first.getStartTime() / 1000000 < endTime.getTime() )
+    // entry with the lowest level (earliest if several), the root of the path if it is part of the batch
+    private static PathTrackingEntry root( Collection<PathTrackingEntry> entries )
+    {
+        PathTrackingEntry root = null;
+        for ( PathTrackingEntry entry : entries )
+        {
+            if ( root == null || entry.getLevel() < root.getLevel() //
+                || ( entry.getLevel() == root.getLevel() && entry.getStartTime() < root.getStartTime() ) )
             {
-                trackingIds.add(
-                    new PathCallInformation( first.getTrackingId(), new Date( startTime.getTime() / 1000000 ) ) );
+                root = entry;
             }
         }
-        return trackingIds;
+        return root;
     }
 
-    private Collection<PathTrackingEntry> deserialize( List<Pointer> buffers )
+    protected Collection<PathTrackingEntry> deserialize( String trackingId, List<Pointer> buffers )
     {
         List<PathTrackingEntry> entries = new ArrayList<PathTrackingEntry>( buffers.size() );
 
         for ( Pointer pointer : buffers )
         {
-            byte[] bytes = readBytes( pointer );
-
-            PathTrackingEntry entry = SerializeUtils.deserialize( bytes, PathTrackingEntry.class );
+            PathTrackingEntry entry = deserialize( trackingId, pointer );
             if ( entry != null )
             {
                 entries.add( entry );
@@ -148,17 +252,29 @@ public class InMemoryPathTrackingDataStore
         return entries;
     }
 
-    @IgnoreJRERequirement
-    public byte[] readBytes( Pointer pointer )
+    /**
+     * @return the entry or null if it was already released.
+     */
+    protected PathTrackingEntry deserialize( String trackingId, Pointer pointer )
     {
-        byte[] bytes = new byte[pointer.size];
-        int length = pointer.size;
-        long offset = pointer.offheapPointer;
-        for ( int pos = 0; pos < length; pos++ )
+        byte[] bytes = readBytes( pointer );
+        if ( bytes == null )
+        {
+            return null;
+        }
+        if ( PathTrackingEntryCodec.JAVA_SERIALIZATION )
         {
-            bytes[pos] = UnsafeUtils.getUnsafe().getByte( pos + offset );
+            return SerializeUtils.deserialize( bytes, PathTrackingEntry.class );
         }
-        return bytes;
+        return codec.decode( trackingId, bytes );
+    }
+
+    /**
+     * @return the bytes of the entry or null if it was already released.
+     */
+    public byte[] readBytes( Pointer pointer )
+    {
+        return pointer.arena.read( pointer );
     }
 
     public static class Pointer
@@ -167,7 +283,13 @@ public class InMemoryPathTrackingDataStore
 
         long offheapPointer;
 
-        boolean free;
+        volatile boolean free;
+
+        PathTrackingArena arena;
+
+        PathTrackingArena.Slab slab;
+
+        int epoch;
 
         public int getSize()
         {
@@ -179,13 +301,11 @@ public class InMemoryPathTrackingDataStore
             return offheapPointer;
         }
 
-        @IgnoreJRERequirement
         public void freeMemory()
         {
             if ( !free )
             {
-                UnsafeUtils.getUnsafe().freeMemory( offheapPointer );
-                free = true;
+                arena.release( this );
             }
         }
 
@@ -195,58 +315,117 @@ public class InMemoryPathTrackingDataStore
         }
     }
 
-    @IgnoreJRERequirement
     private List<Pointer> serialize( Collection<PathTrackingEntry> entries )
     {
         List<Pointer> buffers = new ArrayList<Pointer>( entries.size() );
 
         for ( PathTrackingEntry entry : entries )
         {
-            byte[] bytes = SerializeUtils.serialize( entry );
-            if ( bytes != null )
+            byte[] bytes = PathTrackingEntryCodec.JAVA_SERIALIZATION //
+                ? SerializeUtils.serialize( entry ) //
+                : codec.encode( entry );
+            if ( bytes == null )
             {
-                long offheapPointer = UnsafeUtils.getUnsafe().allocateMemory( bytes.length );
-                Pointer pointer = new Pointer();
-                pointer.offheapPointer = offheapPointer;
-                pointer.size = bytes.length;
-                for ( int i = 0, size = bytes.length; i < size; i++ )
-                {
-                    UnsafeUtils.getUnsafe().putByte( offheapPointer + i, bytes[i] );
-                }
-                buffers.add( pointer );
+                continue;
+            }
+            if ( bytes.length > arena.getSlabSize() )
+            {
+                LOGGER.warning( "Ignoring path tracking entry bigger than the slab size: " + entry );
+                continue;
+            }
 
+            Pointer pointer = arena.allocate( bytes );
+            while ( pointer == null && evictOldest() )
+            {
+                pointer = arena.allocate( bytes );
+            }
+            if ( pointer != null )
+            {
+                buffers.add( pointer );
             }
         }
 
         return buffers;
     }
 
+    private boolean evictOldest()
+    {
+        Trace trace = traces.poll();
+        if ( trace == null )
+        {
+            return false;
+        }
+
+        if ( !evicting )
+        {
+            evicting = true;
+            LOGGER.info( "Path tracking memory budget of " + maxBytes + " bytes reached, evicting oldest paths" );
+        }
+
+        this.pathTrackingEntries.remove( trace.trackingId, trace );
+        for ( Pointer pointer : trace.close() )
+        {
+            pointer.freeMemory();
+        }
+        return true;
+    }
+
     @Override
     public void clearEntries()
     {
-        List<String> entriesToRemove = new ArrayList<String>();
-        for ( Map.Entry<String, List<Pointer>> entry : pathTrackingEntries.entrySet() )
+        // clear entries to not wait gc
+        for ( Trace trace : pathTrackingEntries.values() )
         {
-            boolean allFree = true;
-            // clear entries to not wait gc
-            for ( Pointer pointer : entry.getValue() )
+            if ( trace.closeIfFree() )
             {
-                if ( !pointer.isFree() )
-                {
-                    allFree = false;
-                }
+                pathTrackingEntries.remove( trace.trackingId, trace );
             }
-            if ( allFree )
+        }
+
+        // closed paths don't use memory anymore so they don't need to be evicted
+        for ( Iterator<Trace> iterator = traces.iterator(); iterator.hasNext(); )
+        {
+            if ( iterator.next().isClosed() )
             {
-                entriesToRemove.add( entry.getKey() );
+                iterator.remove();
             }
         }
+    }
 
-        for ( String key : entriesToRemove )
+    @Destroying
+    public void releaseMemory()
+    {
+        if ( !gauges.isEmpty() )
         {
-            pathTrackingEntries.remove( key );
+            for ( Gauge gauge : gauges )
+            {
+                Repository.INSTANCE.stopGauge( gauge );
+            }
         }
+        pathTrackingEntries.clear();
+        traces.clear();
+        index.clear();
+        arena.destroy();
+    }
 
+    public long getUsedBytes()
+    {
+        return arena.getUsedBytes();
+    }
+
+    public long getFreeBytes()
+    {
+        return arena.getFreeBytes();
+    }
+
+    private void registerGauges()
+    {
+        gauges.add( new MemoryGauge( new Role( "Path Tracking Used Memory", Unit.UNARY ), true ) );
+        gauges.add( new MemoryGauge( new Role( "Path Tracking Free Memory", Unit.UNARY ), false ) );
+        for ( Gauge gauge : gauges )
+        {
+            Repository.INSTANCE.addGauge( gauge );
+        }
     }
 
     protected Map<String, Set<PathTrackingEntry>> getPathTrackingEntries()
@@ -255,11 +434,11 @@ public class InMemoryPathTrackingDataStore
         Map<String, Set<PathTrackingEntry>> entries =
             new HashMap<String, Set<PathTrackingEntry>>( this.pathTrackingEntries.size() );
 
-        for ( Map.Entry<String, List<Pointer>> entry : this.pathTrackingEntries.entrySet() )
+        for ( Map.Entry<String, Trace> entry : this.pathTrackingEntries.entrySet() )
         {
             Set<PathTrackingEntry> pathTrackingEntries =
                 new TreeSet<PathTrackingEntry>( PathTrackingEntryComparator.INSTANCE );
-            pathTrackingEntries.addAll( deserialize( entry.getValue() ) );
+            pathTrackingEntries.addAll( deserialize( entry.getKey(), entry.getValue() ) );
             entries.put( entry.getKey(), pathTrackingEntries );
         }
 
@@ -268,8 +447,201 @@ public class InMemoryPathTrackingDataStore
 
     protected Map<String, List<Pointer>> getPointers()
     {
-        return this.pathTrackingEntries;
+        return Collections.<String, List<Pointer>>unmodifiableMap( this.pathTrackingEntries );
+    }
+
+    private class MemoryGauge
+        implements Gauge
+    {
+        private final Role role;
+
+        private final boolean used;
+
+        private MemoryGauge( Role role, boolean used )
+        {
+            this.role = role;
+            this.used = used;
+        }
+
+        @Override
+        public Role role()
+        {
+            return role;
+        }
+
+        @Override
+        public double value()
+        {
+            return used ? getUsedBytes() : getFreeBytes();
+        }
+    }
+
+    /**
+     * pointers of a path, appending doesn't copy the whole list (amortized growth)
+     * and readers can iterate it while it is written.
+     */
+    private class Trace
+        extends AbstractList<Pointer>
+    {
+        private final String trackingId;
+
+        private volatile Pointer[] pointers = new Pointer[8];
+
+        private volatile int size = 0;
+
+        // guarded by this
+        private boolean closed = false;
+
+        private IndexKey key;
+
+        private int rootLevel = Integer.MAX_VALUE;
+
+        private long rootDuration;
+
+        private Trace( String trackingId )
+        {
+            this.trackingId = trackingId;
+        }
+
+        @Override
+        public Pointer get( int index )
+        {
+            if ( index >= size )
+            {
+                throw new IndexOutOfBoundsException( index + " >= " + size );
+            }
+            return pointers[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * @return false if the trace was closed, pointers were not added.
+         */
+        private synchronized boolean append( List<Pointer> newPointers, PathTrackingEntry root )
+        {
+            if ( closed )
+            {
+                return false;
+            }
+
+            // entries of other threads can be stored before the root
+            if ( root.getLevel() < rootLevel || ( root.getLevel() == rootLevel && root.getStartTime() < key.startTime ) )
+            {
+                if ( key != null )
+                {
+                    index.remove( key );
+                }
+                key = new IndexKey( root.getStartTime(), trackingId );
+                rootLevel = root.getLevel();
+                rootDuration = root.getExecutionTime();
+                index.put( key, this );
+            }
+
+            Pointer[] current = pointers;
+            int newSize = size + newPointers.size();
+            if ( newSize > current.length )
+            {
+                Pointer[] bigger = new Pointer[Math.max( newSize, current.length * 2 )];
+                System.arraycopy( current, 0, bigger, 0, size );
+                current = bigger;
+            }
+            for ( int i = size; i < newSize; i++ )
+            {
+                current[i] = newPointers.get( i - size );
+            }
+            pointers = current;
+            size = newSize; // publish after the pointers
+            return true;
+        }
+
+        private synchronized PathCallInformation information()
+        {
+            if ( closed || key == null )
+            {
+                return null;
+            }
+            return new PathCallInformation( trackingId, new Date( TimeUnit.NANOSECONDS.toMillis( key.startTime ) ), //
+                                            rootDuration, size );
+        }
+
+        private synchronized List<Pointer> close()
+        {
+            doClose();
+            List<Pointer> all = new ArrayList<Pointer>( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                all.add( pointers[i] );
+            }
+            return all;
+        }
+
+        private synchronized boolean closeIfFree()
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( !pointers[i].isFree() )
+                {
+                    return false;
+                }
+            }
+            doClose();
+            return true;
+        }
+
+        private void doClose() // guarded by this
+        {
+            closed = true;
+            if ( key != null )
+            {
+                index.remove( key );
+            }
+        }
+
+        private synchronized boolean isClosed()
+        {
+            return closed;
+        }
+
+        // identity as ConcurrentMap.remove(key, value) must only remove this trace
+        @Override
+        public boolean equals( Object o )
+        {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode( this );
+        }
     }
 
+    private static class IndexKey
+        implements Comparable<IndexKey>
+    {
+        private final long startTime;
+
+        private final String trackingId;
+
+        private IndexKey( long startTime, String trackingId )
+        {
+            this.startTime = startTime;
+            this.trackingId = trackingId;
+        }
 
+        @Override
+        public int compareTo( IndexKey o )
+        {
+            if ( startTime != o.startTime )
+            {
+                return startTime < o.startTime ? -1 : 1;
+            }
+            return trackingId.compareTo( o.trackingId );
+        }
+    }
 }
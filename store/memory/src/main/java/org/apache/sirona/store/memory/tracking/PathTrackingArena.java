@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.tracking;
+
+import org.apache.sirona.store.memory.tracking.InMemoryPathTrackingDataStore.Pointer;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Native memory used by {@link InMemoryPathTrackingDataStore}: memory is reserved by slabs (never more
+ * than the budget) and entries are bump allocated in the current slab.
+ * Once full a slab is sealed and it is recycled when all its entries were released (pushed or evicted).
+ * <p/>
+ * A recycled slab gets a new epoch so a pointer to a released entry reads nothing instead of the new content.
+ * Copies from/to slabs hold the read lock of {@link #memoryLock} so {@link #destroy()} never frees a slab being copied.
+ */
+@IgnoreJRERequirement
+class PathTrackingArena
+{
+    private static final long BYTE_ARRAY_OFFSET = UnsafeUtils.getUnsafe().arrayBaseOffset( byte[].class );
+
+    private final int slabSize;
+
+    private final int maxSlabs;
+
+    // guarded by this
+    private final List<Slab> slabs = new ArrayList<Slab>();
+
+    private final LinkedList<Slab> freeSlabs = new LinkedList<Slab>();
+
+    private Slab current;
+
+    // read: copy from/to a slab, write: free the slabs
+    private final ReadWriteLock memoryLock = new ReentrantReadWriteLock();
+
+    private volatile boolean destroyed;
+
+    // written under the lock, volatile for gauges
+    private volatile long usedBytes;
+
+    private volatile long consumedBytes;
+
+    PathTrackingArena( long maxBytes, int slabSize )
+    {
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.max( 1, Math.min( Integer.MAX_VALUE, maxBytes / slabSize ) );
+    }
+
+    /**
+     * @return the pointer to a copy of the bytes or null if the budget is exhausted.
+     */
+    Pointer allocate( byte[] bytes )
+    {
+        int length = bytes.length;
+        if ( length > slabSize )
+        {
+            throw new IllegalArgumentException( "Entry of " + length + " bytes bigger than slabs (" + slabSize + ")" );
+        }
+
+        Slab slab;
+        int offset;
+        int epoch;
+        synchronized ( this )
+        {
+            if ( destroyed )
+            {
+                return null;
+            }
+            if ( current == null || current.position + length > slabSize )
+            {
+                if ( current != null )
+                {
+                    seal( current );
+                }
+                current = nextSlab();
+                if ( current == null )
+                {
+                    return null;
+                }
+            }
+
+            slab = current;
+            offset = slab.position;
+            epoch = slab.epoch;
+            slab.position += length;
+            slab.live += length;
+            usedBytes += length;
+            consumedBytes += length;
+        }
+
+        // the area is reserved so copy outside of the arena lock, the pointer is not visible yet
+        Pointer pointer = new Pointer();
+        pointer.arena = this;
+        pointer.slab = slab;
+        pointer.epoch = epoch;
+        pointer.offheapPointer = slab.address + offset;
+        pointer.size = length;
+
+        Lock lock = memoryLock.readLock();
+        lock.lock();
+        try
+        {
+            if ( destroyed )
+            {
+                return null;
+            }
+            UnsafeUtils.getUnsafe().copyMemory( bytes, BYTE_ARRAY_OFFSET, null, pointer.offheapPointer, length );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        return pointer;
+    }
+
+    /**
+     * @return the entry bytes or null if it was released.
+     */
+    byte[] read( Pointer pointer )
+    {
+        Slab slab = pointer.slab;
+        if ( pointer.free || slab.epoch != pointer.epoch )
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[pointer.size];
+        Lock lock = memoryLock.readLock();
+        lock.lock();
+        try
+        {
+            if ( destroyed )
+            {
+                return null;
+            }
+            UnsafeUtils.getUnsafe().copyMemory( null, pointer.offheapPointer, bytes, BYTE_ARRAY_OFFSET, pointer.size );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if ( slab.epoch != pointer.epoch ) // recycled while copying
+        {
+            return null;
+        }
+        return bytes;
+    }
+
+    synchronized void release( Pointer pointer )
+    {
+        if ( pointer.free )
+        {
+            return;
+        }
+        pointer.free = true;
+
+        Slab slab = pointer.slab;
+        if ( slab.epoch != pointer.epoch ) // destroyed
+        {
+            return;
+        }
+        slab.live -= pointer.size;
+        usedBytes -= pointer.size;
+        if ( slab.sealed && slab.live == 0 )
+        {
+            recycle( slab );
+        }
+    }
+
+    void destroy()
+    {
+        Lock lock = memoryLock.writeLock(); // waits for copies in progress
+        lock.lock();
+        try
+        {
+            synchronized ( this )
+            {
+                destroyed = true;
+                for ( Slab slab : slabs )
+                {
+                    slab.epoch++;
+                    UnsafeUtils.getUnsafe().freeMemory( slab.address );
+                }
+                slabs.clear();
+                freeSlabs.clear();
+                current = null;
+                usedBytes = 0;
+                consumedBytes = 0;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes of the entries not released yet.
+     */
+    long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    /**
+     * @return bytes which can still be allocated without evicting anything.
+     */
+    long getFreeBytes()
+    {
+        return ( (long) maxSlabs ) * slabSize - consumedBytes;
+    }
+
+    int getSlabSize()
+    {
+        return slabSize;
+    }
+
+    private void seal( Slab slab ) // guarded by this
+    {
+        slab.sealed = true;
+        consumedBytes += slabSize - slab.position; // the tail can't be used anymore
+        if ( slab.live == 0 )
+        {
+            recycle( slab );
+        }
+    }
+
+    private void recycle( Slab slab ) // guarded by this
+    {
+        slab.epoch++;
+        slab.position = 0;
+        slab.sealed = false;
+        consumedBytes -= slabSize;
+        freeSlabs.add( slab );
+    }
+
+    private Slab nextSlab() // guarded by this
+    {
+        if ( !freeSlabs.isEmpty() )
+        {
+            return freeSlabs.removeFirst();
+        }
+        if ( slabs.size() < maxSlabs )
+        {
+            Slab slab = new Slab( UnsafeUtils.getUnsafe().allocateMemory( slabSize ) );
+            slabs.add( slab );
+            return slab;
+        }
+        return null;
+    }
+
+    static class Slab
+    {
+        private final long address;
+
+        // only written under the arena lock, volatile for lock free readers
+        private volatile int epoch;
+
+        private int position;
+
+        private int live;
+
+        private boolean sealed;
+
+        private Slab( long address )
+        {
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.Unit;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// compare the skip list based ExponentialDecayCounter and the primitive ForwardDecayCounter
+public class ExponentialDecayCounterBench implements Runnable {
+    private static final int THREADS = 30;
+    private static final int LOOPS = 5000000;
+
+    private Counter counter;
+    private String mode;
+
+    @Test
+    public void exponentialDecayCounter() throws Exception {
+        mode = "ExponentialDecayCounter";
+        counter = new ExponentialDecayCounter(new Counter.Key(Role.PERFORMANCES, mode), new InMemoryCounterDataStore(),
+            ExponentialDecayCounter.ACCEPTABLE_DEFAULT_ALPHA, ExponentialDecayCounter.ACCEPTABLE_DEFAULT_SIZE,
+            ExponentialDecayCounter.ACCEPTABLE_STATISTICS_REFRESH_SECONDS);
+        runConcurrent();
+    }
+
+    @Test
+    public void forwardDecayCounter() throws Exception {
+        mode = "ForwardDecayCounter";
+        counter = new ForwardDecayCounter(new Counter.Key(Role.PERFORMANCES, mode), new InMemoryCounterDataStore(),
+            ExponentialDecayCounter.ACCEPTABLE_DEFAULT_ALPHA, ExponentialDecayCounter.ACCEPTABLE_DEFAULT_SIZE,
+            ExponentialDecayCounter.ACCEPTABLE_STATISTICS_REFRESH_SECONDS);
+        runConcurrent();
+    }
+
+    private void runConcurrent() throws InterruptedException {
+        final long start = System.nanoTime();
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < LOOPS; i++) {
+            pool.submit(this);
+        }
+        pool.shutdown();
+        pool.awaitTermination(60, TimeUnit.SECONDS);
+
+        final long duration = System.nanoTime() - start;
+        System.out.printf("%s : %,d ns/operation, %s%n", mode, duration / LOOPS, counter.toString());
+    }
+
+    public void run() {
+        counter.add(Math.random() * 1000, Unit.Time.NANOSECOND);
+    }
+}
@@ -44,6 +44,10 @@ public class ExponentialDecayCounterTest {
                 throw new UnsupportedOperationException();
             }
 
+            public Collection<Counter> snapshotDeltas() {
+                throw new UnsupportedOperationException();
+            }
+
             public void addToCounter(final Counter defaultCounter, final double delta) {
                 LockableCounter.class.cast(defaultCounter).addInternal(delta);
             }
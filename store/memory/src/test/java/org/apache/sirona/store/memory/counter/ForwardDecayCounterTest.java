@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.LockableCounter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.Unit;
+import org.apache.sirona.store.counter.CounterDataStore;
+import org.junit.Test;
+
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+
+public class ForwardDecayCounterTest {
+    @Test
+    public void sameTimestampMeansSameWeights() {
+        final ManualClockCounter counter = new ManualClockCounter(1000);
+        final OptimizedStatistics accurate = new OptimizedStatistics();
+        for (final double value : new double[] { 80, 75, 90, 60, 82 }) {
+            counter.add(value, Unit.KILO);
+            accurate.addValue(value);
+        }
+
+        final OptimizedStatistics statistics = counter.getStatistics();
+        assertEquals(accurate.getN(), statistics.getN());
+        assertEquals(accurate.getSum(), statistics.getSum(), 1e-9);
+        assertEquals(accurate.getMin(), statistics.getMin(), 0.);
+        assertEquals(accurate.getMax(), statistics.getMax(), 0.);
+        assertEquals(accurate.getMean(), statistics.getMean(), 1e-9);
+        assertEquals(accurate.getVariance(), statistics.getVariance(), 1e-9);
+    }
+
+    @Test
+    public void recentValuesWeightMore() {
+        final ManualClockCounter counter = new ManualClockCounter(1000);
+        counter.add(10, Unit.KILO);
+        counter.time += 100;
+        counter.add(20, Unit.KILO);
+
+        // weights are 1 and exp(alpha * 100) ~ 4.48 so the mean is closer to 20
+        final double w = Math.exp(ExponentialDecayCounter.ACCEPTABLE_DEFAULT_ALPHA * 100);
+        assertEquals((10 + 20 * w) / (1 + w), counter.getStatistics().getMean(), 1e-9);
+    }
+
+    @Test
+    public void boundedAndRescaled() {
+        final ManualClockCounter counter = new ManualClockCounter(16);
+        for (int i = 0; i < 10000; i++) {
+            counter.time += 1; // crosses several rescaling thresholds
+            counter.add(i, Unit.KILO);
+        }
+
+        final OptimizedStatistics statistics = counter.getStatistics();
+        assertEquals(16, statistics.getN());
+        // old values are very unlikely to be kept with such a decay
+        assertEquals(true, statistics.getMin() > 9000);
+        assertEquals(false, Double.isNaN(statistics.getVariance()) || Double.isInfinite(statistics.getVariance()));
+
+        counter.reset();
+        assertEquals(0, counter.getStatistics().getN());
+    }
+
+    private static class ManualClockCounter extends ForwardDecayCounter {
+        private long time = 1000;
+
+        private ManualClockCounter(final int size) {
+            super(new Counter.Key(new Role("doctor", Unit.KILO), "weight"), new DirectStore(),
+                ExponentialDecayCounter.ACCEPTABLE_DEFAULT_ALPHA, size, 0, 4);
+        }
+
+        @Override
+        protected long seconds() {
+            return time;
+        }
+    }
+
+    private static class DirectStore implements CounterDataStore {
+        public Counter getOrCreateCounter(final Counter.Key key) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void clearCounters() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<Counter> getCounters() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<Counter> snapshotDeltas() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addToCounter(final Counter defaultCounter, final double delta) {
+            LockableCounter.class.cast(defaultCounter).addInternal(delta);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.EvictionAware;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LimitedInMemoryCounterDataStoreTest {
+    private static final int MAX_SIZE = 1000; // default counter.max-size
+
+    @Test
+    public void evictUnusedWebCounters() {
+        final LimitedInMemoryCounterDataStore store = new LimitedInMemoryCounterDataStore();
+        store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "not-evictable")).add(1);
+        for (int i = 0; i < MAX_SIZE - 1; i++) {
+            final Counter counter = store.getOrCreateCounter(new Counter.Key(Role.WEB, "/page-" + i));
+            if (i % 2 == 0) {
+                counter.add(1);
+            }
+        }
+        assertEquals(MAX_SIZE, store.getCounters().size());
+
+        final long generation = store.getGeneration();
+        final Counter evicted = store.getOrCreateCounter(new Counter.Key(Role.WEB, "/page-1"));
+        final Counter kept = store.getOrCreateCounter(new Counter.Key(Role.WEB, "/page-0"));
+        for (int i = 0; i < 100; i++) {
+            store.getOrCreateCounter(new Counter.Key(Role.WEB, "/new-" + i));
+        }
+
+        assertEquals(MAX_SIZE, store.getCounters().size());
+        assertEquals(generation, store.getGeneration()); // only evicted counters are invalidated
+        assertTrue(EvictionAware.class.cast(evicted).isEvicted());
+        assertFalse(EvictionAware.class.cast(kept).isEvicted());
+        for (final Counter counter : store.getCounters()) {
+            final String name = counter.getKey().getName();
+            if (name.startsWith("/page-")) { // the 100 oldest counters never hit were evicted
+                final int i = Integer.parseInt(name.substring("/page-".length()));
+                assertTrue(name, i % 2 == 0 || i >= 200);
+            }
+        }
+        assertEquals(1, store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "not-evictable")).getHits());
+    }
+
+    @Test
+    public void clear() {
+        final LimitedInMemoryCounterDataStore store = new LimitedInMemoryCounterDataStore();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            store.getOrCreateCounter(new Counter.Key(Role.WEB, "/page-" + i));
+        }
+        store.clearCounters();
+        assertEquals(0, store.getCounters().size());
+
+        for (int i = 0; i < MAX_SIZE; i++) {
+            store.getOrCreateCounter(new Counter.Key(Role.WEB, "/other-" + i)).add(1);
+        }
+        assertEquals(MAX_SIZE, store.getCounters().size()); // size was reset so nothing was evicted
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class OffHeapCounterDataStoreTest {
+    private OffHeapCounterDataStore store;
+
+    @Before
+    public void init() {
+        store = new OffHeapCounterDataStore(16); // small chunks to use several of them
+    }
+
+    @After
+    public void destroy() {
+        store.cleanUp();
+    }
+
+    @Test
+    public void sameMomentsThanOptimizedStatistics() {
+        final Counter counter = store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "off-heap"));
+        final OptimizedStatistics accurate = new OptimizedStatistics();
+
+        for (int i = 0; i < 1000; i++) {
+            final double value = Math.random() * 100;
+            counter.add(value, Unit.Time.NANOSECOND);
+            accurate.addValue(value);
+        }
+
+        final double delta = Math.pow(10, -8);
+        assertEquals(accurate.getN(), counter.getHits());
+        assertEquals(accurate.getSum(), counter.getSum(), delta);
+        assertEquals(accurate.getMin(), counter.getMin(), 0.);
+        assertEquals(accurate.getMax(), counter.getMax(), 0.);
+        assertEquals(accurate.getMean(), counter.getMean(), delta);
+        assertEquals(accurate.getSecondMoment(), counter.getSecondMoment(), delta);
+        assertEquals(accurate.getVariance(), counter.getVariance(), delta);
+
+        counter.updateConcurrency(5);
+        counter.updateConcurrency(2);
+        assertEquals(5, counter.getMaxConcurrency());
+
+        counter.reset();
+        assertEquals(0, counter.getHits());
+        assertEquals(0, counter.getMaxConcurrency());
+        assertEquals(Double.NaN, counter.getMean(), 0.);
+    }
+
+    @Test
+    public void manyCounters() {
+        final int number = 1000;
+        for (int i = 0; i < number; i++) {
+            store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "counter-" + i)).add(i);
+        }
+
+        assertEquals(number, store.getCounters().size());
+        for (int i = 0; i < number; i++) {
+            final Counter counter = store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "counter-" + i));
+            assertEquals(1, counter.getHits());
+            assertEquals(i, counter.getSum(), 0.);
+        }
+    }
+
+    @Test
+    public void clear() {
+        final Counter.Key key = new Counter.Key(Role.PERFORMANCES, "cleared");
+        final Counter counter = store.getOrCreateCounter(key);
+        counter.add(10);
+        assertSame(counter, store.getOrCreateCounter(key));
+
+        store.clearCounters();
+        assertEquals(0, store.getCounters().size());
+
+        final Counter other = store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "other")); // reuses the slot
+        other.add(5);
+        assertEquals(0, counter.getHits()); // stale flyweight got a new slot
+        counter.add(20);
+        assertEquals(1, store.getOrCreateCounter(key).getHits());
+        assertEquals(20, store.getOrCreateCounter(key).getSum(), 0.);
+        assertEquals(5, other.getSum(), 0.);
+    }
+
+    @Test
+    public void cleanUpWhileWriting() throws InterruptedException {
+        final Counter[] counters = new Counter[64];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = store.getOrCreateCounter(new Counter.Key(Role.PERFORMANCES, "concurrent-" + i));
+        }
+
+        final CountDownLatch started = new CountDownLatch(4);
+        final Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int i = 0; i < 200000; i++) {
+                        final Counter counter = counters[i % counters.length];
+                        counter.add(i);
+                        counter.updateConcurrency(i % 10);
+                        counter.getMean();
+                    }
+                }
+            };
+            writers[t].start();
+        }
+
+        started.await();
+        store.cleanUp(); // chunks are freed once writers left them, further calls are ignored
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(0, counters[0].getHits());
+        assertEquals(0, counters[0].getMaxConcurrency());
+        assertEquals(0, store.snapshotDeltas().size());
+    }
+}
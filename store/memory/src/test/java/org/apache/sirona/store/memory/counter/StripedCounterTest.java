@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sirona.store.memory.counter;
+
+import org.apache.sirona.Role;
+import org.apache.sirona.counters.Counter;
+import org.apache.sirona.counters.DeltaCounter;
+import org.apache.sirona.counters.LockableCounter;
+import org.apache.sirona.counters.OptimizedStatistics;
+import org.apache.sirona.counters.Unit;
+import org.apache.sirona.store.counter.CounterDataStore;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+    @Test
+    public void sameMomentsThanOptimizedStatistics() {
+        final StripedCounter counter = new StripedCounter(new Counter.Key(Role.PERFORMANCES, "striped"), new DirectStore(), 4);
+        final OptimizedStatistics accurate = new OptimizedStatistics();
+
+        for (int i = 0; i < 1000; i++) {
+            final double value = Math.random() * 100;
+            counter.add(value, Unit.Time.NANOSECOND);
+            accurate.addValue(value);
+        }
+
+        final OptimizedStatistics statistics = counter.getStatistics();
+        final double delta = Math.pow(10, -8);
+        assertEquals(accurate.getN(), statistics.getN());
+        assertEquals(accurate.getSum(), statistics.getSum(), delta);
+        assertEquals(accurate.getMin(), statistics.getMin(), 0.);
+        assertEquals(accurate.getMax(), statistics.getMax(), 0.);
+        assertEquals(accurate.getMean(), statistics.getMean(), delta);
+        assertEquals(accurate.getSecondMoment(), statistics.getSecondMoment(), delta);
+        assertEquals(accurate.getVariance(), statistics.getVariance(), delta);
+
+        counter.reset();
+        assertEquals(0, counter.getHits());
+        assertEquals(Double.NaN, counter.getMean(), 0.);
+    }
+
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter(new Counter.Key(Role.PERFORMANCES, "striped-concurrent"), new DirectStore(), 4);
+        final int threads = 8;
+        final int loops = 10000;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < loops; i++) {
+                        counter.add(2, Unit.Time.NANOSECOND);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(threads * loops, counter.getHits());
+        assertEquals(2. * threads * loops, counter.getSum(), 0.);
+        assertEquals(2., counter.getMean(), 0.);
+        assertEquals(0., counter.getVariance(), 0.);
+    }
+
+    @Test
+    public void snapshotDeltasDontLoseValues() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter(new Counter.Key(Role.PERFORMANCES, "striped-delta"), new DirectStore(), 4);
+        final int threads = 4;
+        final int loops = 10000;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < loops; i++) {
+                        counter.add(1, Unit.Time.NANOSECOND);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+
+        long hits = 0;
+        double sum = 0;
+        while (!pool.isTerminated()) {
+            final DeltaCounter delta = counter.snapshotDelta();
+            hits += delta.getHits();
+            sum += delta.getSum();
+        }
+        final DeltaCounter last = counter.snapshotDelta();
+        hits += last.getHits();
+        sum += last.getSum();
+
+        assertEquals(threads * loops, hits);
+        assertEquals(threads * loops, sum, 0.);
+        assertEquals(0, counter.getHits());
+    }
+
+    private static class DirectStore implements CounterDataStore {
+        public Counter getOrCreateCounter(final Counter.Key key) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void clearCounters() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<Counter> getCounters() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<Counter> snapshotDeltas() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addToCounter(final Counter defaultCounter, final double delta) {
+            LockableCounter.class.cast(defaultCounter).addInternal(delta);
+        }
+    }
+}